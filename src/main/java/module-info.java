@@ -2,4 +2,5 @@ module commandrunner {
     requires javafx.controls;
     requires javafx.fxml;
     requires json;
+    requires jdk.httpserver;
 }
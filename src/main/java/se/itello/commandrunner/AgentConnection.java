@@ -0,0 +1,225 @@
+package se.itello.commandrunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The connection of the runner to one {@link WorkerAgent}, on which commands are submitted and whose output is read
+ * by a thread of its own. See {@link AgentProtocol}.
+ */
+class AgentConnection {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private final String address;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final int capacity;
+    private final Map<Long, RemoteRun> runs;
+    private final AtomicLong nextRunId;
+    private volatile boolean closed;
+    private int running;
+
+    private AgentConnection(String address, Socket socket, DataInputStream in, OutputStream out, int capacity) {
+        this.address = address;
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.capacity = capacity;
+        runs = new ConcurrentHashMap<>();
+        nextRunId = new AtomicLong();
+    }
+
+    /**
+     * Connects and authenticates, and returns once the agent has told its capacity.
+     *
+     * @param address host:port of the agent
+     */
+    static AgentConnection connect(String address, String token) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(parseAddress(address), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+
+            AgentProtocol.writeFrame(out, AgentProtocol.AUTH, payload -> AgentProtocol.writeString(payload, token));
+            final AgentProtocol.Frame hello = AgentProtocol.readFrame(in);
+            if (hello.type != AgentProtocol.HELLO) {
+                throw new IOException("agent " + address + " did not accept the connection");
+            }
+            socket.setSoTimeout(0);
+
+            return new AgentConnection(address, socket, in, out, hello.payload.readInt());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the address is not host:port
+     */
+    static InetSocketAddress parseAddress(String address) {
+        final int colonIndex = address.lastIndexOf(':');
+        if (colonIndex <= 0) {
+            throw new IllegalArgumentException("agent address must be host:port, got '" + address + "'");
+        }
+        try {
+            return new InetSocketAddress(address.substring(0, colonIndex).trim(), Integer.parseInt(address.substring(colonIndex + 1).trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("agent address must be host:port, got '" + address + "'");
+        }
+    }
+
+    /**
+     * Reads the output and exit codes the agent sends until the connection is lost, after which all commands still
+     * running on the agent fail.
+     */
+    void readUntilClosed() {
+        try {
+            while (true) {
+                final AgentProtocol.Frame frame = AgentProtocol.readFrame(in);
+                final RemoteRun run = runs.get(frame.payload.readLong());
+                if (run == null) {
+                    continue;
+                }
+
+                if (frame.type == AgentProtocol.OUTPUT) {
+                    final OutputSource source = OutputSource.values()[frame.payload.readByte()];
+                    final int lineCount = frame.payload.readInt();
+                    final List<String> lines = new ArrayList<>(lineCount);
+                    for (int i = 0; i < lineCount; i++) {
+                        lines.add(AgentProtocol.readString(frame.payload));
+                    }
+                    run.outputConsumer.accept(new OutputBatch(lines, source, System.nanoTime()));
+                } else if (frame.type == AgentProtocol.EXIT) {
+                    runs.remove(run.id);
+                    run.exitCode.complete(frame.payload.readInt());
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("lost connection to agent " + address + (e.getMessage() == null ? "" : ": " + e.getMessage()));
+            }
+        } finally {
+            close();
+            final IOException lost = new IOException("lost connection to agent " + address);
+            runs.values().forEach(run -> run.exitCode.completeExceptionally(lost));
+            runs.clear();
+        }
+    }
+
+    /**
+     * Starts the command line on the agent.
+     *
+     * @param directory      where the command runs on the agent, or empty for the directory the agent was started in
+     * @param outputConsumer receives the output as it arrives, on the thread reading from the agent
+     */
+    RemoteRun submit(String directory, String commandLine, Consumer<OutputBatch> outputConsumer) throws IOException {
+        final RemoteRun run = new RemoteRun(nextRunId.getAndIncrement(), outputConsumer);
+        runs.put(run.id, run);
+        try {
+            AgentProtocol.writeFrame(out, AgentProtocol.SUBMIT, payload -> {
+                payload.writeLong(run.id);
+                AgentProtocol.writeString(payload, directory);
+                AgentProtocol.writeString(payload, commandLine);
+            });
+        } catch (IOException e) {
+            runs.remove(run.id);
+            throw e;
+        }
+        if (closed) {
+            // the reader may have failed the runs before this one was added
+            runs.remove(run.id);
+            throw new IOException("lost connection to agent " + address);
+        }
+
+        return run;
+    }
+
+    /**
+     * @return whether the agent is connected and was running fewer commands than it can, in which case it runs one more
+     */
+    synchronized boolean tryReserve() {
+        if (closed || running >= capacity) {
+            return false;
+        }
+        running++;
+        return true;
+    }
+
+    synchronized void release() {
+        running--;
+    }
+
+    synchronized int getFreeCapacity() {
+        return closed ? 0 : capacity - running;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    class RemoteRun {
+        private final long id;
+        private final Consumer<OutputBatch> outputConsumer;
+        private final CompletableFuture<Integer> exitCode;
+
+        private RemoteRun(long id, Consumer<OutputBatch> outputConsumer) {
+            this.id = id;
+            this.outputConsumer = outputConsumer;
+            exitCode = new CompletableFuture<>();
+        }
+
+        /**
+         * @throws IOException if the connection to the agent is lost before the command has finished
+         */
+        int awaitExitCode() throws IOException, InterruptedException {
+            try {
+                return exitCode.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+
+        void kill() {
+            try {
+                AgentProtocol.writeFrame(out, AgentProtocol.KILL, payload -> payload.writeLong(id));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
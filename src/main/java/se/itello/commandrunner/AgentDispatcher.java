@@ -0,0 +1,187 @@
+package se.itello.commandrunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Places commands onto the configured {@link WorkerAgent}s. A command runs locally as long as fewer than
+ * {@link CommandExecutor#getMaxConcurrentCommands()} commands run locally, and otherwise on the connected agent
+ * with the most free capacity. The worker pool grows by the capacity of the connected agents, so that there are
+ * enough workers to keep them busy.
+ * <p>
+ * Every agent is connected by a thread of its own, which reads from it and reconnects when the connection is lost.
+ */
+public class AgentDispatcher {
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private static final AgentDispatcher instance = new AgentDispatcher();
+
+    private final List<AgentConnection> connections;
+    /**
+     * The connector each listed agent is currently connected by, so that replaced connectors stop.
+     */
+    private final Map<String, Long> connectorIds;
+    private final AtomicLong nextConnectorId;
+    private volatile List<String> addresses;
+    private volatile String token;
+    private int localRunning;
+
+    private AgentDispatcher() {
+        connections = new CopyOnWriteArrayList<>();
+        connectorIds = new ConcurrentHashMap<>();
+        nextConnectorId = new AtomicLong();
+        addresses = Collections.emptyList();
+        token = "";
+    }
+
+    public static AgentDispatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Where a command runs, returned to the dispatcher with {@link #release(Slot)} when it has finished.
+     */
+    static class Slot {
+        private final AgentConnection agent;
+
+        private Slot(AgentConnection agent) {
+            this.agent = agent;
+        }
+
+        /**
+         * @return the agent to run on, or null to run locally
+         */
+        AgentConnection getAgent() {
+            return agent;
+        }
+    }
+
+    /**
+     * @param addresses comma separated host:port of the agents, or empty for none
+     * @throws IllegalArgumentException if an address is not host:port
+     */
+    public static List<String> parseAddresses(String addresses) {
+        final List<String> parsedAddresses = Arrays.stream(addresses == null ? new String[0] : addresses.split(","))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        parsedAddresses.forEach(AgentConnection::parseAddress);
+
+        return parsedAddresses;
+    }
+
+    /**
+     * Disconnects from the agents no longer listed and starts connecting to the new ones.
+     *
+     * @param token what the agents were started with as --agent-token, or empty
+     */
+    public synchronized void setAgents(List<String> addresses, String token) {
+        final String newToken = token == null ? "" : token;
+        final boolean tokenChanged = !this.token.equals(newToken);
+        this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+        this.token = newToken;
+
+        connectorIds.keySet().retainAll(addresses);
+        for (AgentConnection connection : connections) {
+            if (tokenChanged || !addresses.contains(connection.getAddress())) {
+                connection.close();
+            }
+        }
+
+        final List<String> newAddresses = addresses.stream()
+                .filter(address -> tokenChanged || !connectorIds.containsKey(address))
+                .collect(Collectors.toList());
+        for (String address : newAddresses) {
+            final long connectorId = nextConnectorId.getAndIncrement();
+            connectorIds.put(address, connectorId);
+            final Thread connector = new Thread(() -> connectWhileListed(address, connectorId, newToken), "agent-" + address);
+            connector.setDaemon(true);
+            connector.start();
+        }
+    }
+
+    private void connectWhileListed(String address, long connectorId, String token) {
+        while (isListed(address, connectorId)) {
+            try {
+                final AgentConnection connection = AgentConnection.connect(address, token);
+                connections.add(connection);
+                updateWorkers();
+                if (!isListed(address, connectorId)) {
+                    connection.close();
+                }
+                connection.readUntilClosed();
+                connections.remove(connection);
+                updateWorkers();
+            } catch (IOException | IllegalArgumentException e) {
+                // the agent is not running yet, or was stopped
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean isListed(String address, long connectorId) {
+        return Long.valueOf(connectorId).equals(connectorIds.get(address));
+    }
+
+    private void updateWorkers() {
+        CommandExecutor.getInstance().setAgentCapacity(connections.stream()
+                .mapToInt(AgentConnection::getCapacity)
+                .sum());
+    }
+
+    /**
+     * @return where the next command runs
+     */
+    synchronized Slot acquire() {
+        if (localRunning < CommandExecutor.getInstance().getMaxConcurrentCommands()) {
+            localRunning++;
+            return new Slot(null);
+        }
+
+        AgentConnection leastBusy = null;
+        for (AgentConnection connection : connections) {
+            if (leastBusy == null || connection.getFreeCapacity() > leastBusy.getFreeCapacity()) {
+                leastBusy = connection;
+            }
+        }
+        if (leastBusy != null && leastBusy.tryReserve()) {
+            return new Slot(leastBusy);
+        }
+
+        // only if an agent was lost while its commands were waiting for a worker
+        localRunning++;
+        return new Slot(null);
+    }
+
+    synchronized void release(Slot slot) {
+        if (slot.agent == null) {
+            localRunning--;
+        } else {
+            slot.agent.release();
+        }
+    }
+
+    public int getConfiguredAgentCount() {
+        return addresses.size();
+    }
+
+    public int getConnectedAgentCount() {
+        return (int) connections.stream()
+                .filter(connection -> !connection.isClosed())
+                .count();
+    }
+}
@@ -0,0 +1,115 @@
+package se.itello.commandrunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The frames a runner and a {@link WorkerAgent} exchange over TCP. Every frame is its length as an int, followed
+ * by its type and its payload. Strings are their length in bytes as an int, followed by their UTF-8 bytes.
+ * <ul>
+ * <li>{@link #AUTH} runner to agent, first: token</li>
+ * <li>{@link #HELLO} agent to runner, if the token is right: capacity</li>
+ * <li>{@link #SUBMIT} runner to agent: run id, directory (empty for the agent's own), command line</li>
+ * <li>{@link #OUTPUT} agent to runner: run id, source ordinal, number of lines, lines</li>
+ * <li>{@link #EXIT} agent to runner: run id, exit code</li>
+ * <li>{@link #KILL} runner to agent: run id</li>
+ * </ul>
+ */
+final class AgentProtocol {
+    static final byte AUTH = 1;
+    static final byte HELLO = 2;
+    static final byte SUBMIT = 3;
+    static final byte OUTPUT = 4;
+    static final byte EXIT = 5;
+    static final byte KILL = 6;
+
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    /**
+     * Longest {@link #AUTH} frame, which is read before it is known who is connecting.
+     */
+    static final int MAX_AUTH_FRAME_LENGTH = 4 * 1024;
+
+    private AgentProtocol() {
+    }
+
+    interface PayloadWriter {
+        void write(DataOutputStream payload) throws IOException;
+    }
+
+    static class Frame {
+        final byte type;
+        final DataInputStream payload;
+
+        private Frame(byte type, DataInputStream payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Writes the whole frame at once, so that frames written by several threads do not interleave.
+     */
+    static void writeFrame(OutputStream out, byte type, PayloadWriter payloadWriter) throws IOException {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        final DataOutputStream frameOut = new DataOutputStream(frame);
+        frameOut.writeInt(0);
+        frameOut.writeByte(type);
+        payloadWriter.write(frameOut);
+        frameOut.flush();
+
+        final byte[] bytes = frame.toByteArray();
+        final int length = bytes.length - Integer.BYTES;
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+        synchronized (out) {
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    /**
+     * @throws java.io.EOFException if the other side closed the connection
+     */
+    static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * @param maxLength the longest frame to accept, before anything is allocated for it
+     * @throws java.io.EOFException if the other side closed the connection
+     */
+    static Frame readFrame(DataInputStream in, int maxLength) throws IOException {
+        final int length = in.readInt();
+        if (length < 1 || length > maxLength) {
+            throw new IOException("invalid frame length " + length);
+        }
+        final byte[] frame = new byte[length];
+        in.readFully(frame);
+
+        return new Frame(frame[0], new DataInputStream(new ByteArrayInputStream(frame, 1, length - 1)));
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
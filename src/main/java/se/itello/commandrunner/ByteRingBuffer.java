@@ -0,0 +1,305 @@
+package se.itello.commandrunner;
+
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ring of the latest output lines as UTF-8 bytes, sized in bytes rather than in lines, with an index of where each
+ * line starts, which stream it came from and when it was read.
+ * <p>
+ * There is a single writer. Readers never lock or block the writer, and never copy more than they return: they read
+ * the lines they want where they are, and then check which lines the writer evicted meanwhile, and drop those, since
+ * their bytes may have been overwritten while reading. The writer evicts lines before it overwrites their bytes.
+ * The index has spare room past the lines it keeps, and only in the unlikely case that the writer filled it while a
+ * reader was reading may the index entries read have been overwritten too, and the reader reads again. Positions and line numbers count from the
+ * first line ever written and never wrap, only their indexes into the arrays do.
+ */
+class ByteRingBuffer {
+    private final byte[] bytes;
+    private final long[] lineStarts;
+    private final int[] lineLengths;
+    private final byte[] lineSources;
+    private final long[] lineTimestamps;
+    /**
+     * Number of stderr lines written before each line, so that lines of one stream can be found without a scan.
+     */
+    private final long[] lineErrorsBefore;
+    /**
+     * Number of lines the index keeps, fewer than it has room for, see {@link #isIndexIntact(long)}.
+     */
+    private final int maxLines;
+
+    /**
+     * Number of lines written, published after each line is complete.
+     */
+    private volatile long lineCount;
+    /**
+     * Number of the oldest line that has not been evicted, published before its bytes are overwritten.
+     */
+    private volatile long firstLine;
+    private volatile int errorLineCount;
+    private long errorLinesWritten;
+    private long position;
+
+    /**
+     * @param capacity the number of bytes to keep, which is also the longest line kept in full
+     */
+    ByteRingBuffer(int capacity) {
+        bytes = new byte[capacity];
+        // room for lines of 16 bytes on average before lines are evicted for lack of index rather than bytes
+        maxLines = Math.max(16, capacity / 16);
+        final int indexCapacity = maxLines + maxLines / 4;
+        lineStarts = new long[indexCapacity];
+        lineLengths = new int[indexCapacity];
+        lineSources = new byte[indexCapacity];
+        lineTimestamps = new long[indexCapacity];
+        lineErrorsBefore = new long[indexCapacity];
+    }
+
+    /**
+     * To be called from one thread at a time. Lines longer than the capacity are cut at the end.
+     */
+    void append(OutputSource source, String line, long timestamp) {
+        final byte[] lineBytes = line.getBytes(StandardCharsets.UTF_8);
+        final int length = Math.min(lineBytes.length, bytes.length);
+        final long count = lineCount;
+
+        long first = firstLine;
+        int errorLines = errorLineCount;
+        while (first < count && (lineStarts[index(first)] < position + length - bytes.length
+                || count - first == maxLines)) {
+            errorLines -= lineSources[index(first)] == OutputSource.STDERR.ordinal() ? 1 : 0;
+            first++;
+        }
+        firstLine = first;
+        VarHandle.storeStoreFence();
+
+        final int offset = (int) (position % bytes.length);
+        final int firstPart = Math.min(length, bytes.length - offset);
+        System.arraycopy(lineBytes, 0, bytes, offset, firstPart);
+        System.arraycopy(lineBytes, firstPart, bytes, 0, length - firstPart);
+
+        final int index = index(count);
+        lineStarts[index] = position;
+        lineLengths[index] = length;
+        lineSources[index] = (byte) source.ordinal();
+        lineTimestamps[index] = count == 0 ? timestamp : Math.max(timestamp, lineTimestamps[index(count - 1)]);
+        lineErrorsBefore[index] = errorLinesWritten;
+        errorLinesWritten += source == OutputSource.STDERR ? 1 : 0;
+        position += length;
+
+        errorLineCount = errorLines + (source == OutputSource.STDERR ? 1 : 0);
+        lineCount = count + 1;
+    }
+
+    /**
+     * @return the number of lines kept, which may be out of date as soon as it is returned
+     */
+    int size() {
+        final long count = lineCount;
+        return (int) (count - Math.min(firstLine, count));
+    }
+
+    /**
+     * @return roughly the number of lines kept from the stream, which may be out of date as soon as it is returned
+     */
+    int size(OutputSource source) {
+        final int errorLines = Math.min(errorLineCount, size());
+        return source == OutputSource.STDERR ? errorLines : size() - errorLines;
+    }
+
+    /**
+     * @return the lines from {@code from}, inclusive, to {@code to}, exclusive, among the kept lines of the stream,
+     * or among all kept lines if the stream is null, without those evicted while they were read
+     */
+    List<String> getLines(OutputSource source, int from, int to) {
+        while (true) {
+            final long count = lineCount;
+            final long first = Math.min(firstLine, count);
+            final long[] lineNumbers = lineNumbers(source, first, count, from, to);
+            final String[] lines = new String[lineNumbers.length];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = decode(lineNumbers[i]);
+            }
+
+            VarHandle.loadLoadFence();
+            if (isIndexIntact(first)) {
+                return Arrays.asList(lines).subList(evictedAmong(lineNumbers), lines.length);
+            }
+        }
+    }
+
+    /**
+     * @return the times the lines were read, for the same lines as {@link #getLines(OutputSource, int, int)}
+     */
+    long[] getTimestamps(OutputSource source, int from, int to) {
+        while (true) {
+            final long count = lineCount;
+            final long first = Math.min(firstLine, count);
+            final long[] lineNumbers = lineNumbers(source, first, count, from, to);
+            final long[] timestamps = new long[lineNumbers.length];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = lineTimestamps[index(lineNumbers[i])];
+            }
+
+            VarHandle.loadLoadFence();
+            if (isIndexIntact(first)) {
+                return Arrays.copyOfRange(timestamps, evictedAmong(lineNumbers), timestamps.length);
+            }
+        }
+    }
+
+    /**
+     * @return the streams of the kept lines from {@code from}, inclusive, to {@code to}, exclusive
+     */
+    OutputSource[] getSources(int from, int to) {
+        while (true) {
+            final long count = lineCount;
+            final long first = Math.min(firstLine, count);
+            final long[] lineNumbers = lineNumbers(null, first, count, from, to);
+            final OutputSource[] sources = new OutputSource[lineNumbers.length];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = OutputSource.values()[lineSources[index(lineNumbers[i])]];
+            }
+
+            VarHandle.loadLoadFence();
+            if (isIndexIntact(first)) {
+                return Arrays.copyOfRange(sources, evictedAmong(lineNumbers), sources.length);
+            }
+        }
+    }
+
+    /**
+     * @return the number of kept lines of the stream, or of all streams if it is null, that were read at or before
+     * the given time, found by a binary search since the times never decrease
+     */
+    int countUpTo(OutputSource source, long timestamp) {
+        while (true) {
+            final long count = lineCount;
+            final long first = Math.min(firstLine, count);
+            long low = first - 1;
+            long high = count;
+            // invariant: lines up to low were read at or before the time, lines from high on after it
+            while (high - low > 1) {
+                final long middle = low + (high - low) / 2;
+                if (lineTimestamps[index(middle)] <= timestamp) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            final long lines = low < first ? 0 : source == null ? low + 1 - first : through(source, low) - before(source, first);
+
+            VarHandle.loadLoadFence();
+            if (isIndexIntact(first)) {
+                return (int) lines;
+            }
+        }
+    }
+
+    /**
+     * @return the numbers of the lines from {@code from} to {@code to} among the kept lines of the stream, or among
+     * all kept lines if the stream is null
+     */
+    private long[] lineNumbers(OutputSource source, long first, long count, int from, int to) {
+        if (source == null) {
+            final long start = Math.min(count, first + Math.max(0, from));
+            final long end = Math.min(count, first + Math.max(0, to));
+            final long[] lineNumbers = new long[(int) Math.max(0, end - start)];
+            for (int i = 0; i < lineNumbers.length; i++) {
+                lineNumbers[i] = start + i;
+            }
+            return lineNumbers;
+        }
+        if (first >= count) {
+            return new long[0];
+        }
+
+        // the first line of the stream whose count of lines of the stream up to and including it is past from
+        final long target = before(source, first) + Math.max(0, from);
+        long low = first - 1;
+        long high = count;
+        while (high - low > 1) {
+            final long middle = low + (high - low) / 2;
+            if (through(source, middle) > target) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+
+        final long[] lineNumbers = new long[Math.max(0, to - Math.max(0, from))];
+        int found = 0;
+        for (long line = high; line < count && found < lineNumbers.length; line++) {
+            if (lineSources[index(line)] == source.ordinal()) {
+                lineNumbers[found++] = line;
+            }
+        }
+
+        return Arrays.copyOf(lineNumbers, found);
+    }
+
+    /**
+     * @return the number of lines of the stream written before the line
+     */
+    private long before(OutputSource source, long line) {
+        final long errorLines = lineErrorsBefore[index(line)];
+        return source == OutputSource.STDERR ? errorLines : line - errorLines;
+    }
+
+    /**
+     * @return the number of lines of the stream written up to and including the line
+     */
+    private long through(OutputSource source, long line) {
+        return before(source, line) + (lineSources[index(line)] == source.ordinal() ? 1 : 0);
+    }
+
+    /**
+     * Decodes the line where it is in the ring, only copying it if it wraps around the end.
+     */
+    private String decode(long line) {
+        final int index = index(line);
+        final int length = lineLengths[index];
+        final int offset = (int) (lineStarts[index] % bytes.length);
+        if (offset + length <= bytes.length) {
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+
+        final byte[] lineBytes = new byte[length];
+        final int firstPart = bytes.length - offset;
+        System.arraycopy(bytes, offset, lineBytes, 0, firstPart);
+        System.arraycopy(bytes, 0, lineBytes, firstPart, length - firstPart);
+        return new String(lineBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The index entry of a line is only overwritten when the line as many lines later as the index has room for is
+     * written. The index keeps fewer lines than that, so what was read from it since the line was the oldest kept
+     * is intact unless the spare room was filled meanwhile.
+     */
+    private boolean isIndexIntact(long first) {
+        return lineCount < first + lineStarts.length;
+    }
+
+    /**
+     * The bytes of a line are only overwritten after it has been evicted, so those of the lines that were still
+     * kept after they were read are intact.
+     *
+     * @return how many of the ascending lines have been evicted
+     */
+    private int evictedAmong(long[] lineNumbers) {
+        final long first = firstLine;
+        int evicted = 0;
+        while (evicted < lineNumbers.length && lineNumbers[evicted] < first) {
+            evicted++;
+        }
+
+        return evicted;
+    }
+
+    private int index(long lineNumber) {
+        return (int) (lineNumber % lineStarts.length);
+    }
+}
@@ -1,33 +1,108 @@
 package se.itello.commandrunner;
 
-import javafx.application.Platform;
-
 import java.io.*;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Command {
+    private static final Duration KILL_GRACE_PERIOD = Duration.ofSeconds(5);
+    private static final Duration OUTPUT_DRAIN_TIMEOUT = Duration.ofSeconds(2);
+    private static final Pattern TIMEOUT_PATTERN = Pattern.compile("(\\d+)\\s*(ms|s|m|h)?");
+
+    private static Executor listenerExecutor = Runnable::run;
+    private static Charset outputCharset = Charset.defaultCharset();
+    private static boolean useShellSessions = false;
+
     private String commandNameAndArguments;
+    private volatile List<String> arguments;
     private String commandDirectory;
     private String parentCommandDirectory;
     private String commandComment;
+    private String dependsOn;
+    private String timeout;
+    private String parentTimeout;
+    private String inputs;
+    private String parentInputs;
+    private String outputRules;
+    private String parentOutputRules;
+    private volatile OutputRules.Evaluator[] outputEvaluators;
+    private volatile ResultCache.OutputRecorder outputRecorder;
+    private Object sessionGroup;
+    private volatile ShellSession session;
+    private volatile AgentConnection.RemoteRun remoteRun;
     private Process process;
     private CommandStatus commandStatus;
+    private int exitCode;
+    private volatile boolean killed;
+    private volatile boolean timedOut;
+    private volatile boolean outputClosed;
+    private volatile long runningSince;
 
-    private final List<CommandListener> commandListeners;
+    private final EventBus<CommandEvent> events;
+    private boolean executedPublished;
+    private final ResourceUsage resourceUsage;
+    private final OutputMatches outputMatches;
     private BufferedWriter writer;
 
     public Command(String commandDirectory, String commandNameAndArguments, String comment) {
         this.commandNameAndArguments = commandNameAndArguments;
         this.commandDirectory = commandDirectory;
         this.commandComment = comment;
-        commandListeners = new ArrayList<>();
+        this.dependsOn = "";
+        this.timeout = "";
+        this.inputs = "";
+        this.outputRules = "";
+        events = new EventBus<>(CommandEvent::isOutput, CommandEvent::coalesce);
         commandStatus = CommandStatus.IDLE;
+        resourceUsage = new ResourceUsage();
+        outputMatches = new OutputMatches();
+    }
+
+    /**
+     * Sets where listener callbacks that must not run on the reader thread are executed,
+     * e.g. the JavaFX application thread. Defaults to running them directly.
+     */
+    static void setListenerExecutor(Executor executor) {
+        listenerExecutor = executor;
+    }
+
+    static void setOutputCharset(Charset charset) {
+        outputCharset = charset;
+    }
+
+    /**
+     * Sets whether commands that belong to a group run in warm shells shared by the group, see {@link ShellSession}.
+     */
+    static void setUseShellSessions(boolean use) {
+        useShellSessions = use;
     }
 
     public Command copy() {
         final Command command = new Command(commandDirectory, commandNameAndArguments, commandComment);
         command.parentCommandDirectory = parentCommandDirectory;
+        command.dependsOn = dependsOn;
+        command.timeout = timeout;
+        command.parentTimeout = parentTimeout;
+        command.inputs = inputs;
+        command.parentInputs = parentInputs;
+        command.outputRules = outputRules;
+        command.parentOutputRules = parentOutputRules;
+        command.sessionGroup = sessionGroup;
+        command.arguments = arguments;
         return command;
     }
 
@@ -39,12 +114,109 @@ public class Command {
         this.commandComment = commandComment;
     }
 
+    public String getDependsOn() {
+        return dependsOn;
+    }
+
+    public void setDependsOn(String dependsOn) {
+        this.dependsOn = dependsOn;
+    }
+
+    public String getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @param inputs comma separated globs of the files the command reads. A command with inputs, from itself or
+     *               its groups, is skipped when neither the inputs nor anything else changed since it last succeeded.
+     */
+    public void setInputs(String inputs) {
+        this.inputs = inputs;
+    }
+
+    public String getOutputRules() {
+        return outputRules;
+    }
+
+    /**
+     * @param outputRules rules matched against each output line as it is read, e.g. {@code fail /BUILD FAILED/},
+     *                    see {@link OutputRules}. The rules of the groups of the command apply as well.
+     */
+    public void setOutputRules(String outputRules) {
+        this.outputRules = outputRules;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rules can not be parsed
+     */
+    public static void validateOutputRules(String outputRules) {
+        OutputRules.parse(outputRules);
+    }
+
+    public String getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(String timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param timeout a whole number with an optional unit: ms, s, m or h (seconds if left out)
+     * @return the timeout, or null if it is blank
+     * @throws IllegalArgumentException if the timeout can not be parsed
+     */
+    public static Duration parseTimeout(String timeout) {
+        if (timeout == null || timeout.isBlank()) {
+            return null;
+        }
+
+        final Matcher matcher = TIMEOUT_PATTERN.matcher(timeout.trim().toLowerCase(Locale.ROOT));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("invalid timeout: " + timeout);
+        }
+
+        final long amount = Long.parseLong(matcher.group(1));
+        final String unit = matcher.group(2) == null ? "s" : matcher.group(2);
+        switch (unit) {
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "s":
+            default:
+                return Duration.ofSeconds(amount);
+        }
+    }
+
     public String getCommandNameAndArguments() {
         return commandNameAndArguments;
     }
 
     public void setCommandNameAndArguments(String commandNameAndArguments) {
         this.commandNameAndArguments = commandNameAndArguments;
+        this.arguments = null;
+    }
+
+    /**
+     * @return the command line split into the executable, looked up in PATH, and its arguments
+     * @throws IllegalArgumentException if the command line is empty or has an unterminated quote
+     */
+    public List<String> getArguments() {
+        List<String> arguments = this.arguments;
+        if (arguments == null) {
+            final List<String> tokens = new ArrayList<>(CommandLineTokenizer.tokenize(commandNameAndArguments));
+            if (tokens.isEmpty()) {
+                throw new IllegalArgumentException("no command given");
+            }
+
+            arguments = Collections.unmodifiableList(tokens);
+            this.arguments = arguments;
+        }
+
+        return arguments;
     }
 
     public String getCommandDirectory() {
@@ -55,11 +227,66 @@ public class Command {
         this.commandDirectory = commandDirectory;
     }
 
+    /**
+     * Hands output and matches to the listener on the thread that read them, which waits for the listener, and
+     * messages and the end of the command on the listener executor, see {@link #setListenerExecutor(Executor)}.
+     * Listeners are removed once the command has finished.
+     */
     public void addCommandListener(CommandListener listener) {
-        commandListeners.add(listener);
+        addCommandListener(listener, adapter -> events.subscribe(adapter));
+    }
+
+    /**
+     * Like {@link #addCommandListener(CommandListener)}, but hands output and matches to the listener on a
+     * dispatcher thread, so that reading the output does not wait for the listener unless the backpressure is
+     * {@link EventBus.Backpressure#BLOCK} and more than the capacity of batches are waiting for it.
+     */
+    public void addCommandListener(CommandListener listener, int capacity, EventBus.Backpressure backpressure) {
+        addCommandListener(listener, adapter -> events.subscribe(adapter, capacity, backpressure));
+    }
+
+    /**
+     * Like {@link #addCommandListener(CommandListener, int, EventBus.Backpressure)}, for a listener that reads the
+     * output from where it is stored rather than as it is read. Output is never queued for the listener, which only
+     * gets matches and messages, and the end of the command.
+     */
+    public void addCommandListenerWithoutOutput(CommandListener listener) {
+        // only output is bounded, so the capacity never applies
+        addCommandListener(listener, adapter -> events.subscribe(adapter, event -> !event.isOutput(), 1, EventBus.Backpressure.BLOCK));
+    }
+
+    private void addCommandListener(CommandListener listener, Consumer<Consumer<CommandEvent>> subscribe) {
+        synchronized (events) {
+            if (executedPublished) {
+                // added by whoever started the command, after it had already finished
+                listenerExecutor.execute(() -> listener.commandExecuted(this));
+            } else {
+                subscribe.accept(CommandEvent.adapt(listener, listenerExecutor));
+            }
+        }
+    }
+
+    private void publish(CommandEvent event) {
+        try {
+            events.publish(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publishExecuted() {
+        synchronized (events) {
+            executedPublished = true;
+            publish(CommandEvent.executed(this));
+            events.unsubscribeAll();
+        }
     }
 
     public void sendInput(String input) {
+        if (writer == null) {
+            return;
+        }
+
         try {
             writer.write(input);
             writer.newLine();
@@ -70,81 +297,387 @@ public class Command {
     }
 
     void execute() {
-        BufferedReader reader = null;
+        Watchdog.Task timeoutTask = null;
+        final long startedAt = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        runningSince = startedAt;
+        boolean cached = false;
+        boolean ranToExit = false;
+        timedOut = false;
+        outputClosed = false;
+        outputMatches.clear();
+        synchronized (events) {
+            executedPublished = false;
+        }
+        Metrics.getInstance().commandStarted();
         try {
-            ProcessBuilder builder = new ProcessBuilder(commandNameAndArguments.split(" "))
-                    .redirectErrorStream(true);
-            if (getCommandDirectory() != null && !getCommandDirectory().isEmpty()) {
-                builder.directory(new File(commandDirectory));
-            } else if (parentCommandDirectory != null) {
-                builder.directory(new File(parentCommandDirectory));
-            }
+            final Duration timeoutDuration = parseTimeout(timeout == null || timeout.isBlank() ? parentTimeout : timeout);
+
+            final List<String> arguments = new ArrayList<>(getArguments());
+            arguments.set(0, ExecutableResolver.resolve(arguments.get(0)));
+
+            ProcessBuilder builder = new ProcessBuilder(arguments);
+            builder.directory(getWorkingDirectory());
 
             commandStatus = CommandStatus.RUNNING;
-            process = builder.start();
-            InputStreamReader inputStreamReader = new InputStreamReader(process.getInputStream());
-            reader = new BufferedReader(inputStreamReader);
-            writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
-
-            String lineRead;
-            while ((lineRead = reader.readLine()) != null) {
-                final String line = lineRead;
-                commandListeners.forEach(listener -> listener.commandOutput(this, line));
+
+            final OutputRules rules = OutputRules.parse(getAllOutputRules());
+            outputEvaluators = rules.isEmpty() ? null : new OutputRules.Evaluator[]{
+                    rules.evaluator(this::outputMatched),
+                    rules.evaluator(this::outputMatched)
+            };
+
+            final String allInputs = getAllInputs();
+            ResultCache.Fingerprint fingerprint = null;
+            if (!allInputs.isEmpty()) {
+                final File workingDirectory = builder.directory() == null ? new File("") : builder.directory();
+                fingerprint = ResultCache.getInstance().fingerprint(arguments, workingDirectory.toPath().toAbsolutePath().normalize(), allInputs);
+                final Optional<List<ResultCache.RecordedLine>> cachedOutput = ResultCache.getInstance().lookup(fingerprint);
+                if (cachedOutput.isPresent()) {
+                    cached = true;
+                    replay(cachedOutput.get());
+                    exitCode = 0;
+                    commandStatus = outputMatches.isFailed() ? CommandStatus.FAIL : CommandStatus.OK;
+                    return;
+                }
+                outputRecorder = new ResultCache.OutputRecorder();
+            }
+
+            if (timeoutDuration != null) {
+                timeoutTask = Watchdog.getInstance().schedule(timeoutDuration, () -> timeOut(timeoutDuration));
+            }
+
+            final AgentDispatcher.Slot slot = AgentDispatcher.getInstance().acquire();
+            try {
+                if (killed) {
+                    // killed while it was being prepared, when there was nothing to terminate yet
+                    exitCode = -1;
+                } else if (slot.getAgent() != null) {
+                    exitCode = executeOnAgent(slot.getAgent(), builder.directory());
+                } else if (useShellSessions && sessionGroup != null && ShellSession.isSupported()) {
+                    exitCode = executeInSession(arguments, builder.directory());
+                } else {
+                    exitCode = executeProcess(builder);
+                }
+            } finally {
+                AgentDispatcher.getInstance().release(slot);
+            }
+            ranToExit = true;
+
+            if (killed) {
+                commandStatus = CommandStatus.IDLE;
+            } else if (timedOut || outputMatches.isFailed()) {
+                commandStatus = CommandStatus.FAIL;
+            } else {
+                commandStatus = CommandStatus.createCommandStatus(exitCode);
             }
 
-            commandStatus = CommandStatus.createCommandStatus(process.waitFor());
+            if (fingerprint != null && commandStatus == CommandStatus.OK) {
+                ResultCache.getInstance().record(fingerprint, outputRecorder.getLines());
+            }
         } catch (Exception e) {
-            Platform.runLater(
-                    () -> {
-                        String message = e.getMessage() == null ? "" : e.getMessage();
-                        commandListeners.forEach(
-                                listener -> listener.commandOutput(this, e.getClass().getSimpleName() + ":" + message)
-                        );
-                    }
-            );
+            publish(CommandEvent.message(this, e.getClass().getSimpleName() + ":" + (e.getMessage() == null ? "" : e.getMessage())));
+            this.exitCode = -1;
             this.commandStatus = CommandStatus.FAIL;
         } finally {
+            outputRecorder = null;
+            outputEvaluators = null;
+            if (timeoutTask != null) {
+                timeoutTask.cancel();
+            }
+            outputClosed = true;
+            recordRun(startedAt, (System.nanoTime() - startNanos) / 1_000_000, cached, ranToExit);
+            Metrics.getInstance().commandFinished(commandStatus, System.nanoTime() - startNanos, cached);
+            runningSince = 0;
+            publishExecuted();
+        }
+    }
+
+    private void recordRun(long startedAt, long durationMillis, boolean cached, boolean ranToExit) {
+        final byte status = commandStatus == CommandStatus.OK ? RunHistory.STATUS_OK
+                : commandStatus == CommandStatus.FAIL ? RunHistory.STATUS_FAIL : RunHistory.STATUS_KILLED;
+        final byte flags = (byte) ((cached ? RunHistory.FLAG_CACHED : 0) | (timedOut ? RunHistory.FLAG_TIMED_OUT : 0)
+                | (cached || ranToExit ? 0 : RunHistory.FLAG_NO_EXIT));
+        RunHistory.getInstance().record(this, startedAt, durationMillis, exitCode, status, flags);
+    }
+
+    private int executeProcess(ProcessBuilder builder) throws Exception {
+        InputStream inputStream = null;
+        InputStream errorStream = null;
+        try {
+            process = builder.start();
+            if (killed) {
+                terminateProcessTree();
+            }
+            ResourceSampler.getInstance().track(process, resourceUsage);
+            inputStream = process.getInputStream();
+            errorStream = process.getErrorStream();
+            writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), outputCharset));
+
+            final Future<?> outputPumpDone = pump(inputStream, OutputSource.STDOUT);
+            final Future<?> errorPumpDone = pump(errorStream, OutputSource.STDERR);
+
+            final int exitCode = process.waitFor();
+            awaitOutput(outputPumpDone, errorPumpDone);
+            return exitCode;
+        } finally {
+            if (process != null) {
+                ResourceSampler.getInstance().untrack(process);
+            }
             try {
                 if (writer != null) {
                     writer.close();
                 }
-                if (reader != null) {
-                    reader.close();
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+                if (errorStream != null) {
+                    errorStream.close();
                 }
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            Platform.runLater(
-                    () -> {
-                        commandListeners.forEach(listener -> listener.commandExecuted(this));
-                        commandListeners.clear();
-                    }
-            );
         }
     }
 
-    public void kill() {
-        if (process == null || !process.isAlive()) {
-            return;
+    /**
+     * Runs the command in a warm shell of its group instead of starting a process of its own.
+     * Input can not be sent to commands run this way.
+     */
+    private int executeInSession(List<String> arguments, File directory) throws Exception {
+        final ShellSession session = ShellSessionPool.getInstance().acquire(sessionGroup, outputCharset);
+        this.session = session;
+        ResourceSampler.getInstance().track(session.getProcess(), resourceUsage);
+        try {
+            if (killed) {
+                ShellSessionPool.getInstance().release(sessionGroup, session);
+                return -1;
+            }
+            final int exitCode = session.run(arguments, directory, this::outputRead);
+            ShellSessionPool.getInstance().release(sessionGroup, session);
+            return exitCode;
+        } catch (Exception e) {
+            session.close();
+            throw e;
+        } finally {
+            ResourceSampler.getInstance().untrack(session.getProcess());
+            this.session = null;
         }
+    }
 
+    /**
+     * Runs the command line on a worker agent, which reports its output and exit code.
+     * Input can not be sent to commands run this way, and their resources are not sampled.
+     */
+    private int executeOnAgent(AgentConnection agent, File directory) throws Exception {
+        final AgentConnection.RemoteRun run = agent.submit(directory == null ? "" : directory.getPath(), commandNameAndArguments, this::outputRead);
+        remoteRun = run;
+        if (killed) {
+            run.kill();
+        }
         try {
-            process.destroyForcibly();
-            process.waitFor();
-            if (!process.isAlive()) {
-                commandStatus = CommandStatus.IDLE;
-                commandListeners.forEach(listener -> listener.commandExecuted(this));
+            return run.awaitExitCode();
+        } finally {
+            remoteRun = null;
+        }
+    }
+
+    private File getWorkingDirectory() {
+        if (commandDirectory != null && !commandDirectory.isEmpty()) {
+            return new File(commandDirectory);
+        }
+
+        return parentCommandDirectory == null ? null : new File(parentCommandDirectory);
+    }
+
+    private String getAllOutputRules() {
+        return Stream.of(outputRules, parentOutputRules)
+                .filter(rules -> rules != null && !rules.isBlank())
+                .collect(Collectors.joining(","));
+    }
+
+    private String getAllInputs() {
+        return Stream.of(inputs, parentInputs)
+                .filter(globs -> globs != null && !globs.isBlank())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Hands over the output of the last successful run as if the command had just written it.
+     */
+    private void replay(List<ResultCache.RecordedLine> output) {
+        outputRead(new OutputBatch(List.of("Inputs unchanged, output of the last successful run:"), OutputSource.STDERR, System.nanoTime()));
+
+        int batchStart = 0;
+        for (int i = 1; i <= output.size(); i++) {
+            if (i == output.size() || output.get(i).source != output.get(batchStart).source) {
+                final List<String> lines = output.subList(batchStart, i).stream()
+                        .map(line -> line.text)
+                        .collect(Collectors.toList());
+                outputRead(new OutputBatch(lines, output.get(batchStart).source, System.nanoTime()));
+                batchStart = i;
             }
-        } catch (Exception e1) {
-            e1.printStackTrace();
         }
     }
 
+    private Future<?> pump(InputStream stream, OutputSource source) {
+        final OutputPump pump = new OutputPump(stream, outputCharset, source, this::outputRead);
+        return CommandExecutor.getInstance().executeForRunningCommand(() -> {
+            pump.run();
+            return null;
+        });
+    }
+
+    /**
+     * Background processes started by the command may inherit its output and keep it open long after the
+     * command itself has exited, so the output is only waited for a short while once the process is gone.
+     */
+    private void awaitOutput(Future<?>... pumps) throws Exception {
+        final long deadline = System.nanoTime() + OUTPUT_DRAIN_TIMEOUT.toNanos();
+        for (Future<?> pump : pumps) {
+            try {
+                pump.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                pump.cancel(true);
+            }
+        }
+    }
+
+    private void outputRead(OutputBatch batch) {
+        if (outputClosed) {
+            return;
+        }
+        Metrics.getInstance().outputRead(batch);
+
+        final ResultCache.OutputRecorder recorder = outputRecorder;
+        if (recorder != null) {
+            recorder.add(batch);
+        }
+
+        publish(CommandEvent.output(this, batch));
+
+        final OutputRules.Evaluator[] evaluators = outputEvaluators;
+        if (evaluators != null) {
+            // each stream is read by a thread of its own, so each has an evaluator of its own
+            final OutputRules.Evaluator evaluator = evaluators[batch.getSource().ordinal()];
+            synchronized (evaluator) {
+                for (String line : batch.getLines()) {
+                    evaluator.evaluate(line, batch.getSource());
+                }
+            }
+        }
+    }
+
+    private void outputMatched(OutputMatch match) {
+        outputMatches.add(match);
+        publish(CommandEvent.match(this, match));
+    }
+
+    /**
+     * Called when the command is queued to run, so that a kill of an earlier run does not apply to it.
+     */
+    void queued() {
+        killed = false;
+    }
+
+    public void kill() {
+        if (process == null && session == null && remoteRun == null && CommandExecutor.getInstance().cancel(this)) {
+            commandStatus = CommandStatus.IDLE;
+            publishExecuted();
+            return;
+        }
+
+        // a command that is being prepared, e.g. hashing its inputs, sees this before it starts
+        killed = true;
+        if (isProcessRunning()) {
+            terminateProcessTree();
+        }
+    }
+
+    private boolean isProcessRunning() {
+        return remoteRun != null || session != null || (process != null && process.isAlive());
+    }
+
+    private void timeOut(Duration timeoutDuration) {
+        if (!isProcessRunning()) {
+            return;
+        }
+
+        timedOut = true;
+        publish(CommandEvent.message(this, "Timed out after " + timeoutDuration.toMillis() + " ms"));
+        terminateProcessTree();
+    }
+
+    /**
+     * Asks the process and all of its descendants to terminate, and forcibly destroys those that are still alive
+     * after a grace period. The descendants are collected first, since they can not be found once their parent is gone.
+     * Of a shell session only the command is terminated, not the shell, and a command on an agent is terminated
+     * by the agent.
+     */
+    private void terminateProcessTree() {
+        final AgentConnection.RemoteRun remoteRun = this.remoteRun;
+        if (remoteRun != null) {
+            remoteRun.kill();
+            return;
+        }
+        final ShellSession session = this.session;
+        if (session == null && process == null) {
+            return;
+        }
+        final Stream<ProcessHandle> processes = session != null
+                ? session.runningProcesses()
+                : Stream.concat(process.descendants(), Stream.of(process.toHandle()));
+        final List<ProcessHandle> processTree = processes.collect(Collectors.toList());
+        processTree.forEach(ProcessHandle::destroy);
+        Watchdog.getInstance().schedule(KILL_GRACE_PERIOD, () -> processTree.stream()
+                .filter(ProcessHandle::isAlive)
+                .forEach(ProcessHandle::destroyForcibly));
+    }
+
     public CommandStatus getCommandStatus() {
         return commandStatus;
     }
 
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return how long the command has been running in milliseconds, or -1 if it is not running
+     */
+    public long getRunningMillis() {
+        final long since = runningSince;
+        return since == 0 ? -1 : Math.max(0, System.currentTimeMillis() - since);
+    }
+
+    public ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    public OutputMatches getOutputMatches() {
+        return outputMatches;
+    }
+
     public void setParentCommandDirectory(String parentCommandDirectory) {
         this.parentCommandDirectory = parentCommandDirectory;
     }
+
+    public void setParentTimeout(String parentTimeout) {
+        this.parentTimeout = parentTimeout;
+    }
+
+    public void setParentInputs(String parentInputs) {
+        this.parentInputs = parentInputs;
+    }
+
+    public void setParentOutputRules(String parentOutputRules) {
+        this.parentOutputRules = parentOutputRules;
+    }
+
+    /**
+     * @param sessionGroup identifies the group whose shell sessions the command may use
+     */
+    public void setSessionGroup(Object sessionGroup) {
+        this.sessionGroup = sessionGroup;
+    }
 }
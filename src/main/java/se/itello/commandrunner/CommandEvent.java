@@ -0,0 +1,94 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * What happened to a command, published on its {@link EventBus} and handed to a {@link CommandListener} by
+ * {@link #adapt(CommandListener, Executor)}.
+ */
+class CommandEvent {
+    enum Type {
+        OUTPUT,
+        MATCH,
+        MESSAGE,
+        EXECUTED
+    }
+
+    private final Type type;
+    private final Command command;
+    private final OutputBatch batch;
+    private final OutputMatch match;
+    private final String message;
+
+    private CommandEvent(Type type, Command command, OutputBatch batch, OutputMatch match, String message) {
+        this.type = type;
+        this.command = command;
+        this.batch = batch;
+        this.match = match;
+        this.message = message;
+    }
+
+    static CommandEvent output(Command command, OutputBatch batch) {
+        return new CommandEvent(Type.OUTPUT, command, batch, null, null);
+    }
+
+    static CommandEvent match(Command command, OutputMatch match) {
+        return new CommandEvent(Type.MATCH, command, null, match, null);
+    }
+
+    static CommandEvent message(Command command, String message) {
+        return new CommandEvent(Type.MESSAGE, command, null, null, message);
+    }
+
+    static CommandEvent executed(Command command) {
+        return new CommandEvent(Type.EXECUTED, command, null, null, null);
+    }
+
+    /**
+     * Only output counts towards the capacity of a subscriber, as there is one event for every batch of lines read.
+     */
+    boolean isOutput() {
+        return type == Type.OUTPUT;
+    }
+
+    /**
+     * @return the lines of both batches of output as one, or null if they are not from the same stream
+     */
+    static CommandEvent coalesce(CommandEvent queued, CommandEvent event) {
+        if (queued.type != Type.OUTPUT || event.type != Type.OUTPUT || queued.batch.getSource() != event.batch.getSource()) {
+            return null;
+        }
+        final List<String> lines = new ArrayList<>(queued.batch.size() + event.batch.size());
+        lines.addAll(queued.batch.getLines());
+        lines.addAll(event.batch.getLines());
+
+        return output(queued.command, new OutputBatch(lines, queued.batch.getSource(), queued.batch.getTimestamp()));
+    }
+
+    /**
+     * Hands output and matches to the listener on the thread the events are delivered on, and messages and the end
+     * of the command on the executor, e.g. the JavaFX application thread. Everything a listener is handed on the
+     * executor was published after everything it was handed before.
+     */
+    static Consumer<CommandEvent> adapt(CommandListener listener, Executor executor) {
+        return event -> {
+            switch (event.type) {
+                case OUTPUT:
+                    listener.commandOutputBatch(event.command, event.batch);
+                    break;
+                case MATCH:
+                    listener.commandOutputMatched(event.command, event.match);
+                    break;
+                case MESSAGE:
+                    executor.execute(() -> listener.commandOutput(event.command, event.message));
+                    break;
+                case EXECUTED:
+                    executor.execute(() -> listener.commandExecuted(event.command));
+                    break;
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package se.itello.commandrunner;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared worker pool that all command queues execute their commands on. At most
+ * {@link #getMaxConcurrentCommands()} commands run at the same time, the rest wait
+ * and the one expected to take longest starts first, so that a slow command does not
+ * start last and keep everything waiting for it. Commands that never ran before are
+ * expected to take longest, and commands expected to take equally long start first
+ * come, first served.
+ */
+public class CommandExecutor {
+    static final int DEFAULT_MAX_CONCURRENT_COMMANDS = Runtime.getRuntime().availableProcessors();
+
+    private static final CommandExecutor instance = new CommandExecutor(DEFAULT_MAX_CONCURRENT_COMMANDS);
+
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService outputPumps;
+    private final Map<Command, Runnable> pendingCommands;
+    private final AtomicLong submitted;
+    private int maxConcurrentCommands;
+    private int agentCapacity;
+
+    private CommandExecutor(int maxConcurrentCommands) {
+        executor = new ThreadPoolExecutor(
+                maxConcurrentCommands,
+                maxConcurrentCommands,
+                30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new WorkerThreadFactory("command-worker-")
+        );
+        executor.allowCoreThreadTimeOut(true);
+        outputPumps = Executors.newCachedThreadPool(new WorkerThreadFactory("output-pump-"));
+        pendingCommands = new ConcurrentHashMap<>();
+        submitted = new AtomicLong();
+        this.maxConcurrentCommands = maxConcurrentCommands;
+    }
+
+    public static CommandExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param expectedMillis how long the command is expected to run, or -1 if it is not known
+     */
+    void execute(Command command, long expectedMillis) {
+        final Runnable task = new PendingCommand(command, expectedMillis, submitted.getAndIncrement());
+        command.queued();
+        pendingCommands.put(command, task);
+        executor.execute(task);
+    }
+
+    /**
+     * Runs work that belongs to an already running command, such as reading its stderr, outside of the worker limit.
+     */
+    <T> Future<T> executeForRunningCommand(Callable<T> task) {
+        return outputPumps.submit(task);
+    }
+
+    /**
+     * Whoever removes a command from the pending commands gets it, either a worker to run it or this to cancel it,
+     * so a command taken from the queue but not yet run by a worker is cancelled as well.
+     *
+     * @return whether the command was cancelled before a worker got it
+     */
+    boolean cancel(Command command) {
+        final Runnable task = pendingCommands.remove(command);
+        if (task == null) {
+            return false;
+        }
+
+        // a worker that already took it from the queue finds it gone and skips it
+        executor.remove(task);
+        return true;
+    }
+
+    public synchronized void setMaxConcurrentCommands(int maxConcurrentCommands) {
+        if (maxConcurrentCommands < 1) {
+            throw new IllegalArgumentException("at least one concurrent command is required");
+        }
+
+        this.maxConcurrentCommands = maxConcurrentCommands;
+        resizeWorkers();
+    }
+
+    /**
+     * Adds a worker for every command the connected agents can run, see {@link AgentDispatcher}.
+     */
+    synchronized void setAgentCapacity(int agentCapacity) {
+        this.agentCapacity = agentCapacity;
+        resizeWorkers();
+    }
+
+    private void resizeWorkers() {
+        final int workers = maxConcurrentCommands + agentCapacity;
+        // core size may never exceed max size, so the order depends on the direction of the change
+        if (workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+    }
+
+    /**
+     * @return how many commands may run locally at the same time
+     */
+    public synchronized int getMaxConcurrentCommands() {
+        return maxConcurrentCommands;
+    }
+
+    /**
+     * @return how many commands may run at the same time, locally and on agents
+     */
+    public int getWorkerCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    private class PendingCommand implements Runnable, Comparable<PendingCommand> {
+        private final Command command;
+        private final long expectedMillis;
+        private final long sequenceNumber;
+        private final long submittedAt;
+
+        PendingCommand(Command command, long expectedMillis, long sequenceNumber) {
+            this.command = command;
+            this.expectedMillis = expectedMillis < 0 ? Long.MAX_VALUE : expectedMillis;
+            this.sequenceNumber = sequenceNumber;
+            submittedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            if (pendingCommands.remove(command) != null) {
+                Metrics.getInstance().commandDequeued(System.nanoTime() - submittedAt);
+                command.execute();
+            }
+        }
+
+        @Override
+        public int compareTo(PendingCommand other) {
+            final int byExpectedDuration = Long.compare(other.expectedMillis, expectedMillis);
+            return byExpectedDuration != 0 ? byExpectedDuration : Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+
+        WorkerThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
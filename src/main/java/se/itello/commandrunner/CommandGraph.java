@@ -0,0 +1,131 @@
+package se.itello.commandrunner;
+
+import javafx.scene.control.TreeItem;
+import se.itello.commandrunner.gui.commandtable.CommandTableCommandRow;
+import se.itello.commandrunner.gui.commandtable.CommandTableRow;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static se.itello.commandrunner.gui.commandtable.CommandTableRowTreeItemListManipulator.addAllCommandRowsForTreeItem;
+import static se.itello.commandrunner.gui.commandtable.CommandTableRowTreeItemListManipulator.getFlatTreeItemList;
+
+/**
+ * Copies of the commands to run together with the dependency edges between them.
+ * A row depends on the rows whose comments are listed in its "depends on" column,
+ * and a dependency declared on a group applies to every command in the group.
+ * Depending on a group means depending on every command in it.
+ */
+class CommandGraph {
+    private static final String DEPENDENCY_SEPARATOR = ",";
+
+    private final List<Command> commands;
+    private final Map<Command, List<Command>> predecessors;
+
+    private CommandGraph(List<Command> commands, Map<Command, List<Command>> predecessors) {
+        this.commands = commands;
+        this.predecessors = predecessors;
+    }
+
+    List<Command> getCommands() {
+        return commands;
+    }
+
+    Map<Command, List<Command>> getPredecessors() {
+        return predecessors;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a dependency names a comment that does not exist or the dependencies form a cycle
+     */
+    static CommandGraph create(List<TreeItem<CommandTableRow>> treeItemsToRun, TreeItem<CommandTableRow> root) {
+        final Map<CommandTableCommandRow, TreeItem<CommandTableRow>> treeItems = new LinkedHashMap<>();
+        final Map<CommandTableCommandRow, Command> copies = new HashMap<>();
+        final List<CommandTableCommandRow> rows = new ArrayList<>();
+        treeItemsToRun.forEach(item -> addAllCommandRowsForTreeItem(item, rows));
+        rows.forEach(row -> copies.put(row, row.getCommand().copy()));
+
+        final Map<String, Set<Command>> commandsByComment = new HashMap<>();
+        for (TreeItem<CommandTableRow> itemToRun : treeItemsToRun) {
+            for (TreeItem<CommandTableRow> item : getFlatTreeItemList(itemToRun)) {
+                final CommandTableRow row = item.getValue();
+                if (row instanceof CommandTableCommandRow) {
+                    treeItems.put((CommandTableCommandRow) row, item);
+                }
+
+                final String comment = row.commandCommentProperty().getValue();
+                if (comment != null && !comment.trim().isEmpty()) {
+                    final List<CommandTableCommandRow> rowsInItem = new ArrayList<>();
+                    addAllCommandRowsForTreeItem(item, rowsInItem);
+                    commandsByComment.computeIfAbsent(comment.trim(), key -> new LinkedHashSet<>())
+                            .addAll(rowsInItem.stream().map(copies::get).collect(Collectors.toList()));
+                }
+            }
+        }
+
+        final Set<String> allComments = getFlatTreeItemList(root).stream()
+                .map(item -> item.getValue().commandCommentProperty().getValue())
+                .filter(Objects::nonNull)
+                .map(String::trim)
+                .collect(Collectors.toSet());
+
+        final Map<Command, List<Command>> predecessors = new HashMap<>();
+        for (Map.Entry<CommandTableCommandRow, TreeItem<CommandTableRow>> entry : treeItems.entrySet()) {
+            final Command command = copies.get(entry.getKey());
+            final Set<Command> commandPredecessors = new LinkedHashSet<>();
+
+            for (TreeItem<CommandTableRow> item = entry.getValue(); item != null; item = item.getParent()) {
+                for (String dependency : getDependencies(item.getValue())) {
+                    final Set<Command> dependencyCommands = commandsByComment.get(dependency);
+                    if (dependencyCommands != null) {
+                        commandPredecessors.addAll(dependencyCommands);
+                    } else if (!allComments.contains(dependency)) {
+                        throw new IllegalArgumentException("\"" + command.getCommandNameAndArguments()
+                                + "\" depends on \"" + dependency + "\", but no row has that comment.");
+                    }
+                }
+            }
+
+            commandPredecessors.remove(command);
+            predecessors.put(command, new ArrayList<>(commandPredecessors));
+        }
+
+        final List<Command> commands = rows.stream().map(copies::get).collect(Collectors.toList());
+        checkForCycles(commands, predecessors);
+
+        return new CommandGraph(commands, predecessors);
+    }
+
+    private static List<String> getDependencies(CommandTableRow row) {
+        final String dependsOn = row.dependsOnProperty().getValue();
+        if (dependsOn == null) {
+            return Collections.emptyList();
+        }
+
+        return Arrays.stream(dependsOn.split(DEPENDENCY_SEPARATOR))
+                .map(String::trim)
+                .filter(dependency -> !dependency.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static void checkForCycles(List<Command> commands, Map<Command, List<Command>> predecessors) {
+        final Set<Command> resolved = new HashSet<>();
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Command command : commands) {
+                if (!resolved.contains(command) && resolved.containsAll(predecessors.get(command))) {
+                    resolved.add(command);
+                    progress = true;
+                }
+            }
+        }
+
+        if (resolved.size() < commands.size()) {
+            throw new IllegalArgumentException("The dependencies form a cycle between: " + commands.stream()
+                    .filter(command -> !resolved.contains(command))
+                    .map(Command::getCommandNameAndArguments)
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package se.itello.commandrunner;
+
+import java.util.*;
+
+/**
+ * Command queue that runs every command as soon as all of its predecessors have succeeded,
+ * instead of one command at a time.
+ */
+class CommandGraphQueue extends CommandQueue {
+    private final Map<Command, List<Command>> predecessors;
+    private final Set<Command> startedCommands;
+    private final Set<Command> runningCommands;
+
+    CommandGraphQueue(Map<Command, List<Command>> predecessors, CommandQueueListener... listeners) {
+        super(listeners);
+        this.predecessors = predecessors;
+        startedCommands = new HashSet<>();
+        runningCommands = new LinkedHashSet<>();
+    }
+
+    @Override
+    void executeNextCommand() {
+        if (getQueueStatus() == CommandQueueStatus.Running) {
+            final List<Command> readyCommands = new ArrayList<>();
+            for (Command command : commands) {
+                if (!startedCommands.contains(command) && isReady(command)) {
+                    readyCommands.add(command);
+                }
+            }
+            // the longest first, as only the first ones may find a free worker before the executor orders them
+            readyCommands.sort(Comparator.comparingLong(this::getExpectedMillisUnknownFirst).reversed());
+            for (Command command : readyCommands) {
+                startedCommands.add(command);
+                runningCommands.add(command);
+                CommandExecutor.getInstance().execute(command, getExpectedMillis(command));
+                publish(CommandQueueEvent.processing(this, command));
+            }
+        }
+
+        if (runningCommands.isEmpty()) {
+            setStoppedState();
+            publish(CommandQueueEvent.finished(this));
+        }
+    }
+
+    private boolean isReady(Command command) {
+        return getPredecessors(command).stream()
+                .allMatch(predecessor -> startedCommands.contains(predecessor)
+                        && !runningCommands.contains(predecessor)
+                        && predecessor.getCommandStatus() == CommandStatus.OK);
+    }
+
+    @Override
+    public void commandExecuted(Command command) {
+        if (!runningCommands.remove(command)) {
+            return;
+        }
+
+        compressOutput(command);
+
+        if (command.getCommandStatus() == CommandStatus.FAIL && CommandRunner.getInstance().getProgramState().getHaltOnError()) {
+            stopWhenCurrentCommandFinishes();
+        }
+
+        executeNextCommand();
+    }
+
+    private long getExpectedMillisUnknownFirst(Command command) {
+        final long expectedMillis = getExpectedMillis(command);
+        return expectedMillis < 0 ? Long.MAX_VALUE : expectedMillis;
+    }
+
+    @Override
+    List<Command> getUnfinishedCommands() {
+        if (getQueueStatus() != CommandQueueStatus.Running) {
+            return new ArrayList<>(runningCommands);
+        }
+
+        final List<Command> unfinishedCommands = new ArrayList<>();
+        for (Command command : commands) {
+            if (!startedCommands.contains(command) || runningCommands.contains(command)) {
+                unfinishedCommands.add(command);
+            }
+        }
+
+        return unfinishedCommands;
+    }
+
+    /**
+     * @return the longest expected time along a chain of unfinished dependencies, or the remaining work spread over
+     * all workers if that is longer
+     */
+    @Override
+    public long getEstimatedRemainingMillis() {
+        final long remainingWorkMillis = getRemainingWorkMillis();
+        if (remainingWorkMillis < 0) {
+            return -1;
+        }
+
+        final Set<Command> unfinishedCommands = new HashSet<>(getUnfinishedCommands());
+        final Map<Command, Long> finishedIn = new HashMap<>();
+        long criticalPathMillis = 0;
+        for (Command command : unfinishedCommands) {
+            criticalPathMillis = Math.max(criticalPathMillis, finishedIn(command, unfinishedCommands, finishedIn));
+        }
+
+        return Math.max(criticalPathMillis, remainingWorkMillis / CommandExecutor.getInstance().getWorkerCount());
+    }
+
+    private long finishedIn(Command command, Set<Command> unfinishedCommands, Map<Command, Long> finishedIn) {
+        final Long memoized = finishedIn.get(command);
+        if (memoized != null) {
+            return memoized;
+        }
+
+        long predecessorsFinishedIn = 0;
+        for (Command predecessor : getPredecessors(command)) {
+            if (unfinishedCommands.contains(predecessor)) {
+                predecessorsFinishedIn = Math.max(predecessorsFinishedIn, finishedIn(predecessor, unfinishedCommands, finishedIn));
+            }
+        }
+        final long commandFinishedIn = predecessorsFinishedIn + getExpectedRemainingMillis(command);
+        finishedIn.put(command, commandFinishedIn);
+
+        return commandFinishedIn;
+    }
+
+    @Override
+    public void kill() {
+        stopWhenCurrentCommandFinishes();
+        new ArrayList<>(runningCommands).forEach(Command::kill);
+    }
+
+    @Override
+    public List<Command> getPredecessors(Command command) {
+        return predecessors.getOrDefault(command, Collections.emptyList());
+    }
+}
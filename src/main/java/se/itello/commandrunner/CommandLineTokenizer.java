@@ -0,0 +1,98 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a command line into arguments roughly like a POSIX shell does, without expanding anything but {@code ~}.
+ * <ul>
+ * <li>Arguments are separated by any amount of whitespace.</li>
+ * <li>Single quotes keep everything up to the next single quote as is.</li>
+ * <li>Double quotes keep everything up to the next unescaped double quote, where \" and \\ are escapes.</li>
+ * <li>Outside quotes a backslash escapes whitespace, quotes and backslashes. Any other backslash is kept,
+ * so Windows paths work unchanged.</li>
+ * <li>An unquoted {@code ~} at the start of an argument, alone or followed by a slash, is the home directory.</li>
+ * </ul>
+ */
+class CommandLineTokenizer {
+    private CommandLineTokenizer() {
+    }
+
+    static List<String> tokenize(String commandLine) {
+        final List<String> arguments = new ArrayList<>();
+        final StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+
+        int i = 0;
+        while (i < commandLine.length()) {
+            final char c = commandLine.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+                i++;
+            } else if (c == '\'') {
+                final int end = commandLine.indexOf('\'', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unterminated ' in: " + commandLine);
+                }
+                argument.append(commandLine, i + 1, end);
+                inArgument = true;
+                i = end + 1;
+            } else if (c == '"') {
+                i = appendDoubleQuoted(commandLine, i + 1, argument);
+                inArgument = true;
+            } else if (c == '\\' && i + 1 < commandLine.length() && isEscapable(commandLine.charAt(i + 1))) {
+                argument.append(commandLine.charAt(i + 1));
+                inArgument = true;
+                i += 2;
+            } else if (c == '~' && !inArgument && isHomeReference(commandLine, i + 1)) {
+                argument.append(System.getProperty("user.home"));
+                inArgument = true;
+                i++;
+            } else {
+                argument.append(c);
+                inArgument = true;
+                i++;
+            }
+        }
+
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+
+        return arguments;
+    }
+
+    /**
+     * @return the index after the closing quote
+     */
+    private static int appendDoubleQuoted(String commandLine, int start, StringBuilder argument) {
+        for (int i = start; i < commandLine.length(); i++) {
+            final char c = commandLine.charAt(i);
+            if (c == '"') {
+                return i + 1;
+            }
+
+            if (c == '\\' && i + 1 < commandLine.length() && (commandLine.charAt(i + 1) == '"' || commandLine.charAt(i + 1) == '\\')) {
+                argument.append(commandLine.charAt(++i));
+            } else {
+                argument.append(c);
+            }
+        }
+
+        throw new IllegalArgumentException("unterminated \" in: " + commandLine);
+    }
+
+    private static boolean isEscapable(char c) {
+        return Character.isWhitespace(c) || c == '\'' || c == '"' || c == '\\';
+    }
+
+    private static boolean isHomeReference(String commandLine, int next) {
+        return next == commandLine.length()
+                || Character.isWhitespace(commandLine.charAt(next))
+                || commandLine.charAt(next) == '/';
+    }
+}
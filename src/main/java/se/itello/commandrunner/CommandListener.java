@@ -3,4 +3,14 @@ package se.itello.commandrunner;
 public interface CommandListener {
     void commandExecuted(Command command);
     void commandOutput(Command command, String text);
+
+    default void commandOutputBatch(Command command, OutputBatch batch) {
+        batch.getLines().forEach(line -> commandOutput(command, line));
+    }
+
+    /**
+     * Called, on the thread that read the line, when a line of output matches one of the output rules of the command.
+     */
+    default void commandOutputMatched(Command command, OutputMatch match) {
+    }
 }
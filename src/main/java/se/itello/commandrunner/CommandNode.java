@@ -0,0 +1,145 @@
+package se.itello.commandrunner;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static se.itello.commandrunner.JSONFileReader.*;
+
+/**
+ * Plain counterpart of the {@code TreeItem<CommandTableRow>} model, used when commands are run without a GUI.
+ */
+class CommandNode {
+    private final CommandNode parent;
+    private final Command command;
+    private final List<CommandNode> children;
+    private String directory;
+    private final String comment;
+    private final String timeout;
+    private final String inputs;
+    private final String outputRules;
+
+    private CommandNode(CommandNode parent, Command command, String directory, String comment, String timeout, String inputs, String outputRules) {
+        this.parent = parent;
+        this.command = command;
+        this.directory = directory;
+        this.comment = comment;
+        this.timeout = timeout;
+        this.inputs = inputs;
+        this.outputRules = outputRules;
+        children = new ArrayList<>();
+    }
+
+    static CommandNode createNode(JSONObject object) throws JSONException {
+        return createNode(null, object);
+    }
+
+    private static CommandNode createNode(CommandNode parent, JSONObject object) throws JSONException {
+        JSONArray jsonChildren = object.has(CHILDREN) ? (JSONArray) object.get(CHILDREN) : null;
+        JSONObject jsonCommand = object.has(COMMAND) ? (JSONObject) object.get(COMMAND) : null;
+
+        final CommandNode node;
+        if (jsonCommand != null) {
+            final String directory = (String) jsonCommand.get(DIRECTORY_STRING);
+            final String comment = (String) jsonCommand.get(COMMAND_COMMENT_STRING);
+            final String commandNameAndArguments = (String) jsonCommand.get(COMMAND_AND_ARGUMENTS_STRING);
+
+            final String timeout = jsonCommand.has(TIMEOUT) ? jsonCommand.getString(TIMEOUT) : "";
+            final String inputs = jsonCommand.has(INPUTS) ? jsonCommand.getString(INPUTS) : "";
+            final String outputRules = jsonCommand.has(OUTPUT_RULES) ? jsonCommand.getString(OUTPUT_RULES) : "";
+
+            final Command command = new Command(directory, commandNameAndArguments, comment);
+            command.setTimeout(timeout);
+            command.setInputs(inputs);
+            command.setOutputRules(outputRules);
+            node = new CommandNode(parent, command, directory, comment, timeout, inputs, outputRules);
+        } else {
+            String directory = object.has(DIRECTORY_STRING) ? object.getString(DIRECTORY_STRING) : "";
+            String comment = object.has(COMMAND_COMMENT_STRING) ? object.getString(COMMAND_COMMENT_STRING) : "";
+            String timeout = object.has(TIMEOUT) ? object.getString(TIMEOUT) : "";
+            String inputs = object.has(INPUTS) ? object.getString(INPUTS) : "";
+            String outputRules = object.has(OUTPUT_RULES) ? object.getString(OUTPUT_RULES) : "";
+            node = new CommandNode(parent, null, directory, comment, timeout, inputs, outputRules);
+        }
+
+        if (jsonChildren != null) {
+            for (int i = 0; i < jsonChildren.length(); i++) {
+                node.children.add(createNode(node, jsonChildren.getJSONObject(i)));
+            }
+        }
+
+        return node;
+    }
+
+    List<CommandNode> findAllWithComment(String comment) {
+        List<CommandNode> nodes = new ArrayList<>();
+        Deque<CommandNode> queue = new ArrayDeque<>();
+        queue.push(this);
+
+        while (!queue.isEmpty()) {
+            CommandNode node = queue.removeFirst();
+            queue.addAll(node.children);
+            if (comment.equals(node.comment)) {
+                nodes.add(node);
+            }
+        }
+
+        return nodes;
+    }
+
+    void replaceVariables(Map<String, String> variableMap) {
+        if (command != null) {
+            command.setCommandNameAndArguments(Variables.replaceVariables(command.getCommandNameAndArguments(), variableMap));
+            command.setCommandDirectory(Variables.replaceVariables(command.getCommandDirectory(), variableMap));
+        }
+        directory = Variables.replaceVariables(directory, variableMap);
+        children.forEach(child -> child.replaceVariables(variableMap));
+    }
+
+    void addAllCommands(List<Command> commands) {
+        if (command != null) {
+            if (commands.contains(command)) {
+                return;
+            }
+
+            commands.add(command);
+            for (CommandNode parentNode = parent; parentNode != null; parentNode = parentNode.parent) {
+                if (!parentNode.directory.isEmpty()) {
+                    command.setParentCommandDirectory(parentNode.directory);
+                    break;
+                }
+            }
+            for (CommandNode parentNode = parent; parentNode != null; parentNode = parentNode.parent) {
+                if (!parentNode.timeout.isBlank()) {
+                    command.setParentTimeout(parentNode.timeout);
+                    break;
+                }
+            }
+
+            final List<String> parentInputs = new ArrayList<>();
+            for (CommandNode parentNode = parent; parentNode != null; parentNode = parentNode.parent) {
+                if (!parentNode.inputs.isBlank()) {
+                    parentInputs.add(parentNode.inputs);
+                }
+            }
+            command.setParentInputs(String.join(",", parentInputs));
+
+            final List<String> parentOutputRules = new ArrayList<>();
+            for (CommandNode parentNode = parent; parentNode != null; parentNode = parentNode.parent) {
+                if (!parentNode.outputRules.isBlank()) {
+                    parentOutputRules.add(parentNode.outputRules);
+                }
+            }
+            command.setParentOutputRules(String.join(",", parentOutputRules));
+            command.setSessionGroup(parent);
+        } else {
+            children.forEach(child -> child.addAllCommands(commands));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package se.itello.commandrunner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * All output of a command, from stdout and stderr in the order it was read. The output is spooled to a
+ * {@link MappedOutputLog}, or kept in a {@link MemoryOutputLog} of the latest lines if that is not possible,
+ * and moved to a {@link CompressedOutputLog} once the command has finished.
+ */
+public class CommandOutput {
+    private static final int MEMORY_CAPACITY_BYTES = 4 * 1024 * 1024;
+
+    private final ReadWriteLock lock;
+    private final OutputLog view;
+    private OutputLog log;
+    private boolean closed;
+
+    CommandOutput() {
+        lock = new ReentrantReadWriteLock();
+        view = new View();
+        log = openLog();
+    }
+
+    private static OutputLog openLog() {
+        try {
+            return MappedOutputLog.create();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new MemoryOutputLog(MEMORY_CAPACITY_BYTES);
+        }
+    }
+
+    /**
+     * Replaces the log with a compressed copy and closes it, which is done once the command has finished since a
+     * compressed log can not be appended to. The log is copied without blocking readers, which only wait for the
+     * copy to take its place.
+     */
+    void compress() {
+        final OutputLog log;
+        lock.readLock().lock();
+        try {
+            if (closed || this.log instanceof CompressedOutputLog) {
+                return;
+            }
+            log = this.log;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final CompressedOutputLog compressedLog = CompressedOutputLog.compress(log);
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                compressedLog.close();
+                return;
+            }
+            this.log = compressedLog;
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends are synchronized on the output, so that a caller also synchronizing on it can keep track of the line
+     * numbers, e.g. for a search index.
+     *
+     * @return the number of the first line added, among the lines of both streams
+     */
+    synchronized int add(OutputBatch batch) {
+        final int firstLineNumber = view.size(null);
+        view.append(batch.getSource(), batch.getLines(), batch.getTimestamp());
+        return firstLineNumber;
+    }
+
+    /**
+     * @return the number of the line, among the lines of both streams
+     */
+    synchronized int add(OutputSource source, String line) {
+        final int lineNumber = view.size(null);
+        view.append(source, List.of(line), System.nanoTime());
+        return lineNumber;
+    }
+
+    /**
+     * @return the log, which stays the same when it is compressed
+     */
+    OutputLog getLog() {
+        return view;
+    }
+
+    public int getLineCount() {
+        return view.size(null);
+    }
+
+    public int getLineCount(OutputSource source) {
+        return view.size(source);
+    }
+
+    public List<String> getLines(OutputSource source) {
+        return view.getLines(source, 0, view.size(source));
+    }
+
+    public List<String> getLines(OutputSource source, int from, int to) {
+        return view.getLines(source, from, to);
+    }
+
+    /**
+     * @return stdout and stderr interleaved in the order they were read
+     */
+    public List<String> getMergedLines() {
+        return view.getLines(null, 0, view.size(null));
+    }
+
+    public List<String> getMergedLines(int from, int to) {
+        return view.getLines(null, from, to);
+    }
+
+    void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The current log, read while it is not being replaced.
+     */
+    private class View implements OutputLog {
+        @Override
+        public void append(OutputSource source, List<String> lines, long timestamp) {
+            lock.readLock().lock();
+            try {
+                log.append(source, lines, timestamp);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int size(OutputSource source) {
+            lock.readLock().lock();
+            try {
+                return log.size(source);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<String> getLines(OutputSource source, int from, int to) {
+            lock.readLock().lock();
+            try {
+                return log.getLines(source, from, to);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public long[] getTimestamps(OutputSource source, int from, int to) {
+            lock.readLock().lock();
+            try {
+                return log.getTimestamps(source, from, to);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public OutputSource[] getSources(int from, int to) {
+            lock.readLock().lock();
+            try {
+                return log.getSources(from, to);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int countUpTo(OutputSource source, long timestamp) {
+            lock.readLock().lock();
+            try {
+                return log.countUpTo(source, timestamp);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            CommandOutput.this.close();
+        }
+    }
+}
@@ -1,42 +1,50 @@
 package se.itello.commandrunner;
 
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static se.itello.commandrunner.CommandStatus.sortCommandStatuses;
 
 public class CommandQueue implements CommandListener {
-    private final static int MAX_OUTPUT_CAPACITY = 1024;
-
     public enum CommandQueueStatus {
         Stopped,
         Running,
         Stopping
     }
 
-    private final List<CommandQueueListener> listeners;
-    private final Map<Command, ArrayBlockingQueue<String>> commandOutputs;
+    /**
+     * How many batches of output of a command may wait to be kept before reading more of it waits.
+     */
+    private static final int OUTPUT_CAPACITY = 1024;
+
+    private final EventBus<CommandQueueEvent> events;
+    private final Map<Command, CommandOutput> commandOutputs;
+    private final OutputSearchIndex searchIndex;
 
     private int commandToRunIndex;
-    private List<Command> commands;
+    List<Command> commands;
+    private Map<Command, Long> expectedDurations;
 
-    private CommandQueueStatus status;
+    private volatile CommandQueueStatus status;
 
     CommandQueue(CommandQueueListener... listeners) {
-        this.listeners = new ArrayList<>();
+        // queues are started and finish on the JavaFX application thread, which is where listeners want them
+        events = new EventBus<>(event -> false, (queued, event) -> null);
         if (listeners != null) {
-            this.listeners.addAll(Arrays.asList(listeners));
+            Arrays.stream(listeners).forEach(listener -> events.subscribe(CommandQueueEvent.adapt(listener)));
         }
 
         status = CommandQueueStatus.Stopped;
-        commandOutputs = new HashMap<>();
+        commandOutputs = new ConcurrentHashMap<>();
+        searchIndex = new OutputSearchIndex();
     }
 
     void start() {
-        listeners.forEach(listener -> listener.commandQueueStarted(this));
+        publish(CommandQueueEvent.started(this));
         if (status == CommandQueueStatus.Stopped) {
             status = CommandQueueStatus.Running;
+            Metrics.getInstance().queueStarted();
             executeNextCommand();
         }
     }
@@ -45,7 +53,9 @@ public class CommandQueue implements CommandListener {
         if (status == CommandQueueStatus.Stopped) {
             this.commands = new ArrayList<>(commands);
             commandToRunIndex = 0;
-            this.commands.forEach(command -> command.addCommandListener(this));
+            expectedDurations = RunHistory.getInstance().getExpectedDurations(this.commands);
+            // output is kept on a dispatcher thread, without ever dropping any of it
+            this.commands.forEach(command -> command.addCommandListener(this, OUTPUT_CAPACITY, EventBus.Backpressure.BLOCK));
         }
     }
 
@@ -68,72 +78,177 @@ public class CommandQueue implements CommandListener {
         return Optional.empty();
     }
 
-    private void setStoppedState() {
+    void publish(CommandQueueEvent event) {
+        try {
+            events.publish(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void setStoppedState() {
+        if (status != CommandQueueStatus.Stopped) {
+            Metrics.getInstance().queueStopped();
+        }
         status = CommandQueueStatus.Stopped;
     }
 
-    private void executeNextCommand() {
+    void executeNextCommand() {
         Optional<Command> command = getCurrentCommand();
         if (command.isPresent()) {
-            new Thread(command.get()::execute).start();
-            listeners.forEach(listener -> listener.commandQueueIsProcessing(command.get()));
+            CommandExecutor.getInstance().execute(command.get(), getExpectedMillis(command.get()));
+            publish(CommandQueueEvent.processing(this, command.get()));
         } else {
             setStoppedState();
-            listeners.forEach(listener -> listener.commandQueueFinished(this));
+            publish(CommandQueueEvent.finished(this));
         }
     }
 
     @Override
     public void commandExecuted(Command command) {
+        compressOutput(command);
         if (status == CommandQueueStatus.Running) {
             if (command.getCommandStatus().equals(CommandStatus.FAIL) && CommandRunner.getInstance().getProgramState().getHaltOnError()) {
                 setStoppedState();
-                listeners.forEach(listener -> listener.commandQueueFinished(this));
+                publish(CommandQueueEvent.finished(this));
             } else {
                 commandToRunIndex++;
                 executeNextCommand();
             }
         } else if (status == CommandQueueStatus.Stopping) {
             setStoppedState();
-            listeners.forEach(listener -> listener.commandQueueFinished(this));
+            publish(CommandQueueEvent.finished(this));
+        }
+    }
+
+    /**
+     * @return the median duration of the earlier runs of the command, or -1 if it never ran
+     */
+    long getExpectedMillis(Command command) {
+        return expectedDurations.getOrDefault(command, -1L);
+    }
+
+    /**
+     * @return how much longer the command is expected to run, or -1 if it never ran before
+     */
+    long getExpectedRemainingMillis(Command command) {
+        final long expectedMillis = getExpectedMillis(command);
+        if (expectedMillis < 0) {
+            return -1;
+        }
+
+        return Math.max(0, expectedMillis - Math.max(0, command.getRunningMillis()));
+    }
+
+    /**
+     * @return the commands that have not yet run to completion and will run unless the queue is stopped
+     */
+    List<Command> getUnfinishedCommands() {
+        if (status == CommandQueueStatus.Stopped) {
+            return Collections.emptyList();
+        }
+        if (status == CommandQueueStatus.Stopping) {
+            return getCurrentCommand().map(Collections::singletonList).orElse(Collections.emptyList());
+        }
+
+        return commands.subList(Math.min(commandToRunIndex, commands.size()), commands.size());
+    }
+
+    /**
+     * @return the expected running time left of all unfinished commands added up, or -1 if one of them never ran
+     * before, see {@link RunHistory}
+     */
+    public long getRemainingWorkMillis() {
+        long remainingMillis = 0;
+        for (Command command : getUnfinishedCommands()) {
+            final long commandRemainingMillis = getExpectedRemainingMillis(command);
+            if (commandRemainingMillis < 0) {
+                return -1;
+            }
+            remainingMillis += commandRemainingMillis;
         }
+
+        return remainingMillis;
+    }
+
+    /**
+     * @return how long the queue is expected to run, or -1 if it can not be estimated
+     */
+    public long getEstimatedRemainingMillis() {
+        return getRemainingWorkMillis();
+    }
+
+    /**
+     * Has the output of a command that has finished compressed in the background, see {@link CompressedOutputLog}.
+     */
+    void compressOutput(Command command) {
+        OutputCompressor.getInstance().compress(getCommandOutput(command));
     }
 
     @Override
     public void commandOutput(Command command, String text) {
-        ArrayBlockingQueue<String> outputForCommand = getCommandOutput(command);
-        if (outputForCommand.size() >= MAX_OUTPUT_CAPACITY) {
-            try {
-                outputForCommand.take();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        final CommandOutput output = getCommandOutput(command);
+        // messages and batches come on different threads, and the index must get the lines in the order added
+        synchronized (output) {
+            searchIndex.add(command, output.add(OutputSource.STDERR, text), List.of(text));
         }
-        outputForCommand.add(text);
+        publish(CommandQueueEvent.outputStored(this, command));
     }
 
-    private ArrayBlockingQueue<String> getCommandOutput(Command command) {
-        ArrayBlockingQueue<String> outputForCommand = commandOutputs.get(command);
-        if (outputForCommand == null) {
-            outputForCommand = new ArrayBlockingQueue<>(MAX_OUTPUT_CAPACITY);
-            commandOutputs.put(command, outputForCommand);
+    @Override
+    public void commandOutputBatch(Command command, OutputBatch batch) {
+        final CommandOutput output = getCommandOutput(command);
+        synchronized (output) {
+            searchIndex.add(command, output.add(batch), batch.getLines());
         }
-        return outputForCommand;
+        publish(CommandQueueEvent.outputStored(this, command));
+    }
+
+    /**
+     * @return the output lines of the commands that contain the query, ignoring case, in the order they were read
+     */
+    public List<SearchHit> search(String query, int maxHits) {
+        return searchIndex.search(query, maxHits, this::getCommandOutput);
+    }
+
+    private CommandOutput getCommandOutput(Command command) {
+        return commandOutputs.computeIfAbsent(command, key -> new CommandOutput());
+    }
+
+    /**
+     * Releases the output of all commands and its search index, after which the queue shows no output.
+     */
+    public void close() {
+        commands.forEach(this::getCommandOutput);
+        commandOutputs.values().forEach(CommandOutput::close);
+        searchIndex.clear();
     }
 
-    public ArrayBlockingQueue<String> getCommandOutput() {
+    public List<CommandOutput> getCommandOutputs() {
         return commands.stream()
                 .map(this::getCommandOutput)
-                .reduce(new ArrayBlockingQueue<>(MAX_OUTPUT_CAPACITY), (a, b) -> {
-                    a.addAll(b);
-                    return a;
-                });
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param source the stream to show, or null for both
+     * @return the output of all commands in the order it was read, as far as it has been read
+     */
+    public MergedOutput getMergedOutput(OutputSource source) {
+        return new MergedOutput(getCommandOutputs(), source);
     }
 
     public List<Command> getCommands() {
         return Collections.unmodifiableList(commands);
     }
 
+    /**
+     * @return the commands that must succeed before the given command may run, if the queue is not strictly sequential
+     */
+    public List<Command> getPredecessors(Command command) {
+        return Collections.emptyList();
+    }
+
     public CommandStatus getCommandStatus() {
         List<CommandStatus> commandStatusList = commands.stream()
                 .map(Command::getCommandStatus)
@@ -152,7 +267,7 @@ public class CommandQueue implements CommandListener {
         return commands.contains(command);
     }
 
-    public ArrayBlockingQueue<String> getCommandOutputForCommand(Command command) {
+    public CommandOutput getCommandOutputForCommand(Command command) {
         if (isCommandInCommandQueue(command)) {
             return getCommandOutput(command);
         }
@@ -0,0 +1,61 @@
+package se.itello.commandrunner;
+
+import java.util.function.Consumer;
+
+/**
+ * What happened to a command queue, published on its {@link EventBus} and handed to a {@link CommandQueueListener}
+ * by {@link #adapt(CommandQueueListener)}.
+ */
+class CommandQueueEvent {
+    enum Type {
+        STARTED,
+        PROCESSING,
+        OUTPUT_STORED,
+        FINISHED
+    }
+
+    private final Type type;
+    private final CommandQueue commandQueue;
+    private final Command command;
+
+    private CommandQueueEvent(Type type, CommandQueue commandQueue, Command command) {
+        this.type = type;
+        this.commandQueue = commandQueue;
+        this.command = command;
+    }
+
+    static CommandQueueEvent started(CommandQueue commandQueue) {
+        return new CommandQueueEvent(Type.STARTED, commandQueue, null);
+    }
+
+    static CommandQueueEvent processing(CommandQueue commandQueue, Command command) {
+        return new CommandQueueEvent(Type.PROCESSING, commandQueue, command);
+    }
+
+    static CommandQueueEvent outputStored(CommandQueue commandQueue, Command command) {
+        return new CommandQueueEvent(Type.OUTPUT_STORED, commandQueue, command);
+    }
+
+    static CommandQueueEvent finished(CommandQueue commandQueue) {
+        return new CommandQueueEvent(Type.FINISHED, commandQueue, null);
+    }
+
+    static Consumer<CommandQueueEvent> adapt(CommandQueueListener listener) {
+        return event -> {
+            switch (event.type) {
+                case STARTED:
+                    listener.commandQueueStarted(event.commandQueue);
+                    break;
+                case PROCESSING:
+                    listener.commandQueueIsProcessing(event.command);
+                    break;
+                case OUTPUT_STORED:
+                    listener.commandOutputStored(event.command);
+                    break;
+                case FINISHED:
+                    listener.commandQueueFinished(event.commandQueue);
+                    break;
+            }
+        };
+    }
+}
@@ -4,4 +4,10 @@ public interface CommandQueueListener {
     void commandQueueStarted(CommandQueue commandQueue);
     void commandQueueFinished(CommandQueue commandQueue);
     void commandQueueIsProcessing(Command command);
+
+    /**
+     * Called, on the thread that stored it, once output of the command can be read from the queue.
+     */
+    default void commandOutputStored(Command command) {
+    }
 }
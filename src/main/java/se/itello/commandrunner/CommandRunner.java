@@ -1,5 +1,8 @@
 package se.itello.commandrunner;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
@@ -13,10 +16,13 @@ import javafx.scene.control.TreeItem;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import org.json.JSONException;
 import se.itello.commandrunner.gui.WindowLayout;
 import se.itello.commandrunner.gui.commandtable.CommandTableCommandRow;
 import se.itello.commandrunner.gui.commandtable.CommandTableRow;
 import se.itello.commandrunner.gui.initializable.MainController;
+import se.itello.commandrunner.gui.initializable.StatisticsController;
 
 import java.io.IOException;
 import java.util.*;
@@ -24,15 +30,14 @@ import java.util.stream.Collectors;
 
 import static se.itello.commandrunner.CommandStatus.sortCommandStatuses;
 import static se.itello.commandrunner.gui.commandtable.CommandTableRowTreeItemListManipulator.addAllCommandRowsForTreeItem;
-import static se.itello.commandrunner.gui.commandtable.CommandTableRowTreeItemListManipulator.getFlatTreeItemList;
 
-public class CommandRunner extends Application implements CommandQueueListener, CommandListener {
+public class CommandRunner extends Application implements CommandQueueListener {
     private static final String PROGRAM_TITLE = "Command Runner";
     private static final String PROGRAM_VERSION = "0.2.3";
 
     private static final String MAIN_FXML = "/fxml/main.fxml";
     private static final String SETTINGS_FXML = "/fxml/settings.fxml";
-    private static final String VARIABLE_SYMBOL = "#";
+    private static final String STATISTICS_FXML = "/fxml/statistics.fxml";
     private static final String DARK_CSS = "/css/dark.css";
     private static final String LIGHT_CSS = "/css/light.css";
     private static final String MAIN_CSS = "/css/main.css";
@@ -41,13 +46,13 @@ public class CommandRunner extends Application implements CommandQueueListener,
     private final ProgramState programState;
 
     private static CommandRunner instance = null;
-    private String runCommand = null;
-    private String variables = null;
     private Stage primaryStage;
     private TreeItem<CommandTableRow> rootNode;
-    private boolean runningWithParameters = false;
-    private ArrayDeque<CommandQueue> runningQueues;
+    private final ArrayDeque<CommandQueue> runningQueues;
     private Scene mainScene;
+    private Timeline titleUpdater;
+    private CommandQueueListener commandQueueTreeListener;
+    private ControlServer controlServer;
 
     @SuppressWarnings("unused")
     public CommandRunner() throws Exception {
@@ -55,6 +60,8 @@ public class CommandRunner extends Application implements CommandQueueListener,
             throw new Exception("There can be only one");
         }
         programState = new ProgramState();
+        runningQueues = new ArrayDeque<>();
+        Command.setListenerExecutor(Metrics.getInstance().measureBacklog(Platform::runLater));
         setInstance(this);
     }
 
@@ -67,17 +74,17 @@ public class CommandRunner extends Application implements CommandQueueListener,
     }
 
     public static void main(String[] args) {
-        launch(args);
-    }
-
-    @Override
-    public void init() throws Exception {
-        super.init();
+        if (ControlClient.isControlRequested(args)) {
+            System.exit(ControlClient.run(args));
+        }
+        if (HeadlessRunner.isRunRequested(args)) {
+            System.exit(HeadlessRunner.run(args));
+        }
+        if (WorkerAgent.isAgentRequested(args)) {
+            System.exit(WorkerAgent.run(args));
+        }
 
-        final Parameters parameters = getParameters();
-        final Map<String, String> namedParameters = parameters.getNamed();
-        runCommand = namedParameters.get("run");
-        variables = namedParameters.get("variables");
+        launch(args);
     }
 
     @Override
@@ -85,23 +92,37 @@ public class CommandRunner extends Application implements CommandQueueListener,
         this.primaryStage = primaryStage;
         rootNode = loadSettings();
 
-        if (runCommand != null) {
-            runningWithParameters = true;
-            runCommand(runCommand, variables);
-        } else {
-            commandImage = new Image("/png/command.png");
-            Parent root = FXMLLoader.load(getClass().getResource(MAIN_FXML));
-            primaryStage.setTitle(programTitleSuffix());
-            primaryStage.getIcons().add(commandImage);
-            primaryStage.setOnCloseRequest(this::onClose);
-            WindowLayout windowLayout = programState.getWindowLayout();
-            mainScene = createScene(root);
-            primaryStage.setScene(mainScene);
-            primaryStage.setWidth(windowLayout.getWindowWidth());
-            primaryStage.setHeight(windowLayout.getWindowHeight());
-            primaryStage.setMaximized(windowLayout.isMaximized());
-            primaryStage.show();
-            runningQueues = new ArrayDeque<>();
+        commandImage = new Image("/png/command.png");
+        Parent root = FXMLLoader.load(getClass().getResource(MAIN_FXML));
+        primaryStage.setTitle(programTitleSuffix());
+        primaryStage.getIcons().add(commandImage);
+        primaryStage.setOnCloseRequest(this::onClose);
+        WindowLayout windowLayout = programState.getWindowLayout();
+        mainScene = createScene(root);
+        primaryStage.setScene(mainScene);
+        primaryStage.setWidth(windowLayout.getWindowWidth());
+        primaryStage.setHeight(windowLayout.getWindowHeight());
+        primaryStage.setMaximized(windowLayout.isMaximized());
+        primaryStage.show();
+
+        titleUpdater = new Timeline(new KeyFrame(Duration.seconds(1), event -> setTitleWithCommandQueueStatus()));
+        titleUpdater.setCycleCount(Animation.INDEFINITE);
+        // reads the run history before the first queue needs the expected durations of its commands
+        final Thread historyReader = new Thread(RunHistory.getInstance()::aggregate, "run-history-reader");
+        historyReader.setDaemon(true);
+        historyReader.start();
+
+        try {
+            controlServer = ControlServer.start(Platform::runLater);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (controlServer != null) {
+            controlServer.close();
         }
     }
 
@@ -183,12 +204,28 @@ public class CommandRunner extends Application implements CommandQueueListener,
         settingsStage.show();
     }
 
+    public void addStatisticsStage(List<TreeItem<CommandTableRow>> treeItems) throws IOException {
+        FXMLLoader loader = getFXML(STATISTICS_FXML);
+        Parent root = loader.load();
+        loader.<StatisticsController>getController().setCommands(
+                getCommandTableCommandRowsToRun(treeItems).stream()
+                        .map(CommandTableCommandRow::getCommand)
+                        .collect(Collectors.toList())
+        );
+        Stage statisticsStage = new Stage();
+        statisticsStage.setTitle("Run statistics - " + programTitleSuffix());
+        statisticsStage.getIcons().add(commandImage);
+        statisticsStage.setScene(createScene(root));
+        statisticsStage.show();
+    }
+
     private FXMLLoader getFXML(String fxml) {
         return new FXMLLoader(getClass().getResource(fxml));
     }
 
     public void controllerLoaded(MainController controller) {
         controller.setRoot(rootNode);
+        commandQueueTreeListener = controller.getCommandQueueListener();
         controller.addLayoutChangedListener(programState);
 
         Platform.runLater(() -> {
@@ -219,62 +256,6 @@ public class CommandRunner extends Application implements CommandQueueListener,
         return programState;
     }
 
-    private void runCommand(String commandComment, String variables) {
-        runAllCommandsWithCommentAndVariables(commandComment, variables, loadSettings());
-    }
-
-    private void runAllCommandsWithCommentAndVariables(String comment, String variables, TreeItem<CommandTableRow> root) {
-        if (comment == null || comment.equals("")) {
-            return;
-        }
-
-        final List<TreeItem<CommandTableRow>> commandsWithComment = getFlatTreeItemList(root).stream()
-                .filter(commandItem -> commandItem.getValue().commandCommentProperty().getValue().equals(comment))
-                .collect(Collectors.toList());
-
-        Deque<TreeItem<CommandTableRow>> commandRowsToReplace = new ArrayDeque<>();
-        commandRowsToReplace.addAll(commandsWithComment);
-        while (!commandRowsToReplace.isEmpty()) {
-            TreeItem<CommandTableRow> node = commandRowsToReplace.pop();
-            commandRowsToReplace.addAll(node.getChildren());
-            replaceCommandAndDirectoryWithVariables(variables, node);
-        }
-
-        runCommandTreeItems(commandsWithComment, this);
-    }
-
-    private void replaceCommandAndDirectoryWithVariables(String variables, TreeItem<CommandTableRow> commandWithComment) {
-        Map<String, String> variableMap = getVariableMap(variables);
-        if (!variableMap.isEmpty()) {
-            CommandTableRow value = commandWithComment.getValue();
-            value.setCommandNameAndArguments(replaceVariables(value.commandNameAndArgumentsProperty().getValue(), variableMap));
-            value.setCommandDirectory(replaceVariables(value.commandDirectoryProperty().getValue(), variableMap));
-        }
-    }
-
-    private String replaceVariables(String value, Map<String, String> variableMap) {
-        String returnValue = value;
-        for (Map.Entry<String, String> entry : variableMap.entrySet()) {
-            String entryValue = entry.getValue().replace("\\", "\\\\");
-            returnValue = returnValue.replaceAll(VARIABLE_SYMBOL + entry.getKey(), entryValue);
-        }
-
-        return returnValue;
-    }
-
-    private Map<String, String> getVariableMap(String variables) {
-        if (variables == null || variables.isEmpty()) {
-            return new HashMap<>();
-        }
-
-        Map<String, String> variableMap = new HashMap<>();
-        Arrays.stream(variables.split(","))
-                .map(entry -> entry.split("="))
-                .forEach(kvPair -> variableMap.put(kvPair[0], kvPair[1]));
-
-        return variableMap;
-    }
-
     public void runCommandTreeItems(List<TreeItem<CommandTableRow>> treeItemsToRun, CommandQueueListener... listeners) {
         List<CommandTableCommandRow> commandTableRowsToRun = getCommandTableCommandRowsToRun(treeItemsToRun);
         CommandQueue commandQueue = new CommandQueue(listeners);
@@ -297,6 +278,13 @@ public class CommandRunner extends Application implements CommandQueueListener,
 
     public void runCommandTreeItemsInParallel(List<TreeItem<CommandTableRow>> treeItemsToRun, CommandQueueListener... listeners) {
         List<CommandTableCommandRow> commandTableRowsToRun = getCommandTableCommandRowsToRun(treeItemsToRun);
+        // the longest first, as only the first ones may find a free worker before the executor orders them
+        final Map<Command, Long> expectedDurations = RunHistory.getInstance().getExpectedDurations(
+                commandTableRowsToRun.stream().map(CommandTableCommandRow::getCommand).collect(Collectors.toList())
+        );
+        commandTableRowsToRun.sort(Comparator.comparingLong(
+                (CommandTableCommandRow row) -> expectedDurations.getOrDefault(row.getCommand(), Long.MAX_VALUE)
+        ).reversed());
 
         commandTableRowsToRun.forEach(row -> {
             final CommandQueue commandQueue = new CommandQueue(listeners);
@@ -305,41 +293,63 @@ public class CommandRunner extends Application implements CommandQueueListener,
         });
     }
 
-    @Override
-    public void commandQueueStarted(CommandQueue commandQueue) {
-        if (!runningWithParameters) {
-            runningQueues.addFirst(commandQueue);
-            setTitleWithCommandQueueStatus();
+    /**
+     * Runs the commands with the comment as one queue, like {@link HeadlessRunner} does but shown in the queue tree,
+     * as requested through the {@link ControlServer}.
+     *
+     * @param variables name=value pairs separated by commas, see {@link Variables}
+     * @throws IllegalArgumentException if no command has the comment, or a variable is missing
+     */
+    CommandQueue runCommandsWithComment(String comment, String variables) {
+        final List<Command> commands = new ArrayList<>();
+        try {
+            final CommandNode root = CommandNode.createNode(JsonConverter.convertToJSON(rootNode));
+            for (CommandNode node : root.findAllWithComment(comment)) {
+                node.replaceVariables(Variables.getVariableMap(variables));
+                node.addAllCommands(commands);
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("could not read the commands: " + e.getMessage());
         }
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("no commands with the comment '" + comment + "'");
+        }
+
+        final CommandQueue commandQueue = new CommandQueue(commandQueueTreeListener, this);
+        commandQueue.setCommands(commands);
+        commandQueue.start();
+        return commandQueue;
     }
 
-    @Override
-    public void commandQueueFinished(CommandQueue commandQueue) {
-        if (!runningWithParameters) {
-            setTitleWithCommandQueueStatus();
-            runningQueues.remove(commandQueue);
-        } else {
-            System.exit(0);
-        }
+    public void runCommandTreeItemsAsGraph(List<TreeItem<CommandTableRow>> treeItemsToRun, TreeItem<CommandTableRow> root, CommandQueueListener... listeners) {
+        CommandGraph commandGraph = CommandGraph.create(treeItemsToRun, root);
+        CommandQueue commandQueue = new CommandGraphQueue(commandGraph.getPredecessors(), listeners);
+        commandQueue.setCommands(commandGraph.getCommands());
+        commandQueue.start();
     }
 
     @Override
-    public void commandQueueIsProcessing(Command command) {
-        if (!runningWithParameters) {
-            setTitleWithCommandQueueStatus();
-        } else {
-            System.out.println("--- executing " + command.getCommandNameAndArguments() + " ---");
-            command.addCommandListener(this);
+    public void commandQueueStarted(CommandQueue commandQueue) {
+        if (controlServer != null) {
+            controlServer.queueStarted(commandQueue);
         }
+        runningQueues.addFirst(commandQueue);
+        setTitleWithCommandQueueStatus();
+        titleUpdater.play();
     }
 
     @Override
-    public void commandExecuted(Command command) {
+    public void commandQueueFinished(CommandQueue commandQueue) {
+        setTitleWithCommandQueueStatus();
+        runningQueues.remove(commandQueue);
+        if (runningQueues.isEmpty()) {
+            titleUpdater.stop();
+        }
     }
 
     @Override
-    public void commandOutput(Command command, String text) {
-        System.out.println(text);
+    public void commandQueueIsProcessing(Command command) {
+        setTitleWithCommandQueueStatus();
     }
 
     private void setTitleWithCommandQueueStatus() {
@@ -352,7 +362,31 @@ public class CommandRunner extends Application implements CommandQueueListener,
                 .collect(Collectors.toList());
         sortCommandStatuses(commandStatusList);
 
-        primaryStage.setTitle(commandStatusList.get(0).toString().toLowerCase() + " - " + programTitleSuffix());
+        final CommandStatus commandStatus = commandStatusList.get(0);
+        final long estimatedRemainingMillis = getEstimatedRemainingMillis();
+        primaryStage.setTitle(commandStatus.toString().toLowerCase()
+                + (commandStatus == CommandStatus.RUNNING && estimatedRemainingMillis >= 0
+                ? ", " + SizeFormatter.MILLISECONDS_SHORT.format(estimatedRemainingMillis) + " left" : "")
+                + " - " + programTitleSuffix());
+    }
+
+    /**
+     * @return how long until all running queues are expected to have finished, or -1 if it can not be estimated
+     */
+    private long getEstimatedRemainingMillis() {
+        long estimatedRemainingMillis = 0;
+        long remainingWorkMillis = 0;
+        for (CommandQueue commandQueue : runningQueues) {
+            final long queueRemainingMillis = commandQueue.getEstimatedRemainingMillis();
+            if (queueRemainingMillis < 0) {
+                return -1;
+            }
+            estimatedRemainingMillis = Math.max(estimatedRemainingMillis, queueRemainingMillis);
+            remainingWorkMillis += commandQueue.getRemainingWorkMillis();
+        }
+
+        // queues share the workers, so together they take at least as long as all their work spread over the workers
+        return Math.max(estimatedRemainingMillis, remainingWorkMillis / CommandExecutor.getInstance().getWorkerCount());
     }
 
     public void themeChanged() {
@@ -0,0 +1,485 @@
+package se.itello.commandrunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The output of a command that has finished, kept on the heap in deflated blocks of about {@link #BLOCK_BYTES} of
+ * text. Which stream each line came from is kept as one bit per line, and the times lines were read as varint
+ * deltas, so that idle output takes a fraction of the memory and none of the disk it took while it was written.
+ * <p>
+ * Blocks are inflated when their lines are read, and the last one read is kept inflated, since lines are
+ * mostly read a page at a time.
+ */
+class CompressedOutputLog implements OutputLog {
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int MAX_BLOCK_LINES = 4096;
+    private static final int READ_PAGE_SIZE = 4096;
+
+    private byte[][] blocks;
+    /**
+     * The number of the first line of each block, and the number of lines after the last block.
+     */
+    private int[] blockFirstLines;
+    /**
+     * The number of stderr lines before each block, and in all blocks after the last one.
+     */
+    private int[] blockErrorLinesBefore;
+    private long[] errorLines;
+    private Timestamps timestamps;
+    private int lineCount;
+    private int errorLineCount;
+
+    private int cachedBlock = -1;
+    private String[] cachedLines;
+
+    private CompressedOutputLog(Builder builder) {
+        blocks = builder.blocks.toArray(new byte[0][]);
+        blockFirstLines = Arrays.copyOf(builder.blockFirstLines, blocks.length + 1);
+        blockErrorLinesBefore = Arrays.copyOf(builder.blockErrorLinesBefore, blocks.length + 1);
+        errorLines = Arrays.copyOf(builder.errorLines, (builder.lineCount + 63) / 64);
+        timestamps = builder.timestamps;
+        lineCount = builder.lineCount;
+        errorLineCount = builder.errorLineCount;
+    }
+
+    /**
+     * @param log the output of a command that is done writing to it
+     */
+    static CompressedOutputLog compress(OutputLog log) {
+        final Builder builder = new Builder();
+        try {
+            final int size = log.size(null);
+            for (int page = 0; page < size; page += READ_PAGE_SIZE) {
+                final int end = Math.min(size, page + READ_PAGE_SIZE);
+                final List<String> lines = log.getLines(null, page, end);
+                final long[] lineTimestamps = log.getTimestamps(null, page, end);
+                final OutputSource[] sources = log.getSources(page, end);
+                final int count = Math.min(lines.size(), Math.min(lineTimestamps.length, sources.length));
+                for (int i = 0; i < count; i++) {
+                    builder.add(lines.get(i), sources[i], lineTimestamps[i]);
+                }
+                if (count < end - page) {
+                    // lines dropped by a log that only keeps the latest lines
+                    break;
+                }
+            }
+            builder.finishBlock();
+        } finally {
+            builder.deflater.end();
+        }
+
+        return new CompressedOutputLog(builder);
+    }
+
+    @Override
+    public void append(OutputSource source, List<String> lines, long timestamp) {
+        throw new IllegalStateException("compressed output can not be appended to");
+    }
+
+    @Override
+    public synchronized int size(OutputSource source) {
+        if (source == null) {
+            return lineCount;
+        }
+
+        return source == OutputSource.STDERR ? errorLineCount : lineCount - errorLineCount;
+    }
+
+    @Override
+    public synchronized List<String> getLines(OutputSource source, int from, int to) {
+        checkRange(from, to, size(source));
+
+        final List<String> lines = new ArrayList<>(to - from);
+        for (int line = toLineNumber(source, from); lines.size() < to - from; line++) {
+            if (source == null || getSource(line) == source) {
+                lines.add(getLine(line));
+            }
+        }
+
+        return lines;
+    }
+
+    @Override
+    public synchronized long[] getTimestamps(OutputSource source, int from, int to) {
+        checkRange(from, to, size(source));
+
+        final long[] lineTimestamps = new long[to - from];
+        int count = 0;
+        for (int line = toLineNumber(source, from); count < to - from; line++) {
+            if (source == null || getSource(line) == source) {
+                lineTimestamps[count++] = timestamps.get(line);
+            }
+        }
+
+        return lineTimestamps;
+    }
+
+    @Override
+    public synchronized OutputSource[] getSources(int from, int to) {
+        checkRange(from, to, lineCount);
+
+        final OutputSource[] sources = new OutputSource[to - from];
+        for (int line = from; line < to; line++) {
+            sources[line - from] = getSource(line);
+        }
+
+        return sources;
+    }
+
+    @Override
+    public synchronized int countUpTo(OutputSource source, long timestamp) {
+        final int lines = timestamps.countUpTo(timestamp, lineCount);
+        if (source == null) {
+            return lines;
+        }
+
+        final int block = findBlock(Math.max(0, lines - 1));
+        int errors = blockErrorLinesBefore[block];
+        for (int line = blockFirstLines[block]; line < lines; line++) {
+            if (getSource(line) == OutputSource.STDERR) {
+                errors++;
+            }
+        }
+
+        return source == OutputSource.STDERR ? errors : lines - errors;
+    }
+
+    @Override
+    public synchronized void close() {
+        blocks = new byte[0][];
+        blockFirstLines = new int[1];
+        blockErrorLinesBefore = new int[1];
+        errorLines = new long[0];
+        timestamps = new Timestamps();
+        lineCount = 0;
+        errorLineCount = 0;
+        cachedBlock = -1;
+        cachedLines = null;
+    }
+
+    private static void checkRange(int from, int to, int size) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("lines " + from + " to " + to + " of " + size);
+        }
+    }
+
+    private OutputSource getSource(int line) {
+        return (errorLines[line >>> 6] & 1L << line) != 0 ? OutputSource.STDERR : OutputSource.STDOUT;
+    }
+
+    /**
+     * @return the number among all lines of the given line of the stream
+     */
+    private int toLineNumber(OutputSource source, int sourceLineNumber) {
+        if (source == null || sourceLineNumber == size(source)) {
+            return source == null ? sourceLineNumber : lineCount;
+        }
+
+        // the last block with no more lines of the stream before it than the given number
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (linesBefore(source, middle) <= sourceLineNumber) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int sourceLine = linesBefore(source, low);
+        int line = blockFirstLines[low];
+        while (getSource(line) != source || sourceLine < sourceLineNumber) {
+            if (getSource(line) == source) {
+                sourceLine++;
+            }
+            line++;
+        }
+
+        return line;
+    }
+
+    private int linesBefore(OutputSource source, int block) {
+        return source == OutputSource.STDERR
+                ? blockErrorLinesBefore[block]
+                : blockFirstLines[block] - blockErrorLinesBefore[block];
+    }
+
+    private int findBlock(int line) {
+        final int index = Arrays.binarySearch(blockFirstLines, 0, blocks.length, line);
+        return Math.max(0, index >= 0 ? index : -index - 2);
+    }
+
+    private String getLine(int line) {
+        final int block = findBlock(line);
+        if (block != cachedBlock) {
+            cachedLines = inflate(block);
+            cachedBlock = block;
+        }
+
+        return cachedLines[line - blockFirstLines[block]];
+    }
+
+    /**
+     * A block is the length of each line as a varint followed by its UTF-8 bytes.
+     */
+    private String[] inflate(int block) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blocks[block]);
+            byte[] bytes = new byte[BLOCK_BYTES * 2];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                final int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("truncated");
+                }
+                length += inflated;
+            }
+
+            final String[] lines = new String[blockFirstLines[block + 1] - blockFirstLines[block]];
+            int position = 0;
+            for (int i = 0; i < lines.length; i++) {
+                int lineLength = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    lineLength |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                lines[i] = new String(bytes, position, lineLength, StandardCharsets.UTF_8);
+                position += lineLength;
+            }
+
+            return lines;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt output block " + block, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static class Builder {
+        private final Deflater deflater = new Deflater();
+        private final List<byte[]> blocks = new ArrayList<>();
+        private final Timestamps timestamps = new Timestamps();
+        private int[] blockFirstLines = new int[64];
+        private int[] blockErrorLinesBefore = new int[64];
+        private long[] errorLines = new long[64];
+        private byte[] text = new byte[BLOCK_BYTES + 1024];
+        private int textLength;
+        private int blockStart;
+        private int lineCount;
+        private int errorLineCount;
+
+        void add(String line, OutputSource source, long timestamp) {
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (textLength + bytes.length + 5 > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + bytes.length + 5));
+            }
+            int length = bytes.length;
+            while (length >= 0x80) {
+                text[textLength++] = (byte) (length | 0x80);
+                length >>>= 7;
+            }
+            text[textLength++] = (byte) length;
+            System.arraycopy(bytes, 0, text, textLength, bytes.length);
+            textLength += bytes.length;
+
+            if (lineCount >>> 6 == errorLines.length) {
+                errorLines = Arrays.copyOf(errorLines, errorLines.length * 2);
+            }
+            if (source == OutputSource.STDERR) {
+                errorLines[lineCount >>> 6] |= 1L << lineCount;
+                errorLineCount++;
+            }
+            timestamps.add(lineCount, timestamp);
+            lineCount++;
+
+            if (textLength >= BLOCK_BYTES || lineCount - blockStart >= MAX_BLOCK_LINES) {
+                finishBlock();
+            }
+        }
+
+        void finishBlock() {
+            if (lineCount == blockStart) {
+                return;
+            }
+
+            if (blocks.size() + 1 >= blockFirstLines.length) {
+                blockFirstLines = Arrays.copyOf(blockFirstLines, blockFirstLines.length * 2);
+                blockErrorLinesBefore = Arrays.copyOf(blockErrorLinesBefore, blockErrorLinesBefore.length * 2);
+            }
+            blockFirstLines[blocks.size()] = blockStart;
+            blockFirstLines[blocks.size() + 1] = lineCount;
+            blockErrorLinesBefore[blocks.size() + 1] = errorLineCount;
+
+            deflater.reset();
+            deflater.setInput(text, 0, textLength);
+            deflater.finish();
+            byte[] block = new byte[textLength / 4 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == block.length) {
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                length += deflater.deflate(block, length, block.length - length);
+            }
+            blocks.add(Arrays.copyOf(block, length));
+
+            textLength = 0;
+            blockStart = lineCount;
+        }
+    }
+
+    /**
+     * The time of each run of lines read at the same time, as varints of the differences to the run before,
+     * with the first line and time stored as they are every {@link #CHECKPOINT_RUNS} runs to start reading from.
+     */
+    private static class Timestamps {
+        private static final int CHECKPOINT_RUNS = 64;
+
+        private byte[] bytes = new byte[64];
+        private int length;
+        private int runCount;
+        private int[] checkpointLines = new int[4];
+        private long[] checkpointTimestamps = new long[4];
+        private int[] checkpointOffsets = new int[4];
+        private int lastLine;
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        void add(int line, long timestamp) {
+            if (runCount > 0 && timestamp <= lastTimestamp) {
+                // same time as the line before, or earlier from the other stream, so part of its run
+                return;
+            }
+
+            if (runCount % CHECKPOINT_RUNS == 0) {
+                final int checkpoint = runCount / CHECKPOINT_RUNS;
+                if (checkpoint == checkpointLines.length) {
+                    checkpointLines = Arrays.copyOf(checkpointLines, checkpoint * 2);
+                    checkpointTimestamps = Arrays.copyOf(checkpointTimestamps, checkpoint * 2);
+                    checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoint * 2);
+                }
+                checkpointLines[checkpoint] = line;
+                checkpointTimestamps[checkpoint] = timestamp;
+                checkpointOffsets[checkpoint] = length;
+            } else {
+                write(line - lastLine);
+                write(timestamp - lastTimestamp);
+            }
+            lastLine = line;
+            lastTimestamp = timestamp;
+            runCount++;
+        }
+
+        private void write(long value) {
+            if (length + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while (value >= 0x80) {
+                bytes[length++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        long get(int line) {
+            final int checkpoint = lastCheckpoint(checkpointLines, line);
+            final Reader reader = new Reader(checkpoint);
+            long timestamp = reader.timestamp;
+            while (reader.next() && reader.line <= line) {
+                timestamp = reader.timestamp;
+            }
+
+            return timestamp;
+        }
+
+        /**
+         * @return the number of lines read at or before the given time
+         */
+        int countUpTo(long timestamp, int lineCount) {
+            if (runCount == 0 || timestamp < checkpointTimestamps[0]) {
+                return 0;
+            }
+
+            final int checkpoint = lastCheckpoint(checkpointTimestamps, timestamp);
+            final Reader reader = new Reader(checkpoint);
+            while (reader.next()) {
+                if (reader.timestamp > timestamp) {
+                    return reader.line;
+                }
+            }
+
+            final boolean isLast = (checkpoint + 1) * CHECKPOINT_RUNS >= runCount;
+            return isLast ? lineCount : checkpointLines[checkpoint + 1];
+        }
+
+        private int lastCheckpoint(int[] values, int value) {
+            final int checkpoints = (runCount + CHECKPOINT_RUNS - 1) / CHECKPOINT_RUNS;
+            final int index = Arrays.binarySearch(values, 0, checkpoints, value);
+            return Math.max(0, index >= 0 ? index : -index - 2);
+        }
+
+        private int lastCheckpoint(long[] values, long value) {
+            final int checkpoints = (runCount + CHECKPOINT_RUNS - 1) / CHECKPOINT_RUNS;
+            final int index = Arrays.binarySearch(values, 0, checkpoints, value);
+            return Math.max(0, index >= 0 ? index : -index - 2);
+        }
+
+        /**
+         * Reads the runs from a checkpoint up to the next one.
+         */
+        private class Reader {
+            private final int end;
+            private int run;
+            private int position;
+            int line;
+            long timestamp;
+
+            Reader(int checkpoint) {
+                run = checkpoint * CHECKPOINT_RUNS;
+                end = Math.min(runCount, run + CHECKPOINT_RUNS);
+                position = checkpointOffsets[checkpoint];
+                line = checkpointLines[checkpoint];
+                timestamp = checkpointTimestamps[checkpoint];
+            }
+
+            /**
+             * @return false if there are no more runs before the next checkpoint
+             */
+            boolean next() {
+                if (++run >= end) {
+                    return false;
+                }
+
+                line += (int) read();
+                timestamp += read();
+                return true;
+            }
+
+            private long read() {
+                long value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    value |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+
+                return value;
+            }
+        }
+    }
+}
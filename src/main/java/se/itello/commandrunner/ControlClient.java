@@ -0,0 +1,163 @@
+package se.itello.commandrunner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * Sends requests to the {@link ControlServer} of the open window, so that commands run there without starting
+ * another JVM full of JavaFX. Usage:
+ * <ul>
+ * <li>{@code --run=comment [--variables=name=x,folder=y] [--detach]} runs the saved commands with the comment in the
+ * open window and prints their output, or only prints the id of the new queue with {@code --detach}. Without an
+ * open window, or with {@code --local}, the commands run in this process instead, see {@link HeadlessRunner}.</li>
+ * <li>{@code --queues} prints the id, status, number of finished commands and command lines of the latest queues</li>
+ * <li>{@code --output=queue[:command]} prints the output of a queue, or of one of its commands counted from 0,
+ * until it has stopped</li>
+ * <li>{@code --kill=queue} kills the running command of a queue and stops it</li>
+ * </ul>
+ * Output is followed until the queue has stopped, and the exit code is that of the commands. Interrupting the client
+ * does not stop the commands.
+ */
+class ControlClient {
+    private static final String RUN = "run";
+    private static final String VARIABLES = "variables";
+    private static final String DETACH = "detach";
+    private static final String LOCAL = "local";
+    private static final String QUEUES = "queues";
+    private static final String OUTPUT = "output";
+    private static final String KILL = "kill";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private ControlClient() {
+    }
+
+    static boolean isControlRequested(String[] args) {
+        final Map<String, String> namedParameters = HeadlessRunner.getNamedParameters(args);
+        if (namedParameters.containsKey(QUEUES) || namedParameters.containsKey(OUTPUT) || namedParameters.containsKey(KILL)) {
+            return true;
+        }
+
+        return namedParameters.containsKey(RUN) && !namedParameters.containsKey(LOCAL) && ControlServer.CONTROL_FILE.exists();
+    }
+
+    /**
+     * @return the exit code of the commands, or 1 if the request failed
+     */
+    static int run(String[] args) {
+        final Map<String, String> namedParameters = HeadlessRunner.getNamedParameters(args);
+        final Socket socket;
+        try {
+            socket = connect();
+        } catch (IOException | JSONException e) {
+            if (namedParameters.containsKey(RUN)) {
+                return HeadlessRunner.run(args);
+            }
+            System.err.println("no open window to control: " + e.getMessage());
+            return 1;
+        }
+
+        final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        final PrintStream err = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 16), false);
+        try (socket) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            final OutputStream requestOut = new BufferedOutputStream(socket.getOutputStream());
+            sendRequest(requestOut, namedParameters);
+
+            while (true) {
+                final AgentProtocol.Frame frame = AgentProtocol.readFrame(in);
+                if (frame.type == ControlServer.END) {
+                    return frame.payload.readInt();
+                }
+                if (frame.type == ControlServer.TEXT) {
+                    final PrintStream stream = frame.payload.readByte() == OutputSource.STDERR.ordinal() ? err : out;
+                    final int lineCount = frame.payload.readInt();
+                    for (int i = 0; i < lineCount; i++) {
+                        stream.println(AgentProtocol.readString(frame.payload));
+                    }
+                    stream.flush();
+                }
+            }
+        } catch (IOException e) {
+            err.println("lost connection to the window" + (e.getMessage() == null ? "" : ": " + e.getMessage()));
+            return 1;
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 1;
+        } finally {
+            out.flush();
+            err.flush();
+        }
+    }
+
+    private static Socket connect() throws IOException, JSONException {
+        if (!ControlServer.CONTROL_FILE.exists()) {
+            throw new IOException("no " + ControlServer.CONTROL_FILE);
+        }
+        final JSONObject control = new JSONObject(new String(Files.readAllBytes(ControlServer.CONTROL_FILE.toPath()), StandardCharsets.UTF_8));
+
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), control.getInt(ControlServer.PORT)), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            AgentProtocol.writeFrame(socket.getOutputStream(), AgentProtocol.AUTH,
+                    payload -> AgentProtocol.writeString(payload, control.optString(ControlServer.TOKEN)));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a queue id is not a number
+     */
+    private static void sendRequest(OutputStream out, Map<String, String> namedParameters) throws IOException {
+        if (namedParameters.containsKey(RUN)) {
+            AgentProtocol.writeFrame(out, ControlServer.RUN, payload -> {
+                AgentProtocol.writeString(payload, namedParameters.get(RUN));
+                AgentProtocol.writeString(payload, namedParameters.getOrDefault(VARIABLES, ""));
+                payload.writeBoolean(namedParameters.containsKey(DETACH));
+            });
+        } else if (namedParameters.containsKey(QUEUES)) {
+            AgentProtocol.writeFrame(out, ControlServer.QUEUES, payload -> {
+            });
+        } else if (namedParameters.containsKey(OUTPUT)) {
+            final String output = namedParameters.get(OUTPUT);
+            final int colonIndex = output.indexOf(':');
+            final int queueId = parseNumber(colonIndex < 0 ? output : output.substring(0, colonIndex));
+            final int commandIndex = colonIndex < 0 ? -1 : parseNumber(output.substring(colonIndex + 1));
+            AgentProtocol.writeFrame(out, ControlServer.OUTPUT, payload -> {
+                payload.writeInt(queueId);
+                payload.writeInt(commandIndex);
+            });
+        } else {
+            final int queueId = parseNumber(namedParameters.get(KILL));
+            AgentProtocol.writeFrame(out, ControlServer.KILL, payload -> payload.writeInt(queueId));
+        }
+    }
+
+    private static int parseNumber(String number) {
+        try {
+            return Integer.parseInt(number.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a number, got '" + number + "'");
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package se.itello.commandrunner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Lets other processes run the saved commands in the open window, where they show up in the queue tree like any
+ * other run, and follow or kill its queues, see {@link ControlClient}. The server only listens on the loopback
+ * address, and writes its port and a random token, which a client must send first, to {@link #CONTROL_FILE}, which
+ * only the user may read.
+ * <p>
+ * Every connection makes one request, with the frames of {@link AgentProtocol} after {@link AgentProtocol#AUTH}:
+ * <ul>
+ * <li>{@link #RUN}: comment, variables, whether to only queue the commands; answered like {@link #OUTPUT} for the
+ * new queue, after a line with its id</li>
+ * <li>{@link #QUEUES}: answered with a line for every queue</li>
+ * <li>{@link #OUTPUT}: queue id, command index or -1 for all commands; answered with the output as it is read
+ * until the queue has stopped, and the exit code of the commands</li>
+ * <li>{@link #KILL}: queue id</li>
+ * <li>{@link #TEXT} server to client: source ordinal, number of lines, lines</li>
+ * <li>{@link #END} server to client, last: exit code</li>
+ * </ul>
+ */
+class ControlServer {
+    static final File CONTROL_FILE = new File(ProgramState.SAVE_FILE.getPath() + ".control");
+    static final String PORT = "port";
+    static final String TOKEN = "token";
+
+    static final byte RUN = 10;
+    static final byte QUEUES = 11;
+    static final byte OUTPUT = 12;
+    static final byte KILL = 13;
+    static final byte TEXT = 20;
+    static final byte END = 21;
+
+    private static final int KEPT_QUEUES = 100;
+    private static final long POLL_MILLIS = 50;
+    private static final int MAX_LINES_PER_READ = 4096;
+
+    private final ServerSocket serverSocket;
+    private final String token;
+    private final Executor applicationThread;
+    private final Map<Integer, CommandQueue> queues;
+    private final AtomicInteger connectionNumber;
+    private int nextQueueId;
+
+    private ControlServer(ServerSocket serverSocket, String token, Executor applicationThread) {
+        this.serverSocket = serverSocket;
+        this.token = token;
+        this.applicationThread = applicationThread;
+        queues = new LinkedHashMap<>();
+        connectionNumber = new AtomicInteger(1);
+        nextQueueId = 1;
+    }
+
+    /**
+     * Listens on a free port of the loopback address and writes the control file.
+     *
+     * @param applicationThread runs what touches the queues and the window
+     */
+    static ControlServer start(Executor applicationThread) throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final ControlServer server = new ControlServer(serverSocket, newToken(), applicationThread);
+        try {
+            server.writeControlFile();
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+
+        final Thread acceptor = new Thread(server::serve, "control-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    private static String newToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+
+        return token.toString();
+    }
+
+    private void writeControlFile() throws IOException {
+        final String contents;
+        try {
+            contents = new JSONObject()
+                    .put(PORT, serverSocket.getLocalPort())
+                    .put(TOKEN, token)
+                    .toString();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        // created without permissions for others before the token is written to it
+        final Path path = CONTROL_FILE.toPath();
+        Files.deleteIfExists(path);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+        }
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops listening and removes the control file, unless another window has replaced it.
+     */
+    void close() {
+        try {
+            serverSocket.close();
+            if (CONTROL_FILE.exists() && new String(Files.readAllBytes(CONTROL_FILE.toPath()), StandardCharsets.UTF_8).contains(token)) {
+                Files.delete(CONTROL_FILE.toPath());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gives the queue an id by which clients find it. Only the latest queues are kept.
+     */
+    synchronized void queueStarted(CommandQueue commandQueue) {
+        if (queues.containsValue(commandQueue)) {
+            return;
+        }
+        queues.put(nextQueueId++, commandQueue);
+
+        final Iterator<CommandQueue> oldest = queues.values().iterator();
+        while (queues.size() > KEPT_QUEUES) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private synchronized int getQueueId(CommandQueue commandQueue) {
+        return queues.entrySet().stream()
+                .filter(entry -> entry.getValue() == commandQueue)
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("the queue was not started"));
+    }
+
+    private synchronized CommandQueue getQueue(int queueId) {
+        final CommandQueue commandQueue = queues.get(queueId);
+        if (commandQueue == null) {
+            throw new IllegalArgumentException("no queue " + queueId);
+        }
+
+        return commandQueue;
+    }
+
+    private synchronized Map<Integer, CommandQueue> getQueues() {
+        return new LinkedHashMap<>(queues);
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread connection = new Thread(() -> serve(socket), "control-connection-" + connectionNumber.getAndIncrement());
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+
+            final AgentProtocol.Frame auth = AgentProtocol.readFrame(in);
+            if (auth.type != AgentProtocol.AUTH || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    AgentProtocol.readString(auth.payload).getBytes(StandardCharsets.UTF_8))) {
+                return;
+            }
+
+            final AgentProtocol.Frame request = AgentProtocol.readFrame(in);
+            try {
+                handle(request, out);
+            } catch (IllegalArgumentException e) {
+                sendLines(out, OutputSource.STDERR, List.of(e.getMessage()));
+                sendEnd(out, 1);
+            }
+        } catch (EOFException e) {
+            // the client disconnected
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.err.println("control connection failed: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(AgentProtocol.Frame request, OutputStream out) throws IOException, InterruptedException {
+        switch (request.type) {
+            case RUN: {
+                final String comment = AgentProtocol.readString(request.payload);
+                final String variables = AgentProtocol.readString(request.payload);
+                final boolean detach = request.payload.readBoolean();
+                final CommandQueue commandQueue = onApplicationThread(
+                        () -> CommandRunner.getInstance().runCommandsWithComment(comment, variables)
+                );
+                sendLines(out, OutputSource.STDERR, List.of("queue " + getQueueId(commandQueue)));
+                if (detach) {
+                    sendEnd(out, 0);
+                } else {
+                    follow(commandQueue, commandQueue.getCommands(), out);
+                }
+                break;
+            }
+            case QUEUES: {
+                final Map<Integer, CommandQueue> queues = getQueues();
+                sendLines(out, OutputSource.STDOUT, onApplicationThread(() -> queues.entrySet().stream()
+                        .map(entry -> describe(entry.getKey(), entry.getValue()))
+                        .collect(Collectors.toList())));
+                sendEnd(out, 0);
+                break;
+            }
+            case OUTPUT: {
+                final CommandQueue commandQueue = getQueue(request.payload.readInt());
+                final int commandIndex = request.payload.readInt();
+                final List<Command> commands = commandQueue.getCommands();
+                if (commandIndex >= commands.size()) {
+                    throw new IllegalArgumentException("the queue has " + commands.size() + " commands");
+                }
+                follow(commandQueue, commandIndex < 0 ? commands : List.of(commands.get(commandIndex)), out);
+                break;
+            }
+            case KILL: {
+                final CommandQueue commandQueue = getQueue(request.payload.readInt());
+                onApplicationThread(() -> {
+                    if (commandQueue.getQueueStatus() != CommandQueue.CommandQueueStatus.Stopped) {
+                        commandQueue.kill();
+                    }
+                    return null;
+                });
+                sendEnd(out, 0);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown request " + request.type);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the task failed, with what to tell the client
+     */
+    private <T> T onApplicationThread(Supplier<T> task) throws InterruptedException {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        applicationThread.execute(() -> {
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            e.getCause().printStackTrace();
+            throw new IllegalArgumentException("the request failed: " + e.getCause());
+        }
+    }
+
+    private static String describe(int queueId, CommandQueue commandQueue) {
+        final List<Command> commands = commandQueue.getCommands();
+        final long finished = commands.stream()
+                .map(Command::getCommandStatus)
+                .filter(status -> status == CommandStatus.OK || status == CommandStatus.FAIL)
+                .count();
+
+        return queueId + "\t" + commandQueue.getCommandStatus().toString().toLowerCase() + "\t" + finished + "/" + commands.size() + "\t"
+                + commands.stream().map(Command::getCommandNameAndArguments).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Sends the output of the commands as it is read, each preceded by the command line once it has started, until
+     * the queue has stopped, and then their exit code.
+     */
+    private void follow(CommandQueue commandQueue, List<Command> commands, OutputStream out) throws IOException, InterruptedException {
+        final int[] sentLines = new int[commands.size()];
+        final boolean[] announced = new boolean[commands.size()];
+        while (true) {
+            // read before the output, as all output of a queue has been added once it is stopped
+            final boolean stopped = commandQueue.getQueueStatus() == CommandQueue.CommandQueueStatus.Stopped;
+            for (int i = 0; i < commands.size(); i++) {
+                final Command command = commands.get(i);
+                final OutputLog log = commandQueue.getCommandOutputForCommand(command).getLog();
+                final int lineCount = log.size(null);
+                if (!announced[i] && (lineCount > 0 || command.getCommandStatus() != CommandStatus.IDLE)) {
+                    sendLines(out, OutputSource.STDOUT, List.of("--- executing " + command.getCommandNameAndArguments() + " ---"));
+                    announced[i] = true;
+                }
+                while (sentLines[i] < lineCount) {
+                    final int to = Math.min(lineCount, sentLines[i] + MAX_LINES_PER_READ);
+                    sendLines(out, log, sentLines[i], to);
+                    sentLines[i] = to;
+                }
+            }
+            if (stopped) {
+                break;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+
+        sendEnd(out, getExitCode(commands));
+    }
+
+    /**
+     * @return 0 if all commands succeeded, otherwise the exit code of the first failing command, or 1 if none failed
+     * but not all of them ran
+     */
+    private static int getExitCode(List<Command> commands) {
+        for (Command command : commands) {
+            if (command.getCommandStatus() == CommandStatus.FAIL) {
+                return command.getExitCode() == 0 ? 1 : command.getExitCode();
+            }
+        }
+
+        return commands.stream().allMatch(command -> command.getCommandStatus() == CommandStatus.OK) ? 0 : 1;
+    }
+
+    /**
+     * Sends the lines with one frame for every run of lines from the same source.
+     */
+    private static void sendLines(OutputStream out, OutputLog log, int from, int to) throws IOException {
+        final List<String> lines = log.getLines(null, from, to);
+        final OutputSource[] sources = log.getSources(from, to);
+        int runStart = 0;
+        for (int i = 1; i <= lines.size(); i++) {
+            if (i == lines.size() || sources[i] != sources[runStart]) {
+                sendLines(out, sources[runStart], lines.subList(runStart, i));
+                runStart = i;
+            }
+        }
+    }
+
+    private static void sendLines(OutputStream out, OutputSource source, List<String> lines) throws IOException {
+        AgentProtocol.writeFrame(out, TEXT, payload -> {
+            payload.writeByte(source.ordinal());
+            payload.writeInt(lines.size());
+            for (String line : lines) {
+                AgentProtocol.writeString(payload, line);
+            }
+        });
+    }
+
+    private static void sendEnd(OutputStream out, int exitCode) throws IOException {
+        AgentProtocol.writeFrame(out, END, payload -> payload.writeInt(exitCode));
+    }
+}
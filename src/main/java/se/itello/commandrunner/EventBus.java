@@ -0,0 +1,249 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Hands published events to subscribers, either on the publishing thread, or through a bounded queue of each
+ * subscriber that is drained in batches on a shared dispatcher thread, so that a slow subscriber does not hold up
+ * the publisher or the other subscribers. Events are delivered to each subscriber in the order they were published.
+ * <p>
+ * Only events that the bus was told are bounded, such as output, count towards the capacity of a queue. What
+ * happens to them when a queue is full is decided by its {@link Backpressure}. Other events, such as a command
+ * having finished, are always queued.
+ */
+public class EventBus<E> {
+    public enum Backpressure {
+        /**
+         * The publisher waits until the subscriber has caught up, so that no event is lost.
+         */
+        BLOCK,
+        /**
+         * The oldest bounded event still queued is dropped.
+         */
+        DROP_OLDEST,
+        /**
+         * The event is merged into a queued one if possible, and queued otherwise. Nothing is lost, but merged
+         * events may be delivered before events they were published after.
+         */
+        COALESCE
+    }
+
+    private static final ExecutorService dispatcher = Executors.newCachedThreadPool(new DispatcherThreadFactory());
+
+    private final Predicate<E> bounded;
+    private final BinaryOperator<E> coalescer;
+    private final List<Subscription> subscriptions;
+
+    /**
+     * @param bounded   which events count towards the capacity of the queues and may be dropped or merged
+     * @param coalescer merges an event into a queued one, or returns null if they can not be merged
+     */
+    EventBus(Predicate<E> bounded, BinaryOperator<E> coalescer) {
+        this.bounded = bounded;
+        this.coalescer = coalescer;
+        subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Delivers the events on the thread that publishes them, which waits for the subscriber.
+     */
+    Subscription subscribe(Consumer<E> subscriber) {
+        return add(new Subscription(subscriber, event -> true, 0, null));
+    }
+
+    /**
+     * Delivers the events on a dispatcher thread.
+     *
+     * @param capacity how many bounded events may be queued before the backpressure applies
+     */
+    Subscription subscribe(Consumer<E> subscriber, int capacity, Backpressure backpressure) {
+        return subscribe(subscriber, event -> true, capacity, backpressure);
+    }
+
+    /**
+     * Delivers the events that pass the filter on a dispatcher thread. The others are dropped when they are
+     * published, without ever being queued.
+     *
+     * @param capacity how many bounded events may be queued before the backpressure applies
+     */
+    Subscription subscribe(Consumer<E> subscriber, Predicate<E> filter, int capacity, Backpressure backpressure) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("a queued subscriber needs a capacity of at least one event");
+        }
+
+        return add(new Subscription(subscriber, filter, capacity, backpressure));
+    }
+
+    private Subscription add(Subscription subscription) {
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @throws InterruptedException if the publisher was interrupted while waiting for a {@link Backpressure#BLOCK}
+     *                              subscriber, in which case the remaining subscribers did not get the event
+     */
+    void publish(E event) throws InterruptedException {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Stops delivering new events to all subscribers. Events already queued are still delivered.
+     */
+    void unsubscribeAll() {
+        subscriptions.clear();
+    }
+
+    class Subscription {
+        private final Consumer<E> subscriber;
+        private final Predicate<E> filter;
+        private final int capacity;
+        private final Backpressure backpressure;
+        private final ArrayDeque<E> events;
+        private int boundedEvents;
+        private boolean draining;
+
+        private Subscription(Consumer<E> subscriber, Predicate<E> filter, int capacity, Backpressure backpressure) {
+            this.subscriber = subscriber;
+            this.filter = filter;
+            this.capacity = capacity;
+            this.backpressure = backpressure;
+            events = new ArrayDeque<>();
+        }
+
+        void unsubscribe() {
+            subscriptions.remove(this);
+        }
+
+        private void offer(E event) throws InterruptedException {
+            if (!filter.test(event)) {
+                return;
+            }
+            if (backpressure == null) {
+                subscriber.accept(event);
+                return;
+            }
+
+            synchronized (this) {
+                final boolean isBounded = bounded.test(event);
+                if (isBounded && boundedEvents >= capacity) {
+                    switch (backpressure) {
+                        case BLOCK:
+                            while (boundedEvents >= capacity) {
+                                wait();
+                            }
+                            break;
+                        case DROP_OLDEST:
+                            dropOldestBounded();
+                            Metrics.getInstance().eventDropped();
+                            break;
+                        case COALESCE:
+                            if (coalesce(event)) {
+                                Metrics.getInstance().eventCoalesced();
+                                return;
+                            }
+                            break;
+                    }
+                }
+
+                events.add(event);
+                if (isBounded) {
+                    boundedEvents++;
+                }
+                if (!draining) {
+                    draining = true;
+                    dispatcher.execute(this::drain);
+                }
+            }
+        }
+
+        private void dropOldestBounded() {
+            for (Iterator<E> iterator = events.iterator(); iterator.hasNext(); ) {
+                if (bounded.test(iterator.next())) {
+                    iterator.remove();
+                    boundedEvents--;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return whether the event was merged into the newest queued event it can be merged with
+         */
+        private boolean coalesce(E event) {
+            for (Iterator<E> iterator = events.descendingIterator(); iterator.hasNext(); ) {
+                final E queued = iterator.next();
+                if (!bounded.test(queued)) {
+                    continue;
+                }
+                final E merged = coalescer.apply(queued, event);
+                if (merged != null) {
+                    replace(queued, merged);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void replace(E queued, E merged) {
+            final List<E> replaced = new ArrayList<>(events.size());
+            for (E event : events) {
+                replaced.add(event == queued ? merged : event);
+            }
+            events.clear();
+            events.addAll(replaced);
+        }
+
+        /**
+         * Delivers everything queued, in batches of what was queued by the time the previous batch was delivered.
+         */
+        private void drain() {
+            while (true) {
+                final List<E> batch;
+                synchronized (this) {
+                    if (events.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    batch = new ArrayList<>(events);
+                    events.clear();
+                    boundedEvents = 0;
+                    notifyAll();
+                }
+
+                for (E event : batch) {
+                    try {
+                        subscriber.accept(event);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "event-dispatcher-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package se.itello.commandrunner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up executables given by name only in the directories of PATH, and remembers where they were found
+ * for as long as they are still there.
+ */
+class ExecutableResolver {
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    private static final List<Path> PATH_DIRECTORIES = pathDirectories();
+    private static final List<String> EXTENSIONS = extensions();
+    private static final Map<String, Path> resolvedExecutables = new ConcurrentHashMap<>();
+
+    private ExecutableResolver() {
+    }
+
+    /**
+     * @return the path to the executable, or the name unchanged if it contains a directory or can not be found
+     */
+    static String resolve(String executable) {
+        if (executable.isEmpty() || executable.indexOf('/') >= 0 || executable.indexOf(File.separatorChar) >= 0) {
+            return executable;
+        }
+
+        final Path cached = resolvedExecutables.get(executable);
+        if (cached != null && Files.isExecutable(cached)) {
+            return cached.toString();
+        }
+
+        for (Path directory : PATH_DIRECTORIES) {
+            for (String extension : EXTENSIONS) {
+                final Path candidate = directory.resolve(executable + extension);
+                if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                    resolvedExecutables.put(executable, candidate);
+                    return candidate.toString();
+                }
+            }
+        }
+
+        resolvedExecutables.remove(executable);
+        return executable;
+    }
+
+    private static List<Path> pathDirectories() {
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return Collections.emptyList();
+        }
+
+        final List<Path> directories = new ArrayList<>();
+        for (String directory : path.split(File.pathSeparator)) {
+            if (!directory.isEmpty()) {
+                try {
+                    directories.add(Paths.get(directory));
+                } catch (RuntimeException ignored) {
+                    // not a valid path on this platform
+                }
+            }
+        }
+
+        return directories;
+    }
+
+    private static List<String> extensions() {
+        final List<String> extensions = new ArrayList<>();
+        if (WINDOWS) {
+            final String pathExt = System.getenv("PATHEXT");
+            extensions.addAll(Arrays.asList((pathExt == null ? ".COM;.EXE;.BAT;.CMD" : pathExt).split(";")));
+        }
+        extensions.add("");
+
+        return extensions;
+    }
+}
@@ -0,0 +1,184 @@
+package se.itello.commandrunner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs saved commands from the command line without starting the JavaFX toolkit.
+ * Usage: {@code --run=comment [--variables=name=x,folder=y] [--timing]}
+ */
+class HeadlessRunner implements CommandListener {
+    private static final String RUN = "run";
+    private static final String VARIABLES = "variables";
+    private static final String TIMING = "timing";
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final boolean timing;
+
+    private HeadlessRunner(boolean timing) {
+        this.out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        this.err = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 16), false);
+        this.timing = timing;
+    }
+
+    static boolean isRunRequested(String[] args) {
+        return getNamedParameters(args).containsKey(RUN);
+    }
+
+    /**
+     * @return 0 if all commands succeeded, otherwise the exit code of the first failing command
+     */
+    static int run(String[] args) {
+        final Map<String, String> namedParameters = getNamedParameters(args);
+        final HeadlessRunner runner = new HeadlessRunner(namedParameters.containsKey(TIMING));
+        try {
+            return runner.run(namedParameters.get(RUN), namedParameters.get(VARIABLES));
+        } finally {
+            runner.out.flush();
+            runner.err.flush();
+        }
+    }
+
+    private int run(String comment, String variables) {
+        if (comment == null || comment.isEmpty()) {
+            return 0;
+        }
+
+        if (!ProgramState.SAVE_FILE.exists()) {
+            System.err.println("no saved commands in " + ProgramState.SAVE_FILE);
+            return 1;
+        }
+
+        final CommandNode root;
+        final boolean haltOnError;
+        try {
+            final JSONObject settingsObject = new JSONObject(JSONFileReader.readJsonObjectFromFile(ProgramState.SAVE_FILE));
+            root = CommandNode.createNode(settingsObject.getJSONObject(ProgramState.COMMANDS));
+            haltOnError = !settingsObject.has(ProgramState.HALT_ON_ERROR) || settingsObject.getBoolean(ProgramState.HALT_ON_ERROR);
+            if (settingsObject.has(ProgramState.OUTPUT_CHARSET) && Charset.isSupported(settingsObject.getString(ProgramState.OUTPUT_CHARSET))) {
+                Command.setOutputCharset(Charset.forName(settingsObject.getString(ProgramState.OUTPUT_CHARSET)));
+            }
+            Command.setUseShellSessions(settingsObject.optBoolean(ProgramState.USE_SHELL_SESSIONS, false));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return 1;
+        }
+
+        final Map<String, String> variableMap = Variables.getVariableMap(variables);
+        final List<Command> commands = new ArrayList<>();
+        try {
+            for (CommandNode node : root.findAllWithComment(comment)) {
+                node.replaceVariables(variableMap);
+                node.addAllCommands(commands);
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 1;
+        }
+
+        if (timing) {
+            printTiming("startup", startupTime());
+        }
+
+        int exitCode = 0;
+        for (Command command : commands) {
+            out.println("--- executing " + command.getCommandNameAndArguments() + " ---");
+            command.addCommandListener(this);
+
+            final long start = System.nanoTime();
+            command.execute();
+            if (timing) {
+                printTiming(command.getCommandNameAndArguments(), Duration.ofNanos(System.nanoTime() - start));
+                err.println("[resources] " + command.getResourceUsage().summary());
+                err.flush();
+            }
+            if (!command.getOutputMatches().isEmpty()) {
+                out.flush();
+                err.println("[matches] " + command.getOutputMatches().summary());
+                err.flush();
+            }
+
+            if (command.getCommandStatus() == CommandStatus.FAIL) {
+                if (exitCode == 0) {
+                    exitCode = command.getExitCode() == 0 ? 1 : command.getExitCode();
+                }
+                if (haltOnError) {
+                    break;
+                }
+            }
+        }
+
+        return exitCode;
+    }
+
+    private static Duration startupTime() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()))
+                .orElse(Duration.ZERO);
+    }
+
+    private void printTiming(String what, Duration duration) {
+        out.flush();
+        err.println("[timing] " + what + ": " + duration.toMillis() + " ms");
+        err.flush();
+    }
+
+    static Map<String, String> getNamedParameters(String[] args) {
+        final Map<String, String> namedParameters = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                final int equalsIndex = arg.indexOf('=');
+                if (equalsIndex < 0) {
+                    namedParameters.put(arg.substring(2), "");
+                } else {
+                    namedParameters.put(arg.substring(2, equalsIndex), arg.substring(equalsIndex + 1));
+                }
+            }
+        }
+
+        return namedParameters;
+    }
+
+    @Override
+    public void commandExecuted(Command command) {
+        out.flush();
+        err.flush();
+    }
+
+    @Override
+    public void commandOutput(Command command, String text) {
+        err.println(text);
+    }
+
+    @Override
+    public void commandOutputMatched(Command command, OutputMatch match) {
+        if (match.getAction() == OutputMatch.Action.FAIL) {
+            synchronized (err) {
+                err.println("[fail] " + match.getName() + ": " + match.getLine());
+            }
+        }
+    }
+
+    @Override
+    public void commandOutputBatch(Command command, OutputBatch batch) {
+        final PrintStream stream = batch.getSource() == OutputSource.STDERR ? err : out;
+        synchronized (stream) {
+            for (String line : batch.getLines()) {
+                stream.println(line);
+            }
+        }
+    }
+}
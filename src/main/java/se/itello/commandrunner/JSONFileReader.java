@@ -21,6 +21,10 @@ public class JSONFileReader {
     static final String COMMAND = "command";
     static final String DIRECTORY_STRING = "directory";
     static final String IS_EXPANDED = "isExpanded";
+    static final String DEPENDS_ON = "dependsOn";
+    static final String TIMEOUT = "timeout";
+    static final String INPUTS = "inputs";
+    static final String OUTPUT_RULES = "outputRules";
 
     public static String readJsonObjectFromFile(File file) {
         final StringBuilder fileContents = new StringBuilder();
@@ -50,11 +54,29 @@ public class JSONFileReader {
             final String comment = (String) jsonCommand.get(COMMAND_COMMENT_STRING);
             final String commandNameAndArguments = (String) jsonCommand.get(COMMAND_AND_ARGUMENTS_STRING);
 
-            commandTableRow = new CommandTableCommandRow(new Command(directory, commandNameAndArguments, comment));
+            final Command command = new Command(directory, commandNameAndArguments, comment);
+            if (jsonCommand.has(DEPENDS_ON)) {
+                command.setDependsOn(jsonCommand.getString(DEPENDS_ON));
+            }
+            if (jsonCommand.has(TIMEOUT)) {
+                command.setTimeout(jsonCommand.getString(TIMEOUT));
+            }
+            if (jsonCommand.has(INPUTS)) {
+                command.setInputs(jsonCommand.getString(INPUTS));
+            }
+            if (jsonCommand.has(OUTPUT_RULES)) {
+                command.setOutputRules(jsonCommand.getString(OUTPUT_RULES));
+            }
+
+            commandTableRow = new CommandTableCommandRow(command);
         } else {
             String directory = object.has(DIRECTORY_STRING) ? object.getString(DIRECTORY_STRING) : "";
             String comment = object.has(COMMAND_COMMENT_STRING) ? object.getString(COMMAND_COMMENT_STRING) : "";
-            commandTableRow = new CommandTableGroupRow(object.getString(NAME), directory, comment);
+            String dependsOn = object.has(DEPENDS_ON) ? object.getString(DEPENDS_ON) : "";
+            String timeout = object.has(TIMEOUT) ? object.getString(TIMEOUT) : "";
+            String inputs = object.has(INPUTS) ? object.getString(INPUTS) : "";
+            String outputRules = object.has(OUTPUT_RULES) ? object.getString(OUTPUT_RULES) : "";
+            commandTableRow = new CommandTableGroupRow(object.getString(NAME), directory, comment, dependsOn, timeout, inputs, outputRules);
         }
 
         boolean isExpanded = object.has(IS_EXPANDED) && object.getBoolean(IS_EXPANDED);
@@ -3,10 +3,21 @@ package se.itello.commandrunner;
 /**
  * This is a Workaround. Since javafx got unbundled from java,
  * the main class can no longer extend from the Application class.
+ * It also lets --run, --agent and the control requests of ControlClient skip loading the JavaFX application entirely.
  */
 public class Java11Main {
 
     public static void main(String[] args) {
+        if (ControlClient.isControlRequested(args)) {
+            System.exit(ControlClient.run(args));
+        }
+        if (HeadlessRunner.isRunRequested(args)) {
+            System.exit(HeadlessRunner.run(args));
+        }
+        if (WorkerAgent.isAgentRequested(args)) {
+            System.exit(WorkerAgent.run(args));
+        }
+
         CommandRunner.main(args);
     }
 }
@@ -38,11 +38,19 @@ public class JsonConverter {
             commandObject.put(JSONFileReader.DIRECTORY_STRING, command.getCommandDirectory());
             commandObject.put(JSONFileReader.COMMAND_AND_ARGUMENTS_STRING, command.getCommandNameAndArguments());
             commandObject.put(JSONFileReader.COMMAND_COMMENT_STRING, command.getCommandComment());
+            commandObject.put(JSONFileReader.DEPENDS_ON, command.getDependsOn());
+            commandObject.put(JSONFileReader.TIMEOUT, command.getTimeout());
+            commandObject.put(JSONFileReader.INPUTS, command.getInputs());
+            commandObject.put(JSONFileReader.OUTPUT_RULES, command.getOutputRules());
             object.put(JSONFileReader.COMMAND, commandObject);
         } else {
             object.put(JSONFileReader.NAME, commandTableRow.commandNameAndArgumentsProperty().getValue());
             object.put(JSONFileReader.COMMAND_COMMENT_STRING, commandTableRow.commandCommentProperty().getValue());
             object.put(JSONFileReader.DIRECTORY_STRING, commandTableRow.commandDirectoryProperty().getValue());
+            object.put(JSONFileReader.DEPENDS_ON, commandTableRow.dependsOnProperty().getValue());
+            object.put(JSONFileReader.TIMEOUT, commandTableRow.timeoutProperty().getValue());
+            object.put(JSONFileReader.INPUTS, commandTableRow.inputsProperty().getValue());
+            object.put(JSONFileReader.OUTPUT_RULES, commandTableRow.outputRulesProperty().getValue());
             object.put(JSONFileReader.IS_EXPANDED, node.isExpanded());
             JSONArray array = new JSONArray();
             for (TreeItem<CommandTableRow> child : node.getChildren()) {
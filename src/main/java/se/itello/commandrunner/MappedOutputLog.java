@@ -0,0 +1,287 @@
+package se.itello.commandrunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Output kept in a temporary spool file that is written and read through memory mapped regions, so that all output
+ * of a command can be kept at the cost of 12 bytes of index per line, and 12 per batch of lines, on the heap.
+ * The file holds the lines of both streams as UTF-8 text in the order they were read, and is deleted when the log
+ * is closed, or by the operating system if the program never gets to close it.
+ */
+class MappedOutputLog implements OutputLog {
+    private static final int REGION_SIZE = 8 * 1024 * 1024;
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> regions;
+    private final LineNumbers standardOutputLines;
+    private final LineNumbers errorOutputLines;
+    private final Batches batches;
+
+    /**
+     * Offset just past the line separator of each line, so line n spans from lineEnds[n - 1] to lineEnds[n] - 1.
+     */
+    private long[] lineEnds;
+    private int lineCount;
+    private long position;
+    private boolean closed;
+
+    private MappedOutputLog(FileChannel channel) {
+        this.channel = channel;
+        regions = new ArrayList<>();
+        standardOutputLines = new LineNumbers();
+        errorOutputLines = new LineNumbers();
+        batches = new Batches();
+        lineEnds = new long[256];
+    }
+
+    static MappedOutputLog create() throws IOException {
+        final Path file = Files.createTempFile("commandRunner-", ".out");
+        try {
+            return new MappedOutputLog(FileChannel.open(file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void append(OutputSource source, List<String> lines, long timestamp) {
+        if (closed || lines.isEmpty()) {
+            return;
+        }
+
+        batches.add(lineCount, timestamp);
+        final LineNumbers sourceLines = getLineNumbers(source);
+        try {
+            for (String line : lines) {
+                write(line.getBytes(StandardCharsets.UTF_8));
+                write(LINE_SEPARATOR);
+
+                if (lineCount == lineEnds.length) {
+                    lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+                }
+                lineEnds[lineCount] = position;
+                sourceLines.add(lineCount);
+                lineCount++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized int size(OutputSource source) {
+        return source == null ? lineCount : getLineNumbers(source).size;
+    }
+
+    @Override
+    public synchronized List<String> getLines(OutputSource source, int from, int to) {
+        checkRange(from, to, size(source));
+
+        final List<String> lines = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            lines.add(readLine(toLineNumber(source, i)));
+        }
+
+        return lines;
+    }
+
+    @Override
+    public synchronized long[] getTimestamps(OutputSource source, int from, int to) {
+        checkRange(from, to, size(source));
+
+        final long[] timestamps = new long[to - from];
+        for (int i = from; i < to; i++) {
+            timestamps[i - from] = batches.getTimestamp(toLineNumber(source, i));
+        }
+
+        return timestamps;
+    }
+
+    @Override
+    public synchronized OutputSource[] getSources(int from, int to) {
+        checkRange(from, to, lineCount);
+
+        final OutputSource[] sources = new OutputSource[to - from];
+        int errorLine = errorOutputLines.countBelow(from);
+        for (int i = from; i < to; i++) {
+            if (errorLine < errorOutputLines.size && errorOutputLines.numbers[errorLine] == i) {
+                sources[i - from] = OutputSource.STDERR;
+                errorLine++;
+            } else {
+                sources[i - from] = OutputSource.STDOUT;
+            }
+        }
+
+        return sources;
+    }
+
+    @Override
+    public synchronized int countUpTo(OutputSource source, long timestamp) {
+        final int lines = batches.countUpTo(timestamp, lineCount);
+        return source == null ? lines : getLineNumbers(source).countBelow(lines);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        // the mappings are released when collected, the file is already gone from the directory
+        regions.clear();
+        lineEnds = new long[0];
+        lineCount = 0;
+        standardOutputLines.clear();
+        errorOutputLines.clear();
+        batches.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int toLineNumber(OutputSource source, int sourceLineNumber) {
+        return source == null ? sourceLineNumber : getLineNumbers(source).numbers[sourceLineNumber];
+    }
+
+    private LineNumbers getLineNumbers(OutputSource source) {
+        return source == OutputSource.STDERR ? errorOutputLines : standardOutputLines;
+    }
+
+    private static void checkRange(int from, int to, int size) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("lines " + from + " to " + to + " of " + size);
+        }
+    }
+
+    private String readLine(int lineNumber) {
+        final long start = lineNumber == 0 ? 0 : lineEnds[lineNumber - 1];
+        final byte[] bytes = new byte[(int) (lineEnds[lineNumber] - 1 - start)];
+        transfer(start, bytes, false);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        while (regions.size() * (long) REGION_SIZE < position + bytes.length) {
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, regions.size() * (long) REGION_SIZE, REGION_SIZE));
+        }
+
+        transfer(position, bytes, true);
+        position += bytes.length;
+    }
+
+    /**
+     * Copies between the array and the file from the given offset on, across regions if needed.
+     */
+    private void transfer(long offset, byte[] bytes, boolean toFile) {
+        int done = 0;
+        while (done < bytes.length) {
+            final long at = offset + done;
+            final ByteBuffer region = regions.get((int) (at / REGION_SIZE)).duplicate();
+            region.position((int) (at % REGION_SIZE));
+
+            final int length = Math.min(bytes.length - done, region.remaining());
+            if (toFile) {
+                region.put(bytes, done, length);
+            } else {
+                region.get(bytes, done, length);
+            }
+            done += length;
+        }
+    }
+
+    /**
+     * The numbers, among all lines, of the lines of one stream.
+     */
+    private static class LineNumbers {
+        private int[] numbers = new int[256];
+        private int size;
+
+        void add(int number) {
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            numbers[size++] = number;
+        }
+
+        /**
+         * @return how many of the lines come before the given line among all lines
+         */
+        int countBelow(int number) {
+            final int index = Arrays.binarySearch(numbers, 0, size, number);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        void clear() {
+            numbers = new int[0];
+            size = 0;
+        }
+    }
+
+    /**
+     * The first line and timestamp of each batch of lines read at the same time, which is far fewer entries than
+     * lines. Timestamps are kept from decreasing, since the two streams are read by different threads.
+     */
+    private static class Batches {
+        private int[] firstLines = new int[64];
+        private long[] timestamps = new long[64];
+        private int size;
+
+        void add(int firstLine, long timestamp) {
+            if (size > 0 && timestamp <= timestamps[size - 1]) {
+                // same time as the batch before, so it may as well be part of it
+                return;
+            }
+
+            if (size == firstLines.length) {
+                firstLines = Arrays.copyOf(firstLines, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+            }
+            firstLines[size] = firstLine;
+            timestamps[size] = timestamp;
+            size++;
+        }
+
+        long getTimestamp(int line) {
+            final int index = Arrays.binarySearch(firstLines, 0, size, line);
+            return timestamps[index >= 0 ? index : -index - 2];
+        }
+
+        int countUpTo(long timestamp, int lineCount) {
+            // the first batch read after the given time
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (timestamps[middle] <= timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low == size ? lineCount : firstLines[low];
+        }
+
+        void clear() {
+            firstLines = new int[0];
+            timestamps = new long[0];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package se.itello.commandrunner;
+
+import java.util.List;
+
+/**
+ * The latest output of a command kept in a {@link ByteRingBuffer}, for when no spool file can be created.
+ * Older lines are dropped, so line numbers refer to the lines that are still kept, and ranges beyond the last
+ * line are cut short rather than rejected since lines may be dropped at any time.
+ */
+class MemoryOutputLog implements OutputLog {
+    private volatile ByteRingBuffer buffer;
+
+    MemoryOutputLog(int capacityBytes) {
+        buffer = new ByteRingBuffer(capacityBytes);
+    }
+
+    @Override
+    public void append(OutputSource source, List<String> lines, long timestamp) {
+        final ByteRingBuffer buffer = this.buffer;
+        if (buffer != null) {
+            lines.forEach(line -> buffer.append(source, line, timestamp));
+        }
+    }
+
+    @Override
+    public int size(OutputSource source) {
+        final ByteRingBuffer buffer = this.buffer;
+        if (buffer == null) {
+            return 0;
+        }
+
+        return source == null ? buffer.size() : buffer.size(source);
+    }
+
+    @Override
+    public List<String> getLines(OutputSource source, int from, int to) {
+        final ByteRingBuffer buffer = this.buffer;
+        return buffer == null ? List.of() : buffer.getLines(source, from, to);
+    }
+
+    @Override
+    public long[] getTimestamps(OutputSource source, int from, int to) {
+        final ByteRingBuffer buffer = this.buffer;
+        return buffer == null ? new long[0] : buffer.getTimestamps(source, from, to);
+    }
+
+    @Override
+    public OutputSource[] getSources(int from, int to) {
+        final ByteRingBuffer buffer = this.buffer;
+        if (buffer == null) {
+            return new OutputSource[0];
+        }
+
+        return buffer.getSources(from, to);
+    }
+
+    @Override
+    public int countUpTo(OutputSource source, long timestamp) {
+        final ByteRingBuffer buffer = this.buffer;
+        return buffer == null ? 0 : buffer.countUpTo(source, timestamp);
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+    }
+}
@@ -0,0 +1,244 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * The output of several commands as one stream in the order it was read, evaluated lazily: lines are read from the
+ * output of each command a page at a time while iterating, and are never collected into one list.
+ * Lines read at the same time by several commands come in the order of the commands.
+ * <p>
+ * The view covers the lines there were when it was created, so line numbers stay put while commands keep running.
+ */
+public class MergedOutput {
+    private static final int PAGE_SIZE = 512;
+
+    private final List<OutputLog> logs;
+    private final OutputSource source;
+    private final int[] sizes;
+    private final int size;
+
+    /**
+     * @param source the stream to show, or null for both
+     */
+    MergedOutput(List<CommandOutput> outputs, OutputSource source) {
+        this.logs = outputs.stream().map(CommandOutput::getLog).collect(Collectors.toList());
+        this.source = source;
+        sizes = logs.stream().mapToInt(log -> log.size(source)).toArray();
+
+        int size = 0;
+        for (int logSize : sizes) {
+            size += logSize;
+        }
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Lines are merged by the time they were read, but the output of each command is stored on its own, so a line
+     * read before lines of other commands that are already in an earlier view may be stored after them, and is then
+     * merged in among them. Lines read before the oldest line added since stay where they were.
+     *
+     * @param earlier a view of the same output created before this one
+     * @return the first line that may differ from the lines of the earlier view
+     */
+    public int firstChangedLine(MergedOutput earlier) {
+        long oldestAdded = Long.MAX_VALUE;
+        for (int i = 0; i < logs.size(); i++) {
+            if (sizes[i] < earlier.sizes[i]) {
+                return 0;
+            }
+            if (sizes[i] > earlier.sizes[i]) {
+                final long[] timestamps = logs.get(i).getTimestamps(source, earlier.sizes[i], earlier.sizes[i] + 1);
+                if (timestamps.length == 0) {
+                    return 0;
+                }
+                oldestAdded = Math.min(oldestAdded, timestamps[0]);
+            }
+        }
+        if (oldestAdded == Long.MAX_VALUE) {
+            return Math.min(size, earlier.size);
+        }
+
+        return (int) Math.min(countUpTo(oldestAdded - 1), earlier.size);
+    }
+
+    /**
+     * @return the lines from line {@code from} on, read as they are iterated
+     */
+    public Iterator<String> iterator(int from) {
+        return new MergingIterator(positionsOf(Math.max(0, Math.min(from, size))));
+    }
+
+    /**
+     * @return the lines from {@code from}, inclusive, to {@code to}, exclusive, for showing a page of the output
+     */
+    public List<String> getLines(int from, int to) {
+        final Iterator<String> iterator = iterator(from);
+        final List<String> lines = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to && iterator.hasNext(); i++) {
+            lines.add(iterator.next());
+        }
+
+        return lines;
+    }
+
+    /**
+     * Finds where in each log the merged line starts without reading any lines: the time of the line is found
+     * by a binary search over time, counting the lines up to each time in every log, and ties are then broken
+     * in the order of the logs, like when iterating.
+     *
+     * @return the number of lines of each log that come before the merged line
+     */
+    private int[] positionsOf(int line) {
+        final int[] positions = new int[logs.size()];
+        if (line == 0) {
+            return positions;
+        }
+        if (line == size) {
+            return sizes.clone();
+        }
+
+        long low = Long.MAX_VALUE;
+        long high = Long.MIN_VALUE;
+        for (int i = 0; i < logs.size(); i++) {
+            if (sizes[i] > 0) {
+                low = Math.min(low, logs.get(i).getTimestamps(source, 0, 1)[0] - 1);
+                high = Math.max(high, logs.get(i).getTimestamps(source, sizes[i] - 1, sizes[i])[0]);
+            }
+        }
+
+        // invariant: at most line lines up to low, more than line lines up to high
+        while (high - low > 1) {
+            final long middle = low + (high - low) / 2;
+            if (countUpTo(middle) > line) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+
+        int remaining = line;
+        for (int i = 0; i < logs.size(); i++) {
+            positions[i] = Math.min(logs.get(i).countUpTo(source, low), sizes[i]);
+            remaining -= positions[i];
+        }
+        for (int i = 0; i < logs.size() && remaining > 0; i++) {
+            final int linesAtHigh = Math.min(logs.get(i).countUpTo(source, high), sizes[i]) - positions[i];
+            final int skipped = Math.min(remaining, linesAtHigh);
+            positions[i] += skipped;
+            remaining -= skipped;
+        }
+
+        return positions;
+    }
+
+    private long countUpTo(long timestamp) {
+        long count = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            count += Math.min(logs.get(i).countUpTo(source, timestamp), sizes[i]);
+        }
+
+        return count;
+    }
+
+    private class MergingIterator implements Iterator<String> {
+        private final PriorityQueue<LogCursor> cursors;
+
+        private MergingIterator(int[] positions) {
+            cursors = new PriorityQueue<>(Math.max(1, logs.size()),
+                    Comparator.comparingLong(LogCursor::timestamp).thenComparingInt(cursor -> cursor.logIndex));
+            for (int i = 0; i < logs.size(); i++) {
+                final LogCursor cursor = new LogCursor(i, positions[i]);
+                if (cursor.hasLine()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            final LogCursor cursor = cursors.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+
+            final String line = cursor.line();
+            cursor.advance();
+            if (cursor.hasLine()) {
+                cursors.add(cursor);
+            }
+
+            return line;
+        }
+    }
+
+    /**
+     * Position in the output of one command, with the page of lines around it.
+     */
+    private class LogCursor {
+        private final int logIndex;
+        private int position;
+        private int end;
+        private int pageStart;
+        private List<String> pageLines;
+        private long[] pageTimestamps;
+
+        private LogCursor(int logIndex, int position) {
+            this.logIndex = logIndex;
+            this.position = position;
+            end = sizes[logIndex];
+            pageLines = List.of();
+            pageTimestamps = new long[0];
+            loadPage();
+        }
+
+        boolean hasLine() {
+            return position < end;
+        }
+
+        long timestamp() {
+            return pageTimestamps[position - pageStart];
+        }
+
+        String line() {
+            return pageLines.get(position - pageStart);
+        }
+
+        void advance() {
+            position++;
+            if (position - pageStart >= pageLines.size()) {
+                loadPage();
+            }
+        }
+
+        private void loadPage() {
+            if (position >= end) {
+                return;
+            }
+
+            final OutputLog log = logs.get(logIndex);
+            final int to = Math.min(end, position + PAGE_SIZE);
+            pageStart = position;
+            pageLines = log.getLines(source, position, to);
+            pageTimestamps = log.getTimestamps(source, position, to);
+            if (pageLines.size() < to - position || pageTimestamps.length < pageLines.size()) {
+                // lines of a log that keeps only the latest ones were dropped meanwhile
+                end = position + Math.min(pageLines.size(), pageTimestamps.length);
+            }
+        }
+    }
+}
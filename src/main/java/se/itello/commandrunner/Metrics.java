@@ -0,0 +1,246 @@
+package se.itello.commandrunner;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of commands, queues and listener callbacks, rendered in the Prometheus text format by
+ * {@link #scrape()} and served by {@link MetricsServer}. Everything is counted in {@link LongAdder}s, so that the
+ * threads reading output and running commands do not contend on the counters.
+ */
+public class Metrics {
+    private static final double[] DURATION_BUCKETS = {0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300, 900, 3600};
+    private static final double[] DELAY_BUCKETS = {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5};
+
+    private static final Metrics instance = new Metrics();
+
+    private final LongAdder commandsStarted;
+    private final LongAdder commandsSucceeded;
+    private final LongAdder commandsFailed;
+    private final LongAdder commandsKilled;
+    private final LongAdder commandsCached;
+    private final LongAdder commandsRunning;
+    private final Histogram commandDuration;
+    private final Histogram queueWait;
+    private final LongAdder[] outputLines;
+    private final LongAdder[] outputCharacters;
+    private final LongAdder queuesStarted;
+    private final LongAdder queuesRunning;
+    private final LongAdder listenerBacklog;
+    private final LongAdder eventsDropped;
+    private final LongAdder eventsCoalesced;
+    private final Histogram listenerDelay;
+
+    private Metrics() {
+        commandsStarted = new LongAdder();
+        commandsSucceeded = new LongAdder();
+        commandsFailed = new LongAdder();
+        commandsKilled = new LongAdder();
+        commandsCached = new LongAdder();
+        commandsRunning = new LongAdder();
+        commandDuration = new Histogram(DURATION_BUCKETS);
+        queueWait = new Histogram(DURATION_BUCKETS);
+        outputLines = new LongAdder[]{new LongAdder(), new LongAdder()};
+        outputCharacters = new LongAdder[]{new LongAdder(), new LongAdder()};
+        queuesStarted = new LongAdder();
+        queuesRunning = new LongAdder();
+        listenerBacklog = new LongAdder();
+        eventsDropped = new LongAdder();
+        eventsCoalesced = new LongAdder();
+        listenerDelay = new Histogram(DELAY_BUCKETS);
+    }
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param waitedNanos how long the command waited for a free worker
+     */
+    void commandDequeued(long waitedNanos) {
+        queueWait.observe(waitedNanos / 1e9);
+    }
+
+    void commandStarted() {
+        commandsStarted.increment();
+        commandsRunning.increment();
+    }
+
+    void commandFinished(CommandStatus status, long durationNanos, boolean cached) {
+        commandsRunning.decrement();
+        if (status == CommandStatus.OK) {
+            commandsSucceeded.increment();
+        } else if (status == CommandStatus.FAIL) {
+            commandsFailed.increment();
+        } else {
+            commandsKilled.increment();
+        }
+        if (cached) {
+            commandsCached.increment();
+        } else {
+            commandDuration.observe(durationNanos / 1e9);
+        }
+    }
+
+    /**
+     * Counts characters rather than bytes, as output from shell sessions and agents arrives already decoded, and a
+     * line break for every line.
+     */
+    void outputRead(OutputBatch batch) {
+        long characters = 0;
+        for (String line : batch.getLines()) {
+            characters += line.length() + 1;
+        }
+        outputLines[batch.getSource().ordinal()].add(batch.size());
+        outputCharacters[batch.getSource().ordinal()].add(characters);
+    }
+
+    void queueStarted() {
+        queuesStarted.increment();
+        queuesRunning.increment();
+    }
+
+    void queueStopped() {
+        queuesRunning.decrement();
+    }
+
+    void eventDropped() {
+        eventsDropped.increment();
+    }
+
+    void eventCoalesced() {
+        eventsCoalesced.increment();
+    }
+
+    /**
+     * @return an executor that runs the tasks on the given one, counting how many are waiting and how long they
+     * waited, e.g. for the JavaFX application thread
+     */
+    Executor measureBacklog(Executor executor) {
+        return task -> {
+            final long submittedAt = System.nanoTime();
+            listenerBacklog.increment();
+            executor.execute(() -> {
+                listenerBacklog.decrement();
+                listenerDelay.observe((System.nanoTime() - submittedAt) / 1e9);
+                task.run();
+            });
+        };
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format, version 0.0.4
+     */
+    public String scrape() {
+        final StringBuilder text = new StringBuilder(4096);
+        counter(text, "commandrunner_commands_started_total", "Commands started.", commandsStarted.sum());
+        text.append("# HELP commandrunner_commands_finished_total Commands finished, by status.\n")
+                .append("# TYPE commandrunner_commands_finished_total counter\n");
+        sample(text, "commandrunner_commands_finished_total{status=\"ok\"}", commandsSucceeded.sum());
+        sample(text, "commandrunner_commands_finished_total{status=\"fail\"}", commandsFailed.sum());
+        sample(text, "commandrunner_commands_finished_total{status=\"killed\"}", commandsKilled.sum());
+        counter(text, "commandrunner_commands_cached_total", "Commands whose output was replayed since their inputs were unchanged.", commandsCached.sum());
+        gauge(text, "commandrunner_commands_running", "Commands running, locally or on agents.", commandsRunning.sum());
+        commandDuration.write(text, "commandrunner_command_duration_seconds", "How long commands ran, except those replayed.");
+        queueWait.write(text, "commandrunner_command_queue_wait_seconds", "How long commands waited for a free worker.");
+
+        text.append("# HELP commandrunner_output_lines_total Output lines read, by stream.\n")
+                .append("# TYPE commandrunner_output_lines_total counter\n");
+        for (OutputSource source : OutputSource.values()) {
+            sample(text, "commandrunner_output_lines_total" + streamLabel(source), outputLines[source.ordinal()].sum());
+        }
+        text.append("# HELP commandrunner_output_characters_total Output read, by stream, in characters including line breaks.\n")
+                .append("# TYPE commandrunner_output_characters_total counter\n");
+        for (OutputSource source : OutputSource.values()) {
+            sample(text, "commandrunner_output_characters_total" + streamLabel(source), outputCharacters[source.ordinal()].sum());
+        }
+
+        counter(text, "commandrunner_queues_started_total", "Command queues started.", queuesStarted.sum());
+        gauge(text, "commandrunner_queues_running", "Command queues running.", queuesRunning.sum());
+
+        final CommandExecutor executor = CommandExecutor.getInstance();
+        gauge(text, "commandrunner_workers", "Commands that may run at the same time, locally and on agents.", executor.getWorkerCount());
+        gauge(text, "commandrunner_workers_busy", "Workers running a command.", executor.getActiveWorkers());
+        gauge(text, "commandrunner_commands_waiting", "Commands waiting for a free worker.", executor.getQueueDepth());
+        gauge(text, "commandrunner_agents_configured", "Worker agents listed in the settings.", AgentDispatcher.getInstance().getConfiguredAgentCount());
+        gauge(text, "commandrunner_agents_connected", "Worker agents connected.", AgentDispatcher.getInstance().getConnectedAgentCount());
+
+        gauge(text, "commandrunner_listener_backlog", "Listener callbacks waiting for the JavaFX application thread.", listenerBacklog.sum());
+        listenerDelay.write(text, "commandrunner_listener_delay_seconds", "How long listener callbacks waited for the JavaFX application thread.");
+        counter(text, "commandrunner_events_dropped_total", "Output events dropped since a listener had too many waiting.", eventsDropped.sum());
+        counter(text, "commandrunner_events_coalesced_total", "Output events merged into a waiting one since a listener had too many waiting.", eventsCoalesced.sum());
+
+        final Runtime runtime = Runtime.getRuntime();
+        gauge(text, "commandrunner_memory_used_bytes", "Heap memory used.", runtime.totalMemory() - runtime.freeMemory());
+        gauge(text, "commandrunner_memory_max_bytes", "Heap memory the JVM may use.", runtime.maxMemory());
+
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n");
+        sample(text, name, value);
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n");
+        sample(text, name, value);
+    }
+
+    private static void sample(StringBuilder text, String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String streamLabel(OutputSource source) {
+        return "{stream=\"" + source.name().toLowerCase(Locale.ROOT) + "\"}";
+    }
+
+    private static String formatSeconds(double seconds) {
+        return Double.isInfinite(seconds) ? "+Inf" : Double.toString(seconds);
+    }
+
+    /**
+     * Counts observations in buckets with fixed upper bounds, which are only added up to the cumulative counts
+     * Prometheus expects when scraped.
+     */
+    private static class Histogram {
+        private final double[] upperBounds;
+        private final LongAdder[] buckets;
+        private final DoubleAdder sum;
+
+        Histogram(double[] upperBounds) {
+            this.upperBounds = upperBounds;
+            buckets = new LongAdder[upperBounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+            sum = new DoubleAdder();
+        }
+
+        void observe(double value) {
+            int bucket = 0;
+            while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sum.add(value);
+        }
+
+        void write(StringBuilder text, String name, String help) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                    .append("# TYPE ").append(name).append(" histogram\n");
+            long cumulativeCount = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulativeCount += buckets[i].sum();
+                final double upperBound = i < upperBounds.length ? upperBounds[i] : Double.POSITIVE_INFINITY;
+                sample(text, name + "_bucket{le=\"" + formatSeconds(upperBound) + "\"}", cumulativeCount);
+            }
+            text.append(name).append("_sum ").append(sum.sum()).append('\n');
+            sample(text, name + "_count", cumulativeCount);
+        }
+    }
+}
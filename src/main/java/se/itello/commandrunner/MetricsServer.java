@@ -0,0 +1,85 @@
+package se.itello.commandrunner;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link Metrics#scrape()} at {@code /metrics} on a port of the loopback address, for Prometheus or any other
+ * HTTP client on the same machine.
+ */
+public class MetricsServer {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final MetricsServer instance = new MetricsServer();
+
+    private HttpServer server;
+
+    private MetricsServer() {
+    }
+
+    public static MetricsServer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Stops serving on the previous port, and starts serving on the new one.
+     *
+     * @param port where to serve the metrics, or 0 to not serve them
+     * @throws IllegalArgumentException if the port is taken or out of range
+     */
+    public synchronized void listen(int port) {
+        if (server != null && server.getAddress().getPort() == port) {
+            return;
+        }
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (port == 0) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("could not listen on port " + port + ": " + e.getMessage());
+        }
+        server.createContext("/metrics", MetricsServer::serveMetrics);
+        server.start();
+    }
+
+    /**
+     * @return the port the metrics are served on, or 0 if they are not served
+     */
+    public synchronized int getPort() {
+        return server == null ? 0 : server.getAddress().getPort();
+    }
+
+    private static void serveMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] body = Metrics.getInstance().scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
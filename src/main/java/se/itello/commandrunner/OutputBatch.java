@@ -0,0 +1,36 @@
+package se.itello.commandrunner;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lines of output read from one stream of a command in one go.
+ * The timestamp is a {@link System#nanoTime()} value taken when the lines were read.
+ */
+public class OutputBatch {
+    private final List<String> lines;
+    private final OutputSource source;
+    private final long timestamp;
+
+    OutputBatch(List<String> lines, OutputSource source, long timestamp) {
+        this.lines = Collections.unmodifiableList(lines);
+        this.source = source;
+        this.timestamp = timestamp;
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    public int size() {
+        return lines.size();
+    }
+
+    public OutputSource getSource() {
+        return source;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,40 @@
+package se.itello.commandrunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compresses the output of finished commands, one at a time on a low priority background thread,
+ * see {@link CompressedOutputLog}.
+ */
+class OutputCompressor {
+    private static final OutputCompressor instance = new OutputCompressor();
+
+    private final ExecutorService executor;
+
+    private OutputCompressor() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "output-compressor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    static OutputCompressor getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param output the output of a command that has finished
+     */
+    void compress(CommandOutput output) {
+        executor.execute(() -> {
+            try {
+                output.compress();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+}
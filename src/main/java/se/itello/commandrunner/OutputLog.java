@@ -0,0 +1,41 @@
+package se.itello.commandrunner;
+
+import java.util.List;
+
+/**
+ * The output lines of one command, from both stdout and stderr in the order they were read, each with the
+ * {@link System#nanoTime()} it was read at. Timestamps never decrease from one line to the next.
+ * <p>
+ * Lines are numbered from 0, either among the lines of one stream or, where the stream is null, among all lines.
+ */
+interface OutputLog {
+
+    void append(OutputSource source, List<String> lines, long timestamp);
+
+    int size(OutputSource source);
+
+    /**
+     * @return the lines from {@code from}, inclusive, to {@code to}, exclusive
+     */
+    List<String> getLines(OutputSource source, int from, int to);
+
+    /**
+     * @return the timestamps of the lines from {@code from}, inclusive, to {@code to}, exclusive
+     */
+    long[] getTimestamps(OutputSource source, int from, int to);
+
+    /**
+     * @return the stream of each line from {@code from}, inclusive, to {@code to}, exclusive, among all lines
+     */
+    OutputSource[] getSources(int from, int to);
+
+    /**
+     * @return the number of lines read at or before the given time
+     */
+    int countUpTo(OutputSource source, long timestamp);
+
+    /**
+     * Releases what the log holds. A closed log is empty and ignores new lines.
+     */
+    void close();
+}
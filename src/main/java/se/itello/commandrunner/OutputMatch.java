@@ -0,0 +1,61 @@
+package se.itello.commandrunner;
+
+/**
+ * A line of output matched by one of the output rules of a command, see {@link Command#setOutputRules(String)}.
+ */
+public class OutputMatch {
+    public enum Action {
+        /**
+         * The command fails, even if it exits with 0.
+         */
+        FAIL,
+        /**
+         * The line is counted and pointed out, without affecting the status.
+         */
+        FLAG,
+        /**
+         * The value of the first group of the rule, or the whole match, is kept under the name of the rule.
+         */
+        EXTRACT
+    }
+
+    private final Action action;
+    private final String name;
+    private final String value;
+    private final String line;
+    private final OutputSource source;
+
+    OutputMatch(Action action, String name, String value, String line, OutputSource source) {
+        this.action = action;
+        this.name = name;
+        this.value = value;
+        this.line = line;
+        this.source = source;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return the name given to the rule, or its pattern if it has none
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value extracted by the rule, or the matched text for rules that do not extract
+     */
+    public String getValue() {
+        return value;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public OutputSource getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,94 @@
+package se.itello.commandrunner;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * What the output rules of a command matched during its last run.
+ * Values extracted more than once under the same name are summed if they are whole numbers, otherwise the last
+ * one is kept, so that e.g. the test counts of several modules add up.
+ */
+public class OutputMatches {
+    private static final Pattern WHOLE_NUMBER = Pattern.compile("-?\\d{1,18}");
+
+    private final Map<String, String> values;
+    private String failure;
+    private int flagCount;
+
+    OutputMatches() {
+        values = new LinkedHashMap<>();
+    }
+
+    synchronized void add(OutputMatch match) {
+        switch (match.getAction()) {
+            case FAIL:
+                if (failure == null) {
+                    failure = match.getName();
+                }
+                break;
+            case FLAG:
+                flagCount++;
+                break;
+            case EXTRACT:
+                values.merge(match.getName(), match.getValue(), OutputMatches::combine);
+                break;
+        }
+    }
+
+    private static String combine(String value, String newValue) {
+        if (WHOLE_NUMBER.matcher(value).matches() && WHOLE_NUMBER.matcher(newValue).matches()) {
+            return new BigInteger(value).add(new BigInteger(newValue)).toString();
+        }
+
+        return newValue;
+    }
+
+    synchronized void clear() {
+        values.clear();
+        failure = null;
+        flagCount = 0;
+    }
+
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return the name of the first fail rule that matched, or null if none did
+     */
+    public synchronized String getFailure() {
+        return failure;
+    }
+
+    public synchronized int getFlagCount() {
+        return flagCount;
+    }
+
+    public synchronized Map<String, String> getValues() {
+        return new LinkedHashMap<>(values);
+    }
+
+    public synchronized boolean isEmpty() {
+        return failure == null && flagCount == 0 && values.isEmpty();
+    }
+
+    public synchronized String summary() {
+        final StringBuilder summary = new StringBuilder();
+        if (failure != null) {
+            summary.append("failed: ").append(failure);
+        }
+        if (flagCount > 0) {
+            summary.append(summary.length() == 0 ? "" : ", ").append(flagCount).append(" flagged");
+        }
+        if (!values.isEmpty()) {
+            summary.append(summary.length() == 0 ? "" : ", ").append(values.entrySet().stream()
+                    .map(entry -> entry.getKey() + "=" + entry.getValue())
+                    .collect(Collectors.joining(", ")));
+        }
+
+        return summary.toString();
+    }
+}
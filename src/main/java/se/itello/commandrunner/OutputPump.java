@@ -0,0 +1,153 @@
+package se.itello.commandrunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads a process stream in chunks and hands over all complete lines of each chunk as one batch.
+ * Lines end with \n, \r or \r\n, like {@link java.io.BufferedReader#readLine()}.
+ */
+class OutputPump {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+    private final Charset charset;
+    private final OutputSource source;
+    private final Consumer<OutputBatch> batchConsumer;
+
+    private boolean skipLineFeed;
+
+    OutputPump(InputStream inputStream, Charset charset, OutputSource source, Consumer<OutputBatch> batchConsumer) {
+        this.inputStream = inputStream;
+        this.charset = charset;
+        this.source = source;
+        this.batchConsumer = batchConsumer;
+    }
+
+    void run() throws IOException {
+        if (isAsciiCompatible(charset)) {
+            pumpBytes();
+        } else {
+            pumpChars(new InputStreamReader(inputStream, charset));
+        }
+    }
+
+    /**
+     * Line breaks can be found without decoding when they are single bytes that never occur inside multi-byte characters.
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        return Arrays.equals("\n\r".getBytes(charset), new byte[]{'\n', '\r'});
+    }
+
+    private void pumpBytes() throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int lineStart = 0;
+        int end = 0;
+        int highBits = 0;
+
+        int read;
+        while ((read = inputStream.read(buffer, end, buffer.length - end)) != -1) {
+            final long timestamp = System.nanoTime();
+            final List<String> lines = new ArrayList<>();
+            final int scanStart = end;
+            end += read;
+
+            for (int i = scanStart; i < end; i++) {
+                final byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    if (b == '\n' && skipLineFeed && i == lineStart) {
+                        lineStart = i + 1;
+                    } else {
+                        lines.add(decode(buffer, lineStart, i - lineStart, highBits));
+                        lineStart = i + 1;
+                    }
+                    skipLineFeed = b == '\r';
+                    highBits = 0;
+                } else {
+                    skipLineFeed = false;
+                    highBits |= b;
+                }
+            }
+
+            if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, end - lineStart);
+                end -= lineStart;
+                lineStart = 0;
+            } else if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            emit(lines, timestamp);
+        }
+
+        if (end > lineStart) {
+            emit(Arrays.asList(decode(buffer, lineStart, end - lineStart, highBits)), System.nanoTime());
+        }
+    }
+
+    private String decode(byte[] buffer, int offset, int length, int highBits) {
+        if ((highBits & 0x80) == 0) {
+            // plain ASCII, which is the same in every ASCII compatible charset
+            return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+        }
+
+        return new String(buffer, offset, length, charset);
+    }
+
+    private void pumpChars(Reader reader) throws IOException {
+        char[] buffer = new char[CHUNK_SIZE];
+        int lineStart = 0;
+        int end = 0;
+
+        int read;
+        while ((read = reader.read(buffer, end, buffer.length - end)) != -1) {
+            final long timestamp = System.nanoTime();
+            final List<String> lines = new ArrayList<>();
+            final int scanStart = end;
+            end += read;
+
+            for (int i = scanStart; i < end; i++) {
+                final char c = buffer[i];
+                if (c == '\n' || c == '\r') {
+                    if (c == '\n' && skipLineFeed && i == lineStart) {
+                        lineStart = i + 1;
+                    } else {
+                        lines.add(new String(buffer, lineStart, i - lineStart));
+                        lineStart = i + 1;
+                    }
+                    skipLineFeed = c == '\r';
+                } else {
+                    skipLineFeed = false;
+                }
+            }
+
+            if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, end - lineStart);
+                end -= lineStart;
+                lineStart = 0;
+            } else if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            emit(lines, timestamp);
+        }
+
+        if (end > lineStart) {
+            emit(Arrays.asList(new String(buffer, lineStart, end - lineStart)), System.nanoTime());
+        }
+    }
+
+    private void emit(List<String> lines, long timestamp) {
+        if (!lines.isEmpty()) {
+            batchConsumer.accept(new OutputBatch(lines, source, timestamp));
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Rules that are matched against every output line of a command as it is read, written as comma separated
+ * {@code action [name] /pattern/[i]}, e.g. {@code fail /BUILD FAILED/, extract tests /Tests run: (\d+)/, flag /warn/i}.
+ * The action is fail, flag or extract, see {@link OutputMatch.Action}, and extract rules need a name.
+ * A slash in a pattern is written {@code \/}, and an {@code i} after the pattern makes it ignore case.
+ * <p>
+ * Most lines match no rule, so the literal text that every match of a rule must contain is taken from its pattern,
+ * and the literals of all rules are combined into one Aho-Corasick automaton that reads each line once, ignoring
+ * case. Only the rules whose literal was found have their patterns run, and rules that are plain text are checked
+ * without running a pattern at all. Rules without such a literal, like {@code /a|b/}, have their pattern run on
+ * every line.
+ */
+class OutputRules {
+    private static final int MAX_CACHED = 256;
+    private static final String META_CHARACTERS = "\\[](){}|.^$*+?";
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+    private static final Map<String, OutputRules> cache = new ConcurrentHashMap<>();
+
+    static final OutputRules NONE = new OutputRules(List.of());
+
+    private final Rule[] rules;
+    /**
+     * The rules that have no literal, whose patterns are run on every line.
+     */
+    private final int[] unfilteredRules;
+    /**
+     * The class of each ASCII character, the same for upper and lower case.
+     */
+    private final int[] asciiClasses;
+    private final char[] otherCharacters;
+    private final int[] otherClasses;
+    private final int stride;
+    /**
+     * The state after each state and character class, with class 0 for characters that are in no literal.
+     */
+    private final int[] transitions;
+    /**
+     * The rules whose literals end in each state, or null.
+     */
+    private final int[][] outputs;
+
+    private OutputRules(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+
+        final List<Map<Character, Integer>> trie = new ArrayList<>();
+        final List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new HashMap<>());
+        ends.add(new ArrayList<>());
+        final TreeSet<Character> alphabet = new TreeSet<>();
+        final List<Integer> unfiltered = new ArrayList<>();
+        for (int r = 0; r < this.rules.length; r++) {
+            final String literal = this.rules[r].literal;
+            if (literal == null) {
+                unfiltered.add(r);
+                continue;
+            }
+
+            int state = 0;
+            for (char c : literal.toCharArray()) {
+                alphabet.add(c);
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(c, next);
+                    trie.add(new HashMap<>());
+                    ends.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            ends.get(state).add(r);
+        }
+        unfilteredRules = unfiltered.stream().mapToInt(Integer::intValue).toArray();
+
+        asciiClasses = new int[128];
+        final List<Character> others = new ArrayList<>();
+        int characterClass = 1;
+        for (char c : alphabet) {
+            if (c < 128) {
+                asciiClasses[c] = characterClass;
+            } else {
+                others.add(c);
+            }
+            characterClass++;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            asciiClasses[c] = asciiClasses[Character.toLowerCase(c)];
+        }
+        otherCharacters = new char[others.size()];
+        otherClasses = new int[others.size()];
+        for (int i = 0; i < others.size(); i++) {
+            otherCharacters[i] = others.get(i);
+            otherClasses[i] = alphabet.headSet(others.get(i)).size() + 1;
+        }
+
+        stride = alphabet.size() + 1;
+        transitions = new int[trie.size() * stride];
+        outputs = new int[trie.size()][];
+        final int[] failures = new int[trie.size()];
+        final Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            final TreeSet<Integer> stateOutputs = new TreeSet<>(ends.get(state));
+            if (state != 0 && outputs[failures[state]] != null) {
+                Arrays.stream(outputs[failures[state]]).forEach(stateOutputs::add);
+            }
+            outputs[state] = stateOutputs.isEmpty() ? null : stateOutputs.stream().mapToInt(Integer::intValue).toArray();
+
+            for (char c : alphabet) {
+                final int column = classOf(c);
+                final Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    transitions[state * stride + column] = state == 0 ? 0 : transitions[failures[state] * stride + column];
+                } else {
+                    failures[next] = state == 0 ? 0 : transitions[failures[state] * stride + column];
+                    transitions[state * stride + column] = next;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the rules, which are cached by their text
+     * @throws IllegalArgumentException if the rules can not be parsed
+     */
+    static OutputRules parse(String text) {
+        if (text == null || text.isBlank()) {
+            return NONE;
+        }
+
+        OutputRules rules = cache.get(text);
+        if (rules == null) {
+            rules = new OutputRules(parseRules(text));
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(text, rules);
+        }
+
+        return rules;
+    }
+
+    boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * @param matches gets the matches, on the thread that evaluates the lines
+     * @return something that evaluates lines, from one thread at a time
+     */
+    Evaluator evaluator(Consumer<OutputMatch> matches) {
+        return new Evaluator(matches);
+    }
+
+    /**
+     * @return the class of the character, ignoring case
+     */
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+
+        final int index = Arrays.binarySearch(otherCharacters, fold(c));
+        return index < 0 ? 0 : otherClasses[index];
+    }
+
+    /**
+     * @return the character in the form that all characters equal to it when ignoring case have, as compared by
+     * patterns that ignore case
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static List<Rule> parseRules(String text) {
+        final List<Rule> rules = new ArrayList<>();
+        int i = 0;
+        while (true) {
+            i = skipWhitespace(text, i);
+            if (i == text.length()) {
+                return rules;
+            }
+
+            final int actionStart = i;
+            i = skipWord(text, i);
+            final String actionName = text.substring(actionStart, i);
+            final OutputMatch.Action action;
+            try {
+                action = OutputMatch.Action.valueOf(actionName.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown output rule action '" + actionName + "', expected fail, flag or extract");
+            }
+
+            i = skipWhitespace(text, i);
+            final int nameStart = i;
+            i = skipWord(text, i);
+            final String name = text.substring(nameStart, i);
+            i = skipWhitespace(text, i);
+            if (i == text.length() || text.charAt(i) != '/') {
+                throw new IllegalArgumentException("expected /pattern/ after '" + text.substring(actionStart, i).trim() + "'");
+            }
+
+            final StringBuilder regex = new StringBuilder();
+            for (i++; i < text.length() && text.charAt(i) != '/'; i++) {
+                if (text.charAt(i) == '\\' && i + 1 < text.length()) {
+                    if (text.charAt(i + 1) != '/') {
+                        regex.append('\\');
+                    }
+                    i++;
+                }
+                regex.append(text.charAt(i));
+            }
+            if (i == text.length()) {
+                throw new IllegalArgumentException("unterminated pattern: /" + regex);
+            }
+            i++;
+
+            final boolean ignoreCase = i < text.length() && text.charAt(i) == 'i';
+            if (ignoreCase) {
+                i++;
+            }
+            if (action == OutputMatch.Action.EXTRACT && name.isEmpty()) {
+                throw new IllegalArgumentException("extract rule /" + regex + "/ needs a name");
+            }
+            rules.add(new Rule(action, name.isEmpty() ? regex.toString() : name, regex.toString(), ignoreCase));
+
+            i = skipWhitespace(text, i);
+            if (i < text.length()) {
+                if (text.charAt(i) != ',') {
+                    throw new IllegalArgumentException("expected ',' between output rules at: " + text.substring(i));
+                }
+                i++;
+            }
+        }
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipWord(String text, int i) {
+        while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || "_-.".indexOf(text.charAt(i)) >= 0)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static class Rule {
+        final OutputMatch.Action action;
+        final String name;
+        final Pattern pattern;
+        final boolean ignoreCase;
+        /**
+         * Text, case {@link #fold(char) folded}, that every match contains, or null if there is none to rely on.
+         */
+        final String literal;
+        /**
+         * The whole pattern as plain text if it has no special characters, or null.
+         */
+        final String plainText;
+
+        Rule(OutputMatch.Action action, String name, String regex, boolean ignoreCase) {
+            this.action = action;
+            this.name = name;
+            this.ignoreCase = ignoreCase;
+            try {
+                pattern = Pattern.compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("invalid output rule pattern /" + regex + "/: " + e.getDescription());
+            }
+
+            plainText = plainText(regex);
+            final String literal = plainText == null ? requiredLiteral(regex) : plainText;
+            this.literal = literal == null || literal.isEmpty() ? null : fold(literal);
+        }
+
+        private static String fold(String text) {
+            final char[] folded = new char[text.length()];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = OutputRules.fold(text.charAt(i));
+            }
+
+            return new String(folded);
+        }
+
+        private static String plainText(String regex) {
+            final StringBuilder text = new StringBuilder();
+            for (int i = 0; i < regex.length(); i++) {
+                final char c = regex.charAt(i);
+                if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    text.append(regex.charAt(++i));
+                } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    text.append(c);
+                }
+            }
+
+            return text.length() == 0 ? null : text.toString();
+        }
+
+        /**
+         * Escapes that stand for something else than the escaped character end the run of plain characters, and
+         * their arguments are skipped, e.g. {@code /\x41BC/} and {@code /\p{Lu}BC/} require {@code BC}, as does the
+         * same with a four digit Unicode escape, {@code /\cAB/} requires {@code B}, and {@code /(?<a>x)\k<a>yz/}
+         * requires {@code yz}.
+         *
+         * @return the longest run of plain characters outside groups and classes that no quantifier applies to,
+         * or null if the pattern is an alternation at the top or can not be read this simply
+         */
+        private static String requiredLiteral(String regex) {
+            if (regex.contains("\\Q") || COMMENTS_FLAG.matcher(regex).find()) {
+                return null;
+            }
+
+            String longest = "";
+            final StringBuilder run = new StringBuilder();
+            boolean lastWasLiteral = false;
+            int depth = 0;
+            for (int i = 0; i < regex.length(); i++) {
+                final char c = regex.charAt(i);
+                if (c == '\\') {
+                    i++;
+                    if (depth == 0 && i < regex.length() && !Character.isLetterOrDigit(regex.charAt(i))) {
+                        run.append(regex.charAt(i));
+                        lastWasLiteral = true;
+                        continue;
+                    }
+                    i = endOfEscape(regex, i);
+                } else if (c == '[') {
+                    i = endOfClass(regex, i);
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && c == '|') {
+                    return null;
+                } else if (depth == 0 && (c == '*' || c == '?' || c == '{')) {
+                    if (lastWasLiteral) {
+                        run.setLength(run.length() - 1);
+                    }
+                    if (c == '{') {
+                        i = Math.max(i, regex.indexOf('}', i));
+                    }
+                } else if (depth == 0 && c != '+' && c != '.' && c != '^' && c != '$') {
+                    run.append(c);
+                    lastWasLiteral = true;
+                    continue;
+                }
+
+                if (run.length() > longest.length()) {
+                    longest = run.toString();
+                }
+                run.setLength(0);
+                lastWasLiteral = false;
+            }
+
+            return run.length() > longest.length() ? run.toString() : longest;
+        }
+
+        /**
+         * @param start the index of the letter or digit after the backslash
+         * @return the index of the last character of the escape, including its arguments
+         */
+        private static int endOfEscape(String regex, int start) {
+            if (start >= regex.length()) {
+                return start;
+            }
+
+            switch (regex.charAt(start)) {
+                case 'x':
+                case 'p':
+                case 'P':
+                case 'N':
+                    if (start + 1 < regex.length() && regex.charAt(start + 1) == '{') {
+                        return endOf(regex, start + 1, '}');
+                    }
+                    return Math.min(regex.length() - 1, start + (regex.charAt(start) == 'x' ? 2 : 1));
+                case 'u':
+                    return Math.min(regex.length() - 1, start + 4);
+                case 'c':
+                    return Math.min(regex.length() - 1, start + 1);
+                case 'k':
+                    return endOf(regex, start + 1, '>');
+                case '0':
+                    return endOfDigits(regex, start, 3, '7');
+                default:
+                    // back references take as many digits as there are groups
+                    return Character.isDigit(regex.charAt(start)) ? endOfDigits(regex, start, Integer.MAX_VALUE, '9') : start;
+            }
+        }
+
+        private static int endOf(String regex, int start, char end) {
+            final int index = regex.indexOf(end, start);
+            return index < 0 ? regex.length() - 1 : index;
+        }
+
+        private static int endOfDigits(String regex, int start, int maxDigits, char maxDigit) {
+            int i = start;
+            while (i + 1 < regex.length() && i - start < maxDigits && regex.charAt(i + 1) >= '0' && regex.charAt(i + 1) <= maxDigit) {
+                i++;
+            }
+
+            return i;
+        }
+
+        private static int endOfClass(String regex, int start) {
+            int i = start + 1;
+            if (i < regex.length() && regex.charAt(i) == '^') {
+                i++;
+            }
+            if (i < regex.length() && regex.charAt(i) == ']') {
+                i++;
+            }
+            for (int depth = 1; i < regex.length(); i++) {
+                final char c = regex.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']' && --depth == 0) {
+                    return i;
+                }
+            }
+
+            return regex.length();
+        }
+    }
+
+    /**
+     * Runs the automaton over lines and confirms what it finds, reusing its arrays and matchers from line to line,
+     * so that lines that match nothing cost no allocation.
+     */
+    class Evaluator {
+        private final Consumer<OutputMatch> matches;
+        private final Matcher[] matchers;
+        private final boolean[] isCandidate;
+        private final int[] candidates;
+        private final int[] plainTextStarts;
+
+        private Evaluator(Consumer<OutputMatch> matches) {
+            this.matches = matches;
+            matchers = new Matcher[rules.length];
+            for (int r = 0; r < rules.length; r++) {
+                matchers[r] = rules[r].pattern.matcher("");
+            }
+            isCandidate = new boolean[rules.length];
+            candidates = new int[rules.length];
+            plainTextStarts = new int[rules.length];
+        }
+
+        void evaluate(String line, OutputSource source) {
+            int candidateCount = 0;
+            int state = 0;
+            for (int i = 0; i < line.length(); i++) {
+                state = transitions[state * stride + classOf(line.charAt(i))];
+                final int[] found = outputs[state];
+                if (found == null) {
+                    continue;
+                }
+
+                for (int r : found) {
+                    if (isCandidate[r]) {
+                        continue;
+                    }
+
+                    final Rule rule = rules[r];
+                    if (rule.plainText != null) {
+                        final int start = i + 1 - rule.plainText.length();
+                        if (!line.regionMatches(rule.ignoreCase, start, rule.plainText, 0, rule.plainText.length())) {
+                            continue;
+                        }
+                        plainTextStarts[r] = start;
+                    }
+                    isCandidate[r] = true;
+                    candidates[candidateCount++] = r;
+                }
+            }
+            for (int r : unfilteredRules) {
+                candidates[candidateCount++] = r;
+            }
+
+            Arrays.sort(candidates, 0, candidateCount);
+            for (int c = 0; c < candidateCount; c++) {
+                final int r = candidates[c];
+                isCandidate[r] = false;
+
+                final Rule rule = rules[r];
+                if (rule.plainText != null) {
+                    final int start = plainTextStarts[r];
+                    matches.accept(new OutputMatch(rule.action, rule.name, line.substring(start, start + rule.plainText.length()), line, source));
+                    continue;
+                }
+
+                final Matcher matcher = matchers[r].reset(line);
+                if (matcher.find()) {
+                    final String value = matcher.groupCount() > 0 && matcher.group(1) != null ? matcher.group(1) : matcher.group();
+                    matches.accept(new OutputMatch(rule.action, rule.name, value, line, source));
+                }
+            }
+        }
+    }
+}
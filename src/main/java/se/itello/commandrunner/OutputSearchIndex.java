@@ -0,0 +1,331 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Trigram index of the output of the commands in a queue, built as lines arrive, for case insensitive substring
+ * search. Lines get ids in the order they arrive, and are indexed in blocks of {@link #BLOCK_LINES} lines.
+ * Every trigram of a block is hashed to a bucket holding the blocks it occurs in, as delta encoded varints,
+ * so a query only has to read the lines of the blocks that are in the buckets of all its trigrams.
+ * <p>
+ * The index stops growing at {@link #MAX_POSTING_BYTES}. Lines after that, and queries shorter than a trigram,
+ * are searched by reading the lines instead, so results are complete either way.
+ */
+class OutputSearchIndex {
+    private static final int BUCKETS = 1 << 16;
+    private static final int BLOCK_LINES = 64;
+    private static final int MAX_POSTING_BYTES = 64 * 1024 * 1024;
+    private static final int CONTEXT_LINES = 2;
+    private static final int SCAN_PAGE_SIZE = 512;
+
+    private final Postings[] postings;
+    private final Runs runs;
+    private int lineCount;
+    private long postingBytes;
+    /**
+     * Id of the first line that is not indexed, always the first line of a block.
+     */
+    private int indexedLines;
+    private boolean full;
+
+    OutputSearchIndex() {
+        postings = new Postings[BUCKETS];
+        runs = new Runs();
+    }
+
+    /**
+     * @param firstLineNumber the number, among all output lines of the command, of the first of the lines
+     */
+    synchronized void add(Command command, int firstLineNumber, List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        runs.add(lineCount, command, firstLineNumber, lines.size());
+        for (String line : lines) {
+            if (!full) {
+                indexLine(lineCount / BLOCK_LINES, line);
+                if (full) {
+                    // the block is partly indexed, so it is searched by reading its lines
+                    indexedLines = lineCount / BLOCK_LINES * BLOCK_LINES;
+                } else {
+                    indexedLines = lineCount + 1;
+                }
+            }
+            lineCount++;
+        }
+    }
+
+    private void indexLine(int block, String line) {
+        final String text = line.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            final int bucket = bucket(text, i);
+            if (postings[bucket] == null) {
+                postings[bucket] = new Postings();
+            }
+            postingBytes += postings[bucket].add(block);
+        }
+
+        full = postingBytes >= MAX_POSTING_BYTES;
+    }
+
+    private static int bucket(String text, int start) {
+        final int hash = (text.charAt(start) << 16 ^ text.charAt(start + 1) << 8 ^ text.charAt(start + 2)) * 0x9E3779B1;
+        return hash >>> 16;
+    }
+
+    /**
+     * Only finds the candidate blocks while holding the index, and reads the lines without holding it, so that
+     * output keeps being added while a search runs.
+     *
+     * @param outputs the output of each command, for reading the candidate lines
+     * @return the lines containing the query, ignoring case, in the order they arrived
+     */
+    List<SearchHit> search(String query, int maxHits, Function<Command, CommandOutput> outputs) {
+        final String needle = query.toLowerCase(Locale.ROOT);
+        final List<SearchHit> hits = new ArrayList<>();
+        if (needle.isEmpty()) {
+            return hits;
+        }
+
+        final Runs runs;
+        final int lineCount;
+        final int indexedLines;
+        final int[] candidates;
+        synchronized (this) {
+            runs = this.runs.snapshot();
+            lineCount = this.lineCount;
+            indexedLines = this.indexedLines;
+            candidates = needle.length() < 3 ? null : candidateBlocks(needle);
+        }
+
+        if (candidates == null) {
+            scan(needle, runs, 0, lineCount, maxHits, outputs, hits);
+            return hits;
+        }
+
+        for (int block : candidates) {
+            if (hits.size() >= maxHits) {
+                return hits;
+            }
+            final int first = block * BLOCK_LINES;
+            scan(needle, runs, first, Math.min(first + BLOCK_LINES, indexedLines), maxHits, outputs, hits);
+        }
+
+        scan(needle, runs, indexedLines, lineCount, maxHits, outputs, hits);
+        return hits;
+    }
+
+    /**
+     * @return the indexed blocks that are in the buckets of all trigrams of the query
+     */
+    private int[] candidateBlocks(String needle) {
+        final List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            final Postings bucket = postings[bucket(needle, i)];
+            if (bucket == null) {
+                return new int[0];
+            }
+            if (!lists.contains(bucket)) {
+                lists.add(bucket);
+            }
+        }
+        lists.sort(Comparator.comparingInt(list -> list.count));
+
+        int[] candidates = lists.get(0).decode();
+        for (int l = 1; l < lists.size() && candidates.length > 0; l++) {
+            candidates = lists.get(l).retainAll(candidates);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Reads the lines from {@code fromId} to {@code toId}, a page at a time per run of lines from the same command.
+     */
+    private static void scan(String needle, Runs runs, int fromId, int toId, int maxHits, Function<Command, CommandOutput> outputs, List<SearchHit> hits) {
+        for (int run = fromId < toId ? runs.find(fromId) : runs.size; run < runs.size && runs.firstIds[run] < toId && hits.size() < maxHits; run++) {
+            final CommandOutput output = outputs.apply(runs.commands[run]);
+            final int first = runs.firstLineNumbers[run] + Math.max(0, fromId - runs.firstIds[run]);
+            final int end = Math.min(runs.firstLineNumbers[run] + Math.min(runs.lengths[run], toId - runs.firstIds[run]),
+                    output.getLineCount());
+
+            for (int page = first; page < end && hits.size() < maxHits; page += SCAN_PAGE_SIZE) {
+                final List<String> lines = output.getMergedLines(page, Math.min(end, page + SCAN_PAGE_SIZE));
+                for (int i = 0; i < lines.size() && hits.size() < maxHits; i++) {
+                    if (lines.get(i).toLowerCase(Locale.ROOT).contains(needle)) {
+                        hits.add(hit(runs.commands[run], output, page + i, lines.get(i)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static SearchHit hit(Command command, CommandOutput output, int lineNumber, String line) {
+        final int lineCount = output.getLineCount();
+        return new SearchHit(command, lineNumber, line,
+                output.getMergedLines(Math.max(0, lineNumber - CONTEXT_LINES), lineNumber),
+                output.getMergedLines(lineNumber + 1, Math.min(lineCount, lineNumber + 1 + CONTEXT_LINES)));
+    }
+
+    synchronized void clear() {
+        Arrays.fill(postings, null);
+        runs.clear();
+        lineCount = 0;
+        postingBytes = 0;
+        indexedLines = 0;
+        full = false;
+    }
+
+    /**
+     * Ascending block numbers, each stored once as a varint of the difference to the one before.
+     */
+    private static class Postings {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int count;
+        private int last = -1;
+
+        /**
+         * @return the number of bytes the block took, 0 if it was already there
+         */
+        int add(int block) {
+            if (block == last) {
+                return 0;
+            }
+
+            final int lengthBefore = length;
+            int delta = block - last;
+            last = block;
+            count++;
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while (delta >= 0x80) {
+                bytes[length++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+
+            return length - lengthBefore;
+        }
+
+        int[] decode() {
+            final int[] blocks = new int[count];
+            int block = -1;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    delta |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                block += delta;
+                blocks[i] = block;
+            }
+
+            return blocks;
+        }
+
+        /**
+         * @return the given ascending blocks that are also in this list
+         */
+        int[] retainAll(int[] blocks) {
+            final int[] retained = new int[blocks.length];
+            int kept = 0;
+            int block = -1;
+            int position = 0;
+            int decoded = 0;
+            for (int candidate : blocks) {
+                while (block < candidate && decoded < count) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[position++];
+                        delta |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    block += delta;
+                    decoded++;
+                }
+                if (block == candidate) {
+                    retained[kept++] = candidate;
+                }
+            }
+
+            return Arrays.copyOf(retained, kept);
+        }
+    }
+
+    /**
+     * Consecutive line ids that are consecutive lines of the same command, so that an id can be turned into a
+     * command and line number without an entry per line.
+     */
+    private static class Runs {
+        private int[] firstIds = new int[64];
+        private int[] firstLineNumbers = new int[64];
+        private int[] lengths = new int[64];
+        private Command[] commands = new Command[64];
+        private int size;
+
+        void add(int firstId, Command command, int firstLineNumber, int length) {
+            final int last = size - 1;
+            if (last >= 0 && commands[last] == command && firstLineNumbers[last] + lengths[last] == firstLineNumber) {
+                lengths[last] += length;
+                return;
+            }
+
+            if (size == firstIds.length) {
+                final int capacity = Math.max(64, size * 2);
+                firstIds = Arrays.copyOf(firstIds, capacity);
+                firstLineNumbers = Arrays.copyOf(firstLineNumbers, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                commands = Arrays.copyOf(commands, capacity);
+            }
+            firstIds[size] = firstId;
+            firstLineNumbers[size] = firstLineNumber;
+            lengths[size] = length;
+            commands[size] = command;
+            size++;
+        }
+
+        /**
+         * @return the runs there are now, sharing the arrays, which are only appended to or replaced. Only the
+         * length of the last run may still grow, and lines past the line count at the time are not read anyway.
+         */
+        Runs snapshot() {
+            final Runs snapshot = new Runs();
+            snapshot.firstIds = firstIds;
+            snapshot.firstLineNumbers = firstLineNumbers;
+            snapshot.lengths = lengths;
+            snapshot.commands = commands;
+            snapshot.size = size;
+            return snapshot;
+        }
+
+        /**
+         * @return the run containing the id
+         */
+        int find(int id) {
+            final int index = Arrays.binarySearch(firstIds, 0, size, id);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        void clear() {
+            firstIds = new int[0];
+            firstLineNumbers = new int[0];
+            lengths = new int[0];
+            commands = new Command[0];
+            size = 0;
+        }
+    }
+}
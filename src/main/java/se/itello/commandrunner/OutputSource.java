@@ -0,0 +1,6 @@
+package se.itello.commandrunner;
+
+public enum OutputSource {
+    STDOUT,
+    STDERR
+}
@@ -12,6 +12,7 @@ import se.itello.commandrunner.gui.commandtable.CommandTableRow;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 import static se.itello.commandrunner.JsonConverter.appendNodeHierarchyToJSON;
 import static se.itello.commandrunner.JsonConverter.convertToJSON;
@@ -23,17 +24,31 @@ public class ProgramState implements LayoutChangedListener {
         FORGET
     }
 
-    private static final File SAVE_FILE = new File(System.getProperty("user.home") + System.getProperty("file.separator") + ".commandRunner");
-    private static final String COMMANDS = "commands";
-    private static final String HALT_ON_ERROR = "haltOnError";
+    static final File SAVE_FILE = new File(System.getProperty("user.home") + System.getProperty("file.separator") + ".commandRunner");
+    static final String COMMANDS = "commands";
+    static final String HALT_ON_ERROR = "haltOnError";
     private static final String CONFIRM_NONEMPTY_DELETE = "confirmNonemptyDelete";
     private static final String SAVE_ON_EXIT = "saveOnExit";
     private static final String WINDOW_LAYOUT = "windowLayout";
+    private static final String MAX_CONCURRENT_COMMANDS = "maxConcurrentCommands";
+    static final String OUTPUT_CHARSET = "outputCharset";
+    private static final String RESOURCE_SAMPLE_INTERVAL = "resourceSampleIntervalMillis";
+    static final String USE_SHELL_SESSIONS = "useShellSessions";
+    static final String AGENTS = "agents";
+    static final String AGENT_TOKEN = "agentToken";
+    private static final String METRICS_PORT = "metricsPort";
 
     private TreeItem<CommandTableRow> root = null;
     private boolean haltOnError = true;
     private boolean confirmNonemptyDelete = true;
     private SaveOnExit saveOnExit = SaveOnExit.ASK;
+    private int maxConcurrentCommands = CommandExecutor.DEFAULT_MAX_CONCURRENT_COMMANDS;
+    private Charset outputCharset = Charset.defaultCharset();
+    private long resourceSampleIntervalMillis = ResourceSampler.DEFAULT_INTERVAL_MILLIS;
+    private boolean useShellSessions = false;
+    private String agents = "";
+    private String agentToken = "";
+    private int metricsPort = 0;
     private WindowLayout windowLayout;
     private JSONObject settingsObject;
 
@@ -54,6 +69,13 @@ public class ProgramState implements LayoutChangedListener {
             settingsObject.put(HALT_ON_ERROR, haltOnError);
             settingsObject.put(CONFIRM_NONEMPTY_DELETE, confirmNonemptyDelete);
             settingsObject.put(SAVE_ON_EXIT, saveOnExit.toString());
+            settingsObject.put(MAX_CONCURRENT_COMMANDS, maxConcurrentCommands);
+            settingsObject.put(OUTPUT_CHARSET, outputCharset.name());
+            settingsObject.put(RESOURCE_SAMPLE_INTERVAL, resourceSampleIntervalMillis);
+            settingsObject.put(USE_SHELL_SESSIONS, useShellSessions);
+            settingsObject.put(AGENTS, agents);
+            settingsObject.put(AGENT_TOKEN, agentToken);
+            settingsObject.put(METRICS_PORT, metricsPort);
 
             saveToFile();
         } catch (Exception e) {
@@ -98,6 +120,32 @@ public class ProgramState implements LayoutChangedListener {
                 if (settingsObject.has(SAVE_ON_EXIT)) {
                     saveOnExit = SaveOnExit.valueOf(settingsObject.getString(SAVE_ON_EXIT));
                 }
+                if (settingsObject.has(MAX_CONCURRENT_COMMANDS)) {
+                    setMaxConcurrentCommands(settingsObject.getInt(MAX_CONCURRENT_COMMANDS));
+                }
+                if (settingsObject.has(OUTPUT_CHARSET) && Charset.isSupported(settingsObject.getString(OUTPUT_CHARSET))) {
+                    setOutputCharset(Charset.forName(settingsObject.getString(OUTPUT_CHARSET)));
+                }
+                if (settingsObject.has(RESOURCE_SAMPLE_INTERVAL)) {
+                    setResourceSampleIntervalMillis(settingsObject.getLong(RESOURCE_SAMPLE_INTERVAL));
+                }
+                if (settingsObject.has(USE_SHELL_SESSIONS)) {
+                    setUseShellSessions(settingsObject.getBoolean(USE_SHELL_SESSIONS));
+                }
+                if (settingsObject.has(AGENTS)) {
+                    try {
+                        setAgents(settingsObject.getString(AGENTS), settingsObject.optString(AGENT_TOKEN, ""));
+                    } catch (IllegalArgumentException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (settingsObject.has(METRICS_PORT)) {
+                    try {
+                        setMetricsPort(settingsObject.getInt(METRICS_PORT));
+                    } catch (IllegalArgumentException e) {
+                        e.printStackTrace();
+                    }
+                }
                 if (settingsObject.has(WINDOW_LAYOUT)) {
                     windowLayout = new WindowLayout(settingsObject.getJSONObject(WINDOW_LAYOUT));
                 } else {
@@ -143,6 +191,73 @@ public class ProgramState implements LayoutChangedListener {
         this.saveOnExit = saveOnExit;
     }
 
+    public int getMaxConcurrentCommands() {
+        return maxConcurrentCommands;
+    }
+
+    public void setMaxConcurrentCommands(int maxConcurrentCommands) {
+        this.maxConcurrentCommands = Math.max(1, maxConcurrentCommands);
+        CommandExecutor.getInstance().setMaxConcurrentCommands(this.maxConcurrentCommands);
+    }
+
+    public Charset getOutputCharset() {
+        return outputCharset;
+    }
+
+    public void setOutputCharset(Charset outputCharset) {
+        this.outputCharset = outputCharset;
+        Command.setOutputCharset(outputCharset);
+    }
+
+    public long getResourceSampleIntervalMillis() {
+        return resourceSampleIntervalMillis;
+    }
+
+    public void setResourceSampleIntervalMillis(long resourceSampleIntervalMillis) {
+        ResourceSampler.getInstance().setIntervalMillis(resourceSampleIntervalMillis);
+        this.resourceSampleIntervalMillis = ResourceSampler.getInstance().getIntervalMillis();
+    }
+
+    public boolean getUseShellSessions() {
+        return useShellSessions;
+    }
+
+    public void setUseShellSessions(boolean useShellSessions) {
+        this.useShellSessions = useShellSessions;
+        Command.setUseShellSessions(useShellSessions);
+    }
+
+    public String getAgents() {
+        return agents;
+    }
+
+    public String getAgentToken() {
+        return agentToken;
+    }
+
+    /**
+     * @param agents comma separated host:port of the worker agents to run commands on, see {@link AgentDispatcher}
+     * @throws IllegalArgumentException if an address is not host:port
+     */
+    public void setAgents(String agents, String agentToken) {
+        AgentDispatcher.getInstance().setAgents(AgentDispatcher.parseAddresses(agents), agentToken);
+        this.agents = agents.trim();
+        this.agentToken = agentToken;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * @param metricsPort where to serve metrics on the loopback address, or 0 to not serve them, see {@link MetricsServer}
+     * @throws IllegalArgumentException if the port can not be listened on
+     */
+    public void setMetricsPort(int metricsPort) {
+        MetricsServer.getInstance().listen(metricsPort);
+        this.metricsPort = metricsPort;
+    }
+
     TreeItem<CommandTableRow> getRoot() {
         return root;
     }
@@ -173,6 +288,13 @@ public class ProgramState implements LayoutChangedListener {
         int result = (haltOnError ? 1 : 0);
         result = 31 * result + (confirmNonemptyDelete ? 1 : 0);
         result = 31 * result + saveOnExit.hashCode();
+        result = 31 * result + maxConcurrentCommands;
+        result = 31 * result + outputCharset.hashCode();
+        result = 31 * result + Long.hashCode(resourceSampleIntervalMillis);
+        result = 31 * result + (useShellSessions ? 1 : 0);
+        result = 31 * result + agents.hashCode();
+        result = 31 * result + agentToken.hashCode();
+        result = 31 * result + metricsPort;
         try {
             result = 31 * result + convertToJSON(root).toString().hashCode();
         } catch (JSONException e) {
@@ -207,6 +329,26 @@ public class ProgramState implements LayoutChangedListener {
         windowLayout.setTableCommentColumnWidth(to);
     }
 
+    @Override
+    public void tableDependsOnColumnWidthChanged(int to) {
+        windowLayout.setTableDependsOnColumnWidth(to);
+    }
+
+    @Override
+    public void tableTimeoutColumnWidthChanged(int to) {
+        windowLayout.setTableTimeoutColumnWidth(to);
+    }
+
+    @Override
+    public void tableInputsColumnWidthChanged(int to) {
+        windowLayout.setTableInputsColumnWidth(to);
+    }
+
+    @Override
+    public void tableOutputRulesColumnWidthChanged(int to) {
+        windowLayout.setTableOutputRulesColumnWidth(to);
+    }
+
     @Override
     public void themeChanged(String theme) {
         windowLayout.setTheme(theme);
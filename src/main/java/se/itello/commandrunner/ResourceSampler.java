@@ -0,0 +1,148 @@
+package se.itello.commandrunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Samples cpu time, memory and I/O of running commands and their descendants on one shared thread.
+ * Memory and I/O are read from /proc and are therefore only available on Linux.
+ */
+public class ResourceSampler {
+    static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private static final ResourceSampler instance = new ResourceSampler();
+    private static final Path PROC = Paths.get("/proc");
+    private static final long KILOBYTE = 1024;
+
+    private final Map<ProcessHandle, ResourceUsage> trackedProcesses;
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> samplingTask;
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+    private ResourceSampler() {
+        trackedProcesses = new ConcurrentHashMap<>();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "resource-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static ResourceSampler getInstance() {
+        return instance;
+    }
+
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public synchronized void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = Math.max(10, intervalMillis);
+        if (samplingTask != null) {
+            samplingTask.cancel(false);
+            samplingTask = null;
+            startSamplingIfNeeded();
+        }
+    }
+
+    void track(Process process, ResourceUsage usage) {
+        usage.started();
+        final ProcessHandle processHandle = process.toHandle();
+        trackedProcesses.put(processHandle, usage);
+        scheduler.execute(() -> sample(processHandle, usage));
+        startSamplingIfNeeded();
+    }
+
+    void untrack(Process process) {
+        final ResourceUsage usage = trackedProcesses.remove(process.toHandle());
+        if (usage != null) {
+            usage.finished();
+        }
+        stopSamplingIfIdle();
+    }
+
+    private synchronized void startSamplingIfNeeded() {
+        if (samplingTask == null && !trackedProcesses.isEmpty()) {
+            samplingTask = scheduler.scheduleWithFixedDelay(this::sampleAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopSamplingIfIdle() {
+        if (samplingTask != null && trackedProcesses.isEmpty()) {
+            samplingTask.cancel(false);
+            samplingTask = null;
+        }
+    }
+
+    private void sampleAll() {
+        trackedProcesses.forEach(this::sample);
+    }
+
+    private void sample(ProcessHandle root, ResourceUsage usage) {
+        final List<ProcessHandle> processes = Stream.concat(Stream.of(root), root.descendants())
+                .filter(ProcessHandle::isAlive)
+                .collect(Collectors.toList());
+
+        final Map<Long, ResourceUsage.ProcessSample> samples = new HashMap<>();
+        for (ProcessHandle process : processes) {
+            final long cpuNanos = process.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+            final Map<String, Long> status = readProcFile(process.pid(), "status");
+            final Map<String, Long> io = readProcFile(process.pid(), "io");
+
+            samples.put(process.pid(), new ResourceUsage.ProcessSample(
+                    cpuNanos,
+                    status.getOrDefault("VmRSS", 0L) * KILOBYTE,
+                    status.getOrDefault("VmHWM", 0L) * KILOBYTE,
+                    io.getOrDefault("read_bytes", 0L),
+                    io.getOrDefault("write_bytes", 0L)
+            ));
+        }
+
+        if (trackedProcesses.containsKey(root)) {
+            usage.update(samples);
+        }
+    }
+
+    /**
+     * Reads "key: value [unit]" lines, ignoring everything that is not a number.
+     */
+    private static Map<String, Long> readProcFile(long pid, String file) {
+        final Map<String, Long> values = new HashMap<>();
+        final Path path = PROC.resolve(Long.toString(pid)).resolve(file);
+        if (!Files.isReadable(path)) {
+            return values;
+        }
+
+        try {
+            for (String line : Files.readAllLines(path)) {
+                final int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+
+                final String[] value = line.substring(colon + 1).trim().split("\\s+");
+                try {
+                    values.put(line.substring(0, colon), Long.parseLong(value[0]));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException ignored) {
+            // the process exited while it was sampled
+        }
+
+        return values;
+    }
+}
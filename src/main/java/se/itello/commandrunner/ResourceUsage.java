@@ -0,0 +1,115 @@
+package se.itello.commandrunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resources used by a command and all of its descendant processes, as last seen by the {@link ResourceSampler}.
+ */
+public class ResourceUsage {
+    private final Map<Long, ProcessSample> processSamples;
+
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile long cpuNanos;
+    private volatile long rssBytes;
+    private volatile long peakRssBytes;
+    private volatile long readBytes;
+    private volatile long writtenBytes;
+
+    ResourceUsage() {
+        processSamples = new HashMap<>();
+    }
+
+    void started() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    void finished() {
+        endNanos = System.nanoTime();
+        rssBytes = 0;
+    }
+
+    /**
+     * Called from the sampler thread only. Processes that have exited keep counting with their last sample.
+     */
+    void update(Map<Long, ProcessSample> samples) {
+        processSamples.putAll(samples);
+
+        long cpu = 0;
+        long read = 0;
+        long written = 0;
+        long peak = peakRssBytes;
+        for (ProcessSample sample : processSamples.values()) {
+            cpu += sample.cpuNanos;
+            read += sample.readBytes;
+            written += sample.writtenBytes;
+            peak = Math.max(peak, sample.peakRssBytes);
+        }
+
+        long rss = 0;
+        for (ProcessSample sample : samples.values()) {
+            rss += sample.rssBytes;
+        }
+
+        cpuNanos = cpu;
+        readBytes = read;
+        writtenBytes = written;
+        rssBytes = rss;
+        peakRssBytes = Math.max(peak, rss);
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getRssBytes() {
+        return rssBytes;
+    }
+
+    public long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    public long getWallNanos() {
+        if (startNanos == 0) {
+            return 0;
+        }
+
+        return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    public String summary() {
+        return String.format("cpu %.1f s, wall %.1f s, peak rss %s, io %s/%s",
+                cpuNanos / 1e9,
+                getWallNanos() / 1e9,
+                SizeFormatter.BYTES_THREE_SIGNIFICANT.format(peakRssBytes),
+                SizeFormatter.BYTES_THREE_SIGNIFICANT.format(readBytes),
+                SizeFormatter.BYTES_THREE_SIGNIFICANT.format(writtenBytes));
+    }
+
+    static class ProcessSample {
+        final long cpuNanos;
+        final long rssBytes;
+        final long peakRssBytes;
+        final long readBytes;
+        final long writtenBytes;
+
+        ProcessSample(long cpuNanos, long rssBytes, long peakRssBytes, long readBytes, long writtenBytes) {
+            this.cpuNanos = cpuNanos;
+            this.rssBytes = rssBytes;
+            this.peakRssBytes = peakRssBytes;
+            this.readBytes = readBytes;
+            this.writtenBytes = writtenBytes;
+        }
+    }
+}
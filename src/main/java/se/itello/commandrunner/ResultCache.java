@@ -0,0 +1,473 @@
+package se.itello.commandrunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Results of successful runs of commands with declared inputs, stored in one compressed index file next to the
+ * saved commands. A result is reused when the command line, working directory, environment and inputs are unchanged.
+ * Inputs are compared by size and modification time, and by content hash when those can not tell.
+ * <p>
+ * Files are hashed without holding the cache, so that commands with inputs do not wait for each other, and the index
+ * file is written on a background thread, once for any number of changes made while it waited.
+ */
+class ResultCache {
+    private static final File CACHE_FILE = new File(ProgramState.SAVE_FILE.getPath() + ".results");
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ENTRIES = 1000;
+    private static final int MAX_RECORDED_LINES = 1024;
+    /**
+     * Files modified this close to when a result was recorded may have changed again within the same timestamp.
+     */
+    private static final long RACY_MILLIS = 2000;
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private static final ResultCache instance = new ResultCache();
+
+    private final ExecutorService writer;
+    private final AtomicBoolean saveScheduled;
+    /**
+     * Held while taking what to save and writing it, so that an older state is never written over a newer one.
+     */
+    private final Object saveLock;
+    private Map<String, Entry> entries;
+
+    private ResultCache() {
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "result-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        saveScheduled = new AtomicBoolean();
+        saveLock = new Object();
+        // headless runs exit as soon as their commands are done, which may be before the writer got to it
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (saveScheduled.get()) {
+                saveNow();
+            }
+        }, "result-cache-flush"));
+    }
+
+    static ResultCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param inputs comma separated globs, relative to the working directory unless absolute
+     */
+    Fingerprint fingerprint(List<String> arguments, Path workingDirectory, String inputs) throws IOException {
+        final long takenAt = System.currentTimeMillis();
+        final MessageDigest digest = sha256();
+        update(digest, workingDirectory.toString());
+        arguments.forEach(argument -> update(digest, argument));
+        update(digest, inputs);
+        new TreeMap<>(System.getenv()).forEach((name, value) -> {
+            update(digest, name);
+            update(digest, value);
+        });
+
+        final Map<String, FileState> files = new TreeMap<>();
+        for (String glob : inputs.split(",")) {
+            if (!glob.isBlank()) {
+                collectFiles(workingDirectory, glob.trim(), files);
+            }
+        }
+
+        final String key = workingDirectory + "\u0000" + String.join("\u0000", arguments);
+        return new Fingerprint(key, digest.digest(), takenAt, files);
+    }
+
+    Optional<List<RecordedLine>> lookup(Fingerprint fingerprint) {
+        final Entry entry;
+        synchronized (this) {
+            entry = getEntries().get(fingerprint.key);
+        }
+        if (entry == null
+                || !Arrays.equals(entry.commandHash, fingerprint.commandHash)
+                || !entry.files.keySet().equals(fingerprint.files.keySet())) {
+            return Optional.empty();
+        }
+
+        final Map<String, FileState> files = new TreeMap<>();
+        boolean hashed = false;
+        for (FileState file : fingerprint.files.values()) {
+            final FileState recorded = entry.files.get(file.path);
+            if (recorded.size != file.size) {
+                return Optional.empty();
+            }
+            if (recorded.modified != file.modified || isRacy(recorded, entry)) {
+                if (!Arrays.equals(recorded.hash, hash(file))) {
+                    return Optional.empty();
+                }
+                hashed = true;
+            }
+            files.put(file.path, new FileState(file.path, file.size, file.modified, recorded.hash));
+        }
+
+        if (hashed) {
+            // the files are as recorded as of when the fingerprint was taken, so they need not be hashed again
+            synchronized (this) {
+                if (entries.get(fingerprint.key) == entry) {
+                    entries.put(fingerprint.key, new Entry(entry.commandHash, fingerprint.takenAt, files, entry.output));
+                }
+            }
+            scheduleSave();
+        }
+
+        return Optional.of(entry.output);
+    }
+
+    void record(Fingerprint fingerprint, List<RecordedLine> output) {
+        final Entry previous;
+        synchronized (this) {
+            previous = getEntries().get(fingerprint.key);
+        }
+        final Map<String, FileState> files = new TreeMap<>();
+        for (FileState file : fingerprint.files.values()) {
+            if (!isUnchanged(file)) {
+                // the command changed its own inputs, so the result would never be reused correctly
+                return;
+            }
+
+            final FileState recorded = previous == null ? null : previous.files.get(file.path);
+            final byte[] hash = recorded != null && recorded.size == file.size && recorded.modified == file.modified && !isRacy(recorded, previous)
+                    ? recorded.hash
+                    : hash(file);
+            if (hash == null) {
+                return;
+            }
+            files.put(file.path, new FileState(file.path, file.size, file.modified, hash));
+        }
+
+        final int firstLine = Math.max(0, output.size() - MAX_RECORDED_LINES);
+        final Entry entry = new Entry(fingerprint.commandHash, System.currentTimeMillis(), files,
+                new ArrayList<>(output.subList(firstLine, output.size())));
+        synchronized (this) {
+            entries.remove(fingerprint.key);
+            entries.put(fingerprint.key, entry);
+            while (entries.size() > MAX_ENTRIES) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+        scheduleSave();
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            writer.execute(this::saveNow);
+        }
+    }
+
+    /**
+     * Writes the entries as they are now. Entries are never changed, only replaced, so they are saved without
+     * holding the cache.
+     */
+    private void saveNow() {
+        synchronized (saveLock) {
+            final Map<String, Entry> entries;
+            synchronized (this) {
+                // changes from now on schedule another save
+                saveScheduled.set(false);
+                entries = new LinkedHashMap<>(this.entries);
+            }
+
+            try {
+                save(entries);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static boolean isUnchanged(FileState file) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(Paths.get(file.path), BasicFileAttributes.class);
+            return attributes.size() == file.size && attributes.lastModifiedTime().toMillis() == file.modified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isRacy(FileState file, Entry entry) {
+        return file.modified >= entry.recordedAt - RACY_MILLIS;
+    }
+
+    private static void collectFiles(Path workingDirectory, String glob, Map<String, FileState> files) throws IOException {
+        final Path globPath = Paths.get(staticPrefix(glob));
+        final boolean absolute = globPath.isAbsolute();
+        final Path start = workingDirectory.resolve(globPath);
+        if (!Files.exists(start)) {
+            return;
+        }
+
+        final PathMatcher matcher = start.getFileSystem().getPathMatcher("glob:" + glob);
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), searchDepth(glob), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                final Path matched = absolute ? file : workingDirectory.relativize(file);
+                if (attributes.isRegularFile() && matcher.matches(matched)) {
+                    final String path = file.toString();
+                    files.put(path, new FileState(path, attributes.size(), attributes.lastModifiedTime().toMillis(), null));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * @return how many directories below the static prefix the glob can match, which is unlimited only with **
+     */
+    private static int searchDepth(String glob) {
+        if (glob.contains("**")) {
+            return Integer.MAX_VALUE;
+        }
+
+        final String rest = glob.substring(staticPrefix(glob).length());
+        return (int) rest.chars().filter(c -> c == '/' || c == File.separatorChar).count() + 1;
+    }
+
+    /**
+     * @return the leading directories of the glob that contain no glob characters, where the search starts
+     */
+    private static String staticPrefix(String glob) {
+        int end = glob.length();
+        for (int i = 0; i < glob.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(glob.charAt(i)) >= 0) {
+                end = i;
+                break;
+            }
+        }
+        if (end == glob.length()) {
+            return glob;
+        }
+
+        final int separator = Math.max(glob.lastIndexOf('/', end), glob.lastIndexOf(File.separatorChar, end));
+        return separator < 0 ? "" : glob.substring(0, separator + 1);
+    }
+
+    private static byte[] hash(FileState file) {
+        final MessageDigest digest = sha256();
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream inputStream = Files.newInputStream(Paths.get(file.path))) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<>();
+            if (CACHE_FILE.exists()) {
+                try {
+                    load();
+                } catch (IOException e) {
+                    // an unreadable cache is only a cache miss
+                    entries.clear();
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(CACHE_FILE.toPath()))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+
+            final int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                final String key = in.readUTF();
+                final byte[] commandHash = readBytes(in);
+                final long recordedAt = in.readLong();
+
+                final int fileCount = in.readInt();
+                final Map<String, FileState> files = new TreeMap<>();
+                for (int j = 0; j < fileCount; j++) {
+                    final FileState file = new FileState(in.readUTF(), in.readLong(), in.readLong(), readBytes(in));
+                    files.put(file.path, file);
+                }
+
+                final int lineCount = in.readInt();
+                final List<RecordedLine> output = new ArrayList<>(lineCount);
+                for (int j = 0; j < lineCount; j++) {
+                    final OutputSource source = in.readBoolean() ? OutputSource.STDERR : OutputSource.STDOUT;
+                    output.add(new RecordedLine(source, new String(readBytes(in), StandardCharsets.UTF_8)));
+                }
+
+                entries.put(key, new Entry(commandHash, recordedAt, files, output));
+            }
+        }
+    }
+
+    private static void save(Map<String, Entry> entries) throws IOException {
+        final File temporaryFile = new File(CACHE_FILE.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(temporaryFile.toPath()))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> keyAndEntry : entries.entrySet()) {
+                final Entry entry = keyAndEntry.getValue();
+                out.writeUTF(keyAndEntry.getKey());
+                writeBytes(out, entry.commandHash);
+                out.writeLong(entry.recordedAt);
+
+                out.writeInt(entry.files.size());
+                for (FileState file : entry.files.values()) {
+                    out.writeUTF(file.path);
+                    out.writeLong(file.size);
+                    out.writeLong(file.modified);
+                    writeBytes(out, file.hash);
+                }
+
+                out.writeInt(entry.output.size());
+                for (RecordedLine line : entry.output) {
+                    out.writeBoolean(line.source == OutputSource.STDERR);
+                    // writeUTF is limited to 64 KB, output lines are not
+                    writeBytes(out, line.text.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), CACHE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static class Fingerprint {
+        private final String key;
+        private final byte[] commandHash;
+        private final long takenAt;
+        private final Map<String, FileState> files;
+
+        private Fingerprint(String key, byte[] commandHash, long takenAt, Map<String, FileState> files) {
+            this.key = key;
+            this.commandHash = commandHash;
+            this.takenAt = takenAt;
+            this.files = files;
+        }
+    }
+
+    /**
+     * Keeps the last lines a command writes, for {@link #record(Fingerprint, List)}.
+     */
+    static class OutputRecorder {
+        private final Deque<RecordedLine> lines = new ArrayDeque<>();
+
+        synchronized void add(OutputBatch batch) {
+            for (String line : batch.getLines()) {
+                lines.addLast(new RecordedLine(batch.getSource(), line));
+                if (lines.size() > MAX_RECORDED_LINES) {
+                    lines.removeFirst();
+                }
+            }
+        }
+
+        synchronized List<RecordedLine> getLines() {
+            return new ArrayList<>(lines);
+        }
+    }
+
+    static class RecordedLine {
+        final OutputSource source;
+        final String text;
+
+        RecordedLine(OutputSource source, String text) {
+            this.source = source;
+            this.text = text;
+        }
+    }
+
+    private static class FileState {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final byte[] hash;
+
+        private FileState(String path, long size, long modified, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    private static class Entry {
+        private final byte[] commandHash;
+        private final long recordedAt;
+        private final Map<String, FileState> files;
+        private final List<RecordedLine> output;
+
+        private Entry(byte[] commandHash, long recordedAt, Map<String, FileState> files, List<RecordedLine> output) {
+            this.commandHash = commandHash;
+            this.recordedAt = recordedAt;
+            this.files = files;
+            this.output = output;
+        }
+    }
+}
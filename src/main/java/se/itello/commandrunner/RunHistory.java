@@ -0,0 +1,203 @@
+package se.itello.commandrunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every run of every command, appended as a fixed size binary record to a file next to the saved commands, so that
+ * durations and failures survive restarts. Runs are keyed by a hash of the comment, command line and directory of
+ * the command, which is the same for the command in the table and its copies in queues.
+ * <p>
+ * Statistics are aggregated in one pass over the records, each kept in constant space, and only the records added
+ * since they were last aggregated are read, also those added by other instances, e.g. from the command line.
+ */
+public class RunHistory {
+    private static final File HISTORY_FILE = new File(ProgramState.SAVE_FILE.getPath() + ".history");
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4;
+    /**
+     * Command id, start as epoch millis, duration in millis, exit code, status and flags.
+     */
+    private static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 1 + 1;
+    private static final int READ_BUFFER_RECORDS = 4096;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_FAIL = 1;
+    static final byte STATUS_KILLED = 2;
+    static final byte FLAG_CACHED = 1;
+    static final byte FLAG_TIMED_OUT = 2;
+    /**
+     * The command did not run to an exit, e.g. because it could not be started.
+     */
+    static final byte FLAG_NO_EXIT = 4;
+
+    private static final RunHistory instance = new RunHistory();
+
+    private final Map<Long, RunStatistics> statistics;
+    private long aggregatedUpTo;
+
+    private RunHistory() {
+        statistics = new HashMap<>();
+        aggregatedUpTo = HEADER_SIZE;
+    }
+
+    public static RunHistory getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the id runs of the command are recorded with
+     */
+    static long identify(Command command) {
+        final MessageDigest digest = sha256();
+        for (String part : new String[]{command.getCommandComment(), command.getCommandNameAndArguments(), command.getCommandDirectory()}) {
+            digest.update((part == null ? "" : part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param durationMillis how long the command ran
+     * @param status         one of the STATUS_ constants
+     * @param flags          the FLAG_ constants that apply
+     */
+    synchronized void record(Command command, long startedAt, long durationMillis, int exitCode, byte status, byte flags) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE)
+                .putLong(identify(command))
+                .putLong(startedAt)
+                .putInt((int) Math.min(Integer.MAX_VALUE, durationMillis))
+                .putInt(exitCode)
+                .put(status)
+                .put(flags);
+        record.flip();
+
+        try (FileChannel channel = FileChannel.open(HISTORY_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (channel.size() == 0) {
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, FORMAT_VERSION));
+            }
+            final boolean aggregatedUpToEnd = channel.size() == aggregatedUpTo;
+            channel.write(record);
+            if (aggregatedUpToEnd) {
+                // keeps the statistics current without reading back what was just written
+                statistics.computeIfAbsent(record.getLong(0), id -> new RunStatistics())
+                        .add(startedAt, record.getInt(16), exitCode, status, flags);
+                aggregatedUpTo += RECORD_SIZE;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the statistics of each of the commands, which are empty for commands that never ran
+     */
+    public synchronized List<RunStatistics> getStatistics(List<Command> commands) {
+        aggregate();
+
+        final List<RunStatistics> commandStatistics = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            final RunStatistics runStatistics = statistics.get(identify(command));
+            commandStatistics.add(runStatistics == null ? new RunStatistics() : runStatistics.copy());
+        }
+
+        return commandStatistics;
+    }
+
+    /**
+     * @return the median duration in milliseconds of each of the commands that has run before
+     */
+    public synchronized Map<Command, Long> getExpectedDurations(Collection<Command> commands) {
+        aggregate();
+
+        final Map<Command, Long> expectedDurations = new HashMap<>();
+        for (Command command : commands) {
+            final RunStatistics runStatistics = statistics.get(identify(command));
+            final long medianDuration = runStatistics == null ? -1 : runStatistics.getMedianDuration();
+            if (medianDuration >= 0) {
+                expectedDurations.put(command, medianDuration);
+            }
+        }
+
+        return expectedDurations;
+    }
+
+    /**
+     * Reads the records added since the last call, so that the next call asking for statistics returns at once.
+     */
+    public synchronized void aggregate() {
+        try {
+            aggregateNewRecords();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void aggregateNewRecords() throws IOException {
+        if (!HISTORY_FILE.exists()) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(HISTORY_FILE.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < aggregatedUpTo) {
+                // the file was removed or replaced, so start over
+                statistics.clear();
+                aggregatedUpTo = HEADER_SIZE;
+            }
+            if (aggregatedUpTo == HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != FORMAT_VERSION) {
+                    return;
+                }
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * READ_BUFFER_RECORDS);
+            // a record being appended by another instance may be incomplete, it is read next time
+            final long end = aggregatedUpTo + (size - aggregatedUpTo) / RECORD_SIZE * RECORD_SIZE;
+            while (aggregatedUpTo < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - aggregatedUpTo));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, aggregatedUpTo + buffer.position()) < 0) {
+                        return;
+                    }
+                }
+                buffer.flip();
+
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    final long commandId = buffer.getLong();
+                    final long startedAt = buffer.getLong();
+                    final int durationMillis = buffer.getInt();
+                    final int exitCode = buffer.getInt();
+                    final byte status = buffer.get();
+                    final byte flags = buffer.get();
+                    statistics.computeIfAbsent(commandId, id -> new RunStatistics())
+                            .add(startedAt, durationMillis, exitCode, status, flags);
+                }
+                aggregatedUpTo += buffer.limit();
+            }
+        }
+    }
+}
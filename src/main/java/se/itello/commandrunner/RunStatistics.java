@@ -0,0 +1,179 @@
+package se.itello.commandrunner;
+
+/**
+ * The recorded runs of a command, see {@link RunHistory}.
+ * Durations are counted in a histogram with eight buckets per power of two, so percentiles are within about 6 %
+ * of the exact ones no matter how many runs there are. Only runs that ran to an exit count towards durations, not
+ * runs replayed from the cache, killed or that failed before they got to run, which would make a command look
+ * shorter than it is.
+ */
+public class RunStatistics {
+    private static final int EXACT_BELOW = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BUCKETS = EXACT_BELOW + (31 - SUB_BUCKET_BITS) * EXACT_BELOW;
+    private static final int TREND_RUNS = 10;
+
+    private int runs;
+    private int failures;
+    private int cachedRuns;
+    private long timedRuns;
+    private long[] histogram;
+    private final long[] recentDurations;
+    private int recentCount;
+    private long lastRunAt;
+    private byte lastStatus;
+
+    RunStatistics() {
+        histogram = new long[BUCKETS];
+        recentDurations = new long[2 * TREND_RUNS];
+    }
+
+    void add(long startedAt, int durationMillis, int exitCode, byte status, byte flags) {
+        runs++;
+        if (status != RunHistory.STATUS_OK) {
+            failures++;
+        }
+        if (startedAt >= lastRunAt) {
+            lastRunAt = startedAt;
+            lastStatus = status;
+        }
+        if ((flags & RunHistory.FLAG_CACHED) != 0) {
+            cachedRuns++;
+            return;
+        }
+        if (status == RunHistory.STATUS_KILLED || (flags & RunHistory.FLAG_NO_EXIT) != 0) {
+            return;
+        }
+
+        histogram[bucket(Math.max(0, durationMillis))]++;
+        timedRuns++;
+        recentDurations[recentCount++ % recentDurations.length] = durationMillis;
+    }
+
+    private static int bucket(int value) {
+        if (value < EXACT_BELOW) {
+            return value;
+        }
+        final int exponent = 31 - Integer.numberOfLeadingZeros(value);
+        final int subBucket = (value >>> (exponent - SUB_BUCKET_BITS)) & (EXACT_BELOW - 1);
+
+        return EXACT_BELOW + (exponent - SUB_BUCKET_BITS) * EXACT_BELOW + subBucket;
+    }
+
+    /**
+     * @return the middle of the values counted in the bucket
+     */
+    private static long bucketValue(int bucket) {
+        if (bucket < EXACT_BELOW) {
+            return bucket;
+        }
+        final int shift = (bucket - EXACT_BELOW) / EXACT_BELOW;
+        final long lowest = (long) (EXACT_BELOW + bucket % EXACT_BELOW) << shift;
+
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+
+    RunStatistics copy() {
+        final RunStatistics copy = new RunStatistics();
+        copy.runs = runs;
+        copy.failures = failures;
+        copy.cachedRuns = cachedRuns;
+        copy.timedRuns = timedRuns;
+        copy.histogram = histogram.clone();
+        System.arraycopy(recentDurations, 0, copy.recentDurations, 0, recentDurations.length);
+        copy.recentCount = recentCount;
+        copy.lastRunAt = lastRunAt;
+        copy.lastStatus = lastStatus;
+
+        return copy;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public int getCachedRuns() {
+        return cachedRuns;
+    }
+
+    /**
+     * @return the share of the runs that failed or were killed, between 0 and 1
+     */
+    public double getFailureRate() {
+        return runs == 0 ? 0 : (double) failures / runs;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the duration in milliseconds that the given percentage of the runs were at most, or -1 if none ran to an exit
+     */
+    public long getDurationPercentile(double percentile) {
+        if (timedRuns == 0) {
+            return -1;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(timedRuns * percentile / 100));
+        long counted = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            counted += histogram[bucket];
+            if (counted >= rank) {
+                return bucketValue(bucket);
+            }
+        }
+
+        return bucketValue(histogram.length - 1);
+    }
+
+    public long getMedianDuration() {
+        return getDurationPercentile(50);
+    }
+
+    public long getP95Duration() {
+        return getDurationPercentile(95);
+    }
+
+    /**
+     * @return how much longer, as a fraction, the last ten runs took on average than the ten before them, e.g. 0.2
+     * when they got 20 % slower, or NaN if there have not been twenty runs
+     */
+    public double getTrend() {
+        if (recentCount < recentDurations.length) {
+            return Double.NaN;
+        }
+        long previous = 0;
+        long latest = 0;
+        for (int i = 0; i < TREND_RUNS; i++) {
+            previous += recentDurations[(recentCount + i) % recentDurations.length];
+            latest += recentDurations[(recentCount + TREND_RUNS + i) % recentDurations.length];
+        }
+
+        return previous == 0 ? (latest == 0 ? 0 : Double.POSITIVE_INFINITY) : (double) (latest - previous) / previous;
+    }
+
+    /**
+     * @return when the last run started, as epoch millis, or 0 if it never ran
+     */
+    public long getLastRunAt() {
+        return lastRunAt;
+    }
+
+    /**
+     * @return the status of the last run, or null if it never ran
+     */
+    public CommandStatus getLastStatus() {
+        if (runs == 0) {
+            return null;
+        }
+        switch (lastStatus) {
+            case RunHistory.STATUS_OK:
+                return CommandStatus.OK;
+            case RunHistory.STATUS_FAIL:
+                return CommandStatus.FAIL;
+            default:
+                return CommandStatus.IDLE;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package se.itello.commandrunner;
+
+import java.util.List;
+
+/**
+ * A line of output that contains what was searched for, with a few lines around it.
+ */
+public class SearchHit {
+    private final Command command;
+    private final int lineNumber;
+    private final String line;
+    private final List<String> contextBefore;
+    private final List<String> contextAfter;
+
+    SearchHit(Command command, int lineNumber, String line, List<String> contextBefore, List<String> contextAfter) {
+        this.command = command;
+        this.lineNumber = lineNumber;
+        this.line = line;
+        this.contextBefore = contextBefore;
+        this.contextAfter = contextAfter;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the number of the line among all output lines of the command, counting from 0
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public List<String> getContextBefore() {
+        return contextBefore;
+    }
+
+    public List<String> getContextAfter() {
+        return contextAfter;
+    }
+}
@@ -0,0 +1,148 @@
+package se.itello.commandrunner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A long-lived shell that runs one command at a time. Every command is followed by a sentinel line, unique to the
+ * session, on stdout carrying the exit code and on stderr, so that the end of its output can be recognized without
+ * the shell exiting. Commands run in a subshell with stdin from /dev/null, so they can not change the session
+ * or read the script meant for the shell.
+ */
+class ShellSession {
+    private static final File SHELL = new File("/bin/sh");
+
+    private final Process shell;
+    private final Charset charset;
+    private final BufferedWriter script;
+    private final BufferedReader standardOutput;
+    private final BufferedReader errorOutput;
+    private final String sentinel;
+
+    private ShellSession(Process shell, Charset charset) {
+        this.shell = shell;
+        this.charset = charset;
+        script = new BufferedWriter(new OutputStreamWriter(shell.getOutputStream(), charset));
+        standardOutput = new BufferedReader(new InputStreamReader(shell.getInputStream(), charset));
+        errorOutput = new BufferedReader(new InputStreamReader(shell.getErrorStream(), charset));
+        sentinel = "__command_runner_" + UUID.randomUUID().toString().replace("-", "") + "__";
+    }
+
+    static boolean isSupported() {
+        return SHELL.canExecute();
+    }
+
+    static ShellSession start(Charset charset) throws IOException {
+        return new ShellSession(new ProcessBuilder(SHELL.getPath()).start(), charset);
+    }
+
+    Process getProcess() {
+        return shell;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    boolean isAlive() {
+        return shell.isAlive();
+    }
+
+    /**
+     * @return the exit code of the command
+     * @throws IOException if the shell died, after which the session can not be used again
+     */
+    int run(List<String> arguments, File directory, Consumer<OutputBatch> outputConsumer) throws Exception {
+        final StringBuilder command = new StringBuilder("(");
+        if (directory != null) {
+            command.append("cd ").append(quote(directory.getAbsolutePath())).append(" && ");
+        }
+        command.append("exec ")
+                .append(arguments.stream().map(ShellSession::quote).collect(Collectors.joining(" ")))
+                .append(") </dev/null\n")
+                .append("printf '\\n%s %d\\n' ").append(sentinel).append(" $?\n")
+                .append("printf '\\n%s\\n' ").append(sentinel).append(" >&2\n");
+
+        script.write(command.toString());
+        script.flush();
+
+        final Future<String> errorSentinel = CommandExecutor.getInstance().executeForRunningCommand(
+                () -> readUntilSentinel(errorOutput, OutputSource.STDERR, outputConsumer)
+        );
+        final String exitCode = readUntilSentinel(standardOutput, OutputSource.STDOUT, outputConsumer);
+        errorSentinel.get();
+
+        return Integer.parseInt(exitCode.trim());
+    }
+
+    /**
+     * @return the processes of the command that is running, but not the shell itself
+     */
+    Stream<ProcessHandle> runningProcesses() {
+        return shell.descendants();
+    }
+
+    void close() {
+        shell.destroy();
+    }
+
+    /**
+     * Reads output lines until the sentinel. Empty lines are held back, since the sentinel is preceded by a line
+     * break to make sure it starts a line of its own, which is one empty line too many if the output ended with one.
+     *
+     * @return what follows the sentinel on its line
+     */
+    private String readUntilSentinel(BufferedReader reader, OutputSource source, Consumer<OutputBatch> outputConsumer) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        int heldEmptyLines = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(sentinel)) {
+                for (int i = 1; i < heldEmptyLines; i++) {
+                    lines.add("");
+                }
+                emit(lines, source, outputConsumer);
+                return line.substring(sentinel.length());
+            }
+
+            if (line.isEmpty()) {
+                heldEmptyLines++;
+            } else {
+                for (; heldEmptyLines > 0; heldEmptyLines--) {
+                    lines.add("");
+                }
+                lines.add(line);
+            }
+
+            if (!reader.ready()) {
+                emit(lines, source, outputConsumer);
+            }
+        }
+
+        throw new IOException("shell session ended unexpectedly");
+    }
+
+    private static void emit(List<String> lines, OutputSource source, Consumer<OutputBatch> outputConsumer) {
+        if (!lines.isEmpty()) {
+            outputConsumer.accept(new OutputBatch(new ArrayList<>(lines), source, System.nanoTime()));
+            lines.clear();
+        }
+    }
+
+    private static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+}
@@ -0,0 +1,76 @@
+package se.itello.commandrunner;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Idle {@link ShellSession}s of each group, so that the commands of a group can reuse a warm shell. Sessions that
+ * stay idle for a while are closed.
+ */
+class ShellSessionPool {
+    private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final ShellSessionPool instance = new ShellSessionPool();
+
+    private final Map<Object, Deque<ShellSession>> idleSessions;
+    private final Map<ShellSession, Long> idleSince;
+
+    private ShellSessionPool() {
+        idleSessions = new HashMap<>();
+        idleSince = new HashMap<>();
+    }
+
+    static ShellSessionPool getInstance() {
+        return instance;
+    }
+
+    ShellSession acquire(Object group, Charset charset) throws IOException {
+        synchronized (this) {
+            final Deque<ShellSession> sessions = idleSessions.get(group);
+            while (sessions != null && !sessions.isEmpty()) {
+                final ShellSession session = sessions.pollLast();
+                idleSince.remove(session);
+                if (session.isAlive() && session.getCharset().equals(charset)) {
+                    return session;
+                }
+                session.close();
+            }
+        }
+
+        return ShellSession.start(charset);
+    }
+
+    synchronized void release(Object group, ShellSession session) {
+        final Deque<ShellSession> sessions = idleSessions.computeIfAbsent(group, key -> new ArrayDeque<>());
+        if (!session.isAlive() || sessions.size() >= CommandExecutor.getInstance().getMaxConcurrentCommands()) {
+            session.close();
+            return;
+        }
+
+        sessions.addLast(session);
+        idleSince.put(session, System.nanoTime());
+        Watchdog.getInstance().schedule(IDLE_TIMEOUT, () -> closeIfIdle(group, session));
+    }
+
+    private synchronized void closeIfIdle(Object group, ShellSession session) {
+        final Long since = idleSince.get(session);
+        if (since == null || System.nanoTime() - since < IDLE_TIMEOUT.toNanos()) {
+            // in use, or released again after this check was scheduled
+            return;
+        }
+
+        final Deque<ShellSession> sessions = idleSessions.get(group);
+        if (sessions != null && sessions.remove(session)) {
+            idleSince.remove(session);
+            session.close();
+            if (sessions.isEmpty()) {
+                idleSessions.remove(group);
+            }
+        }
+    }
+}
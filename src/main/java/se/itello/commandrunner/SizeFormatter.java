@@ -37,6 +37,12 @@ public class SizeFormatter {
                     new Format("%02.0f", 60 * 1000),
                     new Format("%06.3f", 1000)));
 
+    public static final FormatSet MILLISECONDS_SHORT = new FormatSet(
+            new Format("%.0f ms", 1, 1000),
+            new Format("%.1f s", 1000, 60),
+            new Format("%.1f min", 60 * 1000, 60),
+            new Format("%.1f h", 60 * 60 * 1000));
+
     @SuppressWarnings("unused")
     public static String formatBytes(long bytes) {
         long b = bytes + 1023;
@@ -0,0 +1,186 @@
+package se.itello.commandrunner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A string with variable references, split once into literal text and references so that it can be
+ * filled in with any number of variable maps in a single pass each.
+ * <ul>
+ * <li>{@code #name} refers to the variable with the longest name made of letters, digits and underscores.</li>
+ * <li>{@code #{name}} can be followed directly by such characters.</li>
+ * <li>{@code #{name:-default}} uses the default, which may itself contain references, if the variable is not given.</li>
+ * <li>Variable values may refer to other variables.</li>
+ * <li>References to variables that are not given, and have no default, are left as they are.</li>
+ * </ul>
+ */
+class VariableTemplate {
+    private static final char VARIABLE_SYMBOL = '#';
+    private static final String DEFAULT_SEPARATOR = ":-";
+    private static final int MAX_CACHED_TEMPLATES = 4096;
+
+    private static final Map<String, VariableTemplate> compiledTemplates = new ConcurrentHashMap<>();
+
+    private final String text;
+    private final List<Segment> segments;
+
+    private VariableTemplate(String text, List<Segment> segments) {
+        this.text = text;
+        this.segments = segments;
+    }
+
+    static VariableTemplate compile(String text) {
+        VariableTemplate template = compiledTemplates.get(text);
+        if (template == null) {
+            template = new VariableTemplate(text, parse(text));
+            if (compiledTemplates.size() >= MAX_CACHED_TEMPLATES) {
+                compiledTemplates.clear();
+            }
+            compiledTemplates.put(text, template);
+        }
+
+        return template;
+    }
+
+    /**
+     * @throws IllegalArgumentException if variables refer to each other in a cycle
+     */
+    String render(Map<String, String> variables) {
+        if (segments.isEmpty()) {
+            return text;
+        }
+
+        final StringBuilder sb = new StringBuilder(text.length() + 16);
+        render(variables, sb, new ArrayDeque<>());
+        return sb.toString();
+    }
+
+    private void render(Map<String, String> variables, StringBuilder sb, Deque<String> expanding) {
+        if (segments.isEmpty()) {
+            sb.append(text);
+            return;
+        }
+
+        for (Segment segment : segments) {
+            if (segment.name == null) {
+                sb.append(segment.text);
+                continue;
+            }
+
+            final String value = variables.get(segment.name);
+            if (value != null) {
+                if (expanding.contains(segment.name)) {
+                    throw new IllegalArgumentException("variable " + segment.name + " refers to itself via " + expanding);
+                }
+                expanding.push(segment.name);
+                compile(value).render(variables, sb, expanding);
+                expanding.pop();
+            } else if (segment.defaultValue != null) {
+                segment.defaultValue.render(variables, sb, expanding);
+            } else {
+                sb.append(segment.text);
+            }
+        }
+    }
+
+    private static List<Segment> parse(String text) {
+        final List<Segment> segments = new ArrayList<>();
+        int literalStart = 0;
+        int i = text.indexOf(VARIABLE_SYMBOL);
+        while (i >= 0 && i + 1 < text.length()) {
+            final int referenceEnd;
+            final String name;
+            VariableTemplate defaultValue = null;
+
+            if (text.charAt(i + 1) == '{') {
+                final int close = findClosingBrace(text, i + 2);
+                if (close < 0) {
+                    break;
+                }
+                final String body = text.substring(i + 2, close);
+                final int separator = body.indexOf(DEFAULT_SEPARATOR);
+                name = separator < 0 ? body : body.substring(0, separator);
+                if (separator >= 0) {
+                    defaultValue = compile(body.substring(separator + DEFAULT_SEPARATOR.length()));
+                }
+                referenceEnd = close + 1;
+            } else {
+                int end = i + 1;
+                while (end < text.length() && isNameCharacter(text.charAt(end))) {
+                    end++;
+                }
+                name = text.substring(i + 1, end);
+                referenceEnd = end;
+            }
+
+            if (name.isEmpty()) {
+                i = text.indexOf(VARIABLE_SYMBOL, i + 1);
+                continue;
+            }
+
+            if (i > literalStart) {
+                segments.add(Segment.literal(text.substring(literalStart, i)));
+            }
+            segments.add(Segment.reference(name, defaultValue, text.substring(i, referenceEnd)));
+            literalStart = referenceEnd;
+            i = text.indexOf(VARIABLE_SYMBOL, referenceEnd);
+        }
+
+        if (segments.isEmpty()) {
+            return segments;
+        }
+        if (literalStart < text.length()) {
+            segments.add(Segment.literal(text.substring(literalStart)));
+        }
+
+        return segments;
+    }
+
+    /**
+     * @return the index of the brace closing the reference, skipping nested references, or -1
+     */
+    private static int findClosingBrace(String text, int start) {
+        int depth = 0;
+        for (int i = start; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '{' && text.charAt(i - 1) == VARIABLE_SYMBOL) {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isNameCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static class Segment {
+        private final String text;
+        private final String name;
+        private final VariableTemplate defaultValue;
+
+        private Segment(String text, String name, VariableTemplate defaultValue) {
+            this.text = text;
+            this.name = name;
+            this.defaultValue = defaultValue;
+        }
+
+        static Segment literal(String text) {
+            return new Segment(text, null, null);
+        }
+
+        static Segment reference(String name, VariableTemplate defaultValue, String text) {
+            return new Segment(text, name, defaultValue);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.itello.commandrunner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class Variables {
+    /**
+     * @see VariableTemplate
+     */
+    static String replaceVariables(String value, Map<String, String> variableMap) {
+        return VariableTemplate.compile(value).render(variableMap);
+    }
+
+    static Map<String, String> getVariableMap(String variables) {
+        if (variables == null || variables.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<String, String> variableMap = new HashMap<>();
+        Arrays.stream(variables.split(","))
+                .map(entry -> entry.split("="))
+                .forEach(kvPair -> variableMap.put(kvPair[0], kvPair[1]));
+
+        return variableMap;
+    }
+}
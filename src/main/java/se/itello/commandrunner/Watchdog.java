@@ -0,0 +1,138 @@
+package se.itello.commandrunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single timer thread for command timeouts and kill escalation. Deadlines are kept in a hashed timer wheel,
+ * so scheduling and cancelling are constant time however many commands are running. Tasks run on the
+ * watchdog thread and must return quickly.
+ */
+public class Watchdog {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WHEEL_SIZE = 512;
+
+    private static final Watchdog instance = new Watchdog();
+
+    private final List<List<Task>> wheel;
+    private final ReentrantLock lock;
+    private final Condition tasksAdded;
+    private final long origin;
+    private long processedTick;
+    private int pendingTasks;
+
+    private Watchdog() {
+        wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        lock = new ReentrantLock();
+        tasksAdded = lock.newCondition();
+        origin = System.nanoTime();
+
+        final Thread thread = new Thread(this::run, "watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static Watchdog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Runs the task on the watchdog thread once the delay has passed, rounded up to the next tick.
+     */
+    public Task schedule(Duration delay, Runnable runnable) {
+        lock.lock();
+        try {
+            final long ticks = Math.max(1, (delay.toNanos() + TICK_NANOS - 1) / TICK_NANOS);
+            final Task task = new Task(runnable, currentTick() + ticks);
+            wheel.get((int) (task.deadlineTick % WHEEL_SIZE)).add(task);
+            if (pendingTasks++ == 0) {
+                processedTick = currentTick();
+                tasksAdded.signal();
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - origin) / TICK_NANOS;
+    }
+
+    private void run() {
+        while (true) {
+            final List<Task> dueTasks = new ArrayList<>();
+            lock.lock();
+            try {
+                while (pendingTasks == 0) {
+                    tasksAdded.awaitUninterruptibly();
+                }
+
+                final long now = currentTick();
+                // after a long pause every bucket is visited once, deadlines decide what is due
+                final long firstTick = Math.max(processedTick + 1, now - WHEEL_SIZE + 1);
+                for (long tick = firstTick; tick <= now; tick++) {
+                    collectDueTasks(wheel.get((int) (tick % WHEEL_SIZE)), now, dueTasks);
+                }
+                processedTick = now;
+            } finally {
+                lock.unlock();
+            }
+
+            for (Task task : dueTasks) {
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            final long nextTickNanos = origin + (processedTick + 1) * TICK_NANOS;
+            final long sleepNanos = nextTickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+    }
+
+    private void collectDueTasks(List<Task> bucket, long now, List<Task> dueTasks) {
+        final Iterator<Task> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            final Task task = iterator.next();
+            if (task.cancelled) {
+                iterator.remove();
+                pendingTasks--;
+            } else if (task.deadlineTick <= now) {
+                iterator.remove();
+                pendingTasks--;
+                dueTasks.add(task);
+            }
+        }
+    }
+
+    public static class Task {
+        private final Runnable runnable;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Task(Runnable runnable, long deadlineTick) {
+            this.runnable = runnable;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
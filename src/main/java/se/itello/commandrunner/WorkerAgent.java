@@ -0,0 +1,213 @@
+package se.itello.commandrunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the commands a runner submits over TCP, and sends their output and exit codes back, see
+ * {@link AgentProtocol} and {@link AgentDispatcher}. The commands run just like local ones, in the directory they
+ * were given, so the machine of the agent needs the same files at the same paths.
+ * Usage: {@code --agent=[host:]port [--agent-token=secret] [--agent-capacity=n] [--metrics-port=n]}, where metrics
+ * are served as by {@link MetricsServer}.
+ * <p>
+ * Without a host the agent only accepts connections from the same machine. Since anyone who can connect can run
+ * any command, an agent reachable from other machines must be started with a token.
+ */
+public class WorkerAgent {
+    private static final String AGENT = "agent";
+    private static final String AGENT_TOKEN = "agent-token";
+    private static final String AGENT_CAPACITY = "agent-capacity";
+    private static final String METRICS_PORT = "metrics-port";
+    /**
+     * How long a connection may take to authenticate before it is dropped.
+     */
+    private static final int AUTH_TIMEOUT_MILLIS = 10_000;
+
+    private final ServerSocket serverSocket;
+    private final byte[] token;
+    private final int capacity;
+    private final AtomicInteger connectionNumber;
+
+    WorkerAgent(InetSocketAddress bindAddress, String token, int capacity) throws IOException {
+        if (!bindAddress.getAddress().isLoopbackAddress() && token.isEmpty()) {
+            throw new IllegalArgumentException("an agent listening on " + bindAddress.getHostString() + " must be started with --" + AGENT_TOKEN);
+        }
+
+        serverSocket = new ServerSocket();
+        serverSocket.bind(bindAddress);
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.capacity = capacity;
+        connectionNumber = new AtomicInteger(1);
+        CommandExecutor.getInstance().setMaxConcurrentCommands(capacity);
+    }
+
+    static boolean isAgentRequested(String[] args) {
+        return HeadlessRunner.getNamedParameters(args).containsKey(AGENT);
+    }
+
+    /**
+     * Serves runners until the process is terminated.
+     *
+     * @return 1 if the agent could not be started
+     */
+    static int run(String[] args) {
+        final Map<String, String> namedParameters = HeadlessRunner.getNamedParameters(args);
+        final WorkerAgent agent;
+        try {
+            final String address = namedParameters.get(AGENT);
+            final InetSocketAddress bindAddress = address.indexOf(':') < 0
+                    ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address.trim()))
+                    : AgentConnection.parseAddress(address);
+            final String capacity = namedParameters.get(AGENT_CAPACITY);
+            agent = new WorkerAgent(bindAddress, namedParameters.getOrDefault(AGENT_TOKEN, ""),
+                    capacity == null ? CommandExecutor.DEFAULT_MAX_CONCURRENT_COMMANDS : Integer.parseInt(capacity.trim()));
+            if (namedParameters.containsKey(METRICS_PORT)) {
+                MetricsServer.getInstance().listen(Integer.parseInt(namedParameters.get(METRICS_PORT).trim()));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("could not start agent: " + e.getMessage());
+            return 1;
+        }
+
+        System.err.println("agent listening on " + agent.serverSocket.getLocalSocketAddress() + ", running up to " + agent.capacity + " commands");
+        // commands must not outlive the agent, as no one would learn that they finished
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> ProcessHandle.current().descendants().forEach(ProcessHandle::destroy)));
+        agent.serve();
+        return 0;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the agent is closed, each served by a thread of its own.
+     */
+    void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread connection = new Thread(() -> serve(socket), "agent-connection-" + connectionNumber.getAndIncrement());
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Runs what the runner submits until it disconnects, and then kills the commands it left running.
+     */
+    private void serve(Socket socket) {
+        final Map<Long, Command> commands = new ConcurrentHashMap<>();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+
+            // nothing is known about who connected until the token is checked, so little is read and not for long
+            socket.setSoTimeout(AUTH_TIMEOUT_MILLIS);
+            final AgentProtocol.Frame auth = AgentProtocol.readFrame(in, AgentProtocol.MAX_AUTH_FRAME_LENGTH);
+            if (auth.type != AgentProtocol.AUTH
+                    || !MessageDigest.isEqual(token, AgentProtocol.readString(auth.payload).getBytes(StandardCharsets.UTF_8))) {
+                System.err.println("refused connection from " + socket.getRemoteSocketAddress() + ": wrong token");
+                return;
+            }
+            socket.setSoTimeout(0);
+            AgentProtocol.writeFrame(out, AgentProtocol.HELLO, payload -> payload.writeInt(capacity));
+
+            while (true) {
+                final AgentProtocol.Frame frame = AgentProtocol.readFrame(in);
+                final long runId = frame.payload.readLong();
+                if (frame.type == AgentProtocol.SUBMIT) {
+                    final String directory = AgentProtocol.readString(frame.payload);
+                    final Command command = new Command(directory, AgentProtocol.readString(frame.payload), "");
+                    command.addCommandListener(new RunReporter(runId, out, commands));
+                    commands.put(runId, command);
+                    CommandExecutor.getInstance().execute(command, -1);
+                } else if (frame.type == AgentProtocol.KILL) {
+                    final Command command = commands.get(runId);
+                    if (command != null) {
+                        command.kill();
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // the runner disconnected
+        } catch (IOException e) {
+            System.err.println("connection from " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+        } finally {
+            commands.values().forEach(Command::kill);
+        }
+    }
+
+    /**
+     * Sends the output and exit code of a command to the runner that submitted it.
+     */
+    private static class RunReporter implements CommandListener {
+        private final long runId;
+        private final OutputStream out;
+        private final Map<Long, Command> commands;
+
+        RunReporter(long runId, OutputStream out, Map<Long, Command> commands) {
+            this.runId = runId;
+            this.out = out;
+            this.commands = commands;
+        }
+
+        @Override
+        public void commandExecuted(Command command) {
+            commands.remove(runId);
+            send(AgentProtocol.EXIT, payload -> {
+                payload.writeLong(runId);
+                payload.writeInt(command.getExitCode());
+            });
+        }
+
+        @Override
+        public void commandOutput(Command command, String text) {
+            commandOutputBatch(command, new OutputBatch(List.of(text), OutputSource.STDERR, System.nanoTime()));
+        }
+
+        @Override
+        public void commandOutputBatch(Command command, OutputBatch batch) {
+            send(AgentProtocol.OUTPUT, payload -> {
+                payload.writeLong(runId);
+                payload.writeByte(batch.getSource().ordinal());
+                payload.writeInt(batch.getLines().size());
+                for (String line : batch.getLines()) {
+                    AgentProtocol.writeString(payload, line);
+                }
+            });
+        }
+
+        private void send(byte type, AgentProtocol.PayloadWriter payloadWriter) {
+            try {
+                AgentProtocol.writeFrame(out, type, payloadWriter);
+            } catch (IOException e) {
+                // the runner is gone, and the reading side kills the commands
+            }
+        }
+    }
+}
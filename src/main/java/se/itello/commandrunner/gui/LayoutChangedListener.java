@@ -6,6 +6,10 @@ public interface LayoutChangedListener {
     void tableCommandColumnWidthChanged(int to);
     void tableDirectoryColumnWidthChanged(int to);
     void tableCommentColumnWidthChanged(int to);
+    void tableDependsOnColumnWidthChanged(int to);
+    void tableTimeoutColumnWidthChanged(int to);
+    void tableInputsColumnWidthChanged(int to);
+    void tableOutputRulesColumnWidthChanged(int to);
     void themeChanged(String theme);
     void showStatusBarChanged(boolean showStatusBar);
 }
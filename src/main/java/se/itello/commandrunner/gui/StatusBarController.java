@@ -13,10 +13,12 @@ import javafx.scene.paint.LinearGradient;
 import javafx.scene.paint.Stop;
 import javafx.scene.shape.Rectangle;
 import javafx.util.Duration;
+import se.itello.commandrunner.AgentDispatcher;
+import se.itello.commandrunner.CommandExecutor;
 import se.itello.commandrunner.SizeFormatter;
 
 public class StatusBarController {
-    public void doStuff(Rectangle memoryBar, Label memoryLabel) {
+    public void doStuff(Rectangle memoryBar, Label memoryLabel, Label executorLabel) {
         memoryBar.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
             if(event.getButton().equals(MouseButton.PRIMARY) && event.getClickCount() == 2) {
                 System.gc();
@@ -27,6 +29,9 @@ public class StatusBarController {
         Runtime runtime = Runtime.getRuntime();
         long maxMemory = runtime.maxMemory();
         memoryLabel.setTooltip(new Tooltip("memory used / total memory (max memory = " + SizeFormatter.BYTES_THREE_SIGNIFICANT.format(maxMemory) + ")"));
+        executorLabel.setTooltip(new Tooltip("running commands / max concurrent commands including those of agents, commands waiting for a free worker, connected / configured agents"));
+        CommandExecutor executor = CommandExecutor.getInstance();
+        AgentDispatcher agentDispatcher = AgentDispatcher.getInstance();
 
         Timeline updater = new Timeline(
                 new KeyFrame(Duration.seconds(1), event -> {
@@ -45,6 +50,10 @@ public class StatusBarController {
                             new Stop(1, Color.TRANSPARENT)
                     ));
                     memoryLabel.setText(SizeFormatter.BYTES_THREE_SIGNIFICANT.format(usedMemory) + "/" + SizeFormatter.BYTES_THREE_SIGNIFICANT.format(totalMemory));
+                    executorLabel.setText("running " + executor.getActiveWorkers() + "/" + executor.getWorkerCount()
+                            + ", queued " + executor.getQueueDepth()
+                            + (agentDispatcher.getConfiguredAgentCount() == 0 ? ""
+                            : ", agents " + agentDispatcher.getConnectedAgentCount() + "/" + agentDispatcher.getConfiguredAgentCount()));
                 })
         );
 
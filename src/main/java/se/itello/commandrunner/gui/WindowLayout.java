@@ -15,6 +15,10 @@ public class WindowLayout {
                     .setTableCommandColumnWidth(490)
                     .setTableDirectoryColumnWidth(250)
                     .setTableCommentColumnWidth(100)
+                    .setTableDependsOnColumnWidth(100)
+                    .setTableTimeoutColumnWidth(70)
+                    .setTableInputsColumnWidth(100)
+                    .setTableOutputRulesColumnWidth(150)
                     .setMaximized(false)
                     .setTheme(LIGHT_THEME)
                     .setShowStatusBar(true);
@@ -27,6 +31,10 @@ public class WindowLayout {
     private static final String TABLE_COMMAND_COLUMN_WIDTH = "TABLE_COMMAND_COLUMN_WIDTH";
     private static final String TABLE_COMMENT_COLUMN_WIDTH = "TABLE_COMMENT_COLUMN_WIDTH";
     private static final String TABLE_DIRECTORY_COLUMN_WIDTH = "TABLE_DIRECTORY_COLUMN_WIDTH";
+    private static final String TABLE_DEPENDS_ON_COLUMN_WIDTH = "TABLE_DEPENDS_ON_COLUMN_WIDTH";
+    private static final String TABLE_TIMEOUT_COLUMN_WIDTH = "TABLE_TIMEOUT_COLUMN_WIDTH";
+    private static final String TABLE_INPUTS_COLUMN_WIDTH = "TABLE_INPUTS_COLUMN_WIDTH";
+    private static final String TABLE_OUTPUT_RULES_COLUMN_WIDTH = "TABLE_OUTPUT_RULES_COLUMN_WIDTH";
     private static final String THEME = "THEME";
     private static final String SHOW_STATUS_BAR = "SHOW_STATUS_BAR";
 
@@ -37,6 +45,10 @@ public class WindowLayout {
     private int tableCommandColumnWidth;
     private int tableDirectoryColumnWidth;
     private int tableCommentColumnWidth;
+    private int tableDependsOnColumnWidth;
+    private int tableTimeoutColumnWidth;
+    private int tableInputsColumnWidth;
+    private int tableOutputRulesColumnWidth;
     private boolean isMaximized;
     private String theme;
     private boolean showStatusBar;
@@ -54,7 +66,19 @@ public class WindowLayout {
                 .setTableCommentColumnWidth(jsonObject.getInt(TABLE_COMMENT_COLUMN_WIDTH))
                 .setMaximized(jsonObject.getBoolean(IS_MAXIMIZED))
                 .setTheme(jsonObject.getString(THEME))
-                .setShowStatusBar(jsonObject.getBoolean(SHOW_STATUS_BAR));
+                .setShowStatusBar(jsonObject.getBoolean(SHOW_STATUS_BAR))
+                .setTableDependsOnColumnWidth(jsonObject.has(TABLE_DEPENDS_ON_COLUMN_WIDTH)
+                        ? jsonObject.getInt(TABLE_DEPENDS_ON_COLUMN_WIDTH)
+                        : 100)
+                .setTableTimeoutColumnWidth(jsonObject.has(TABLE_TIMEOUT_COLUMN_WIDTH)
+                        ? jsonObject.getInt(TABLE_TIMEOUT_COLUMN_WIDTH)
+                        : 70)
+                .setTableInputsColumnWidth(jsonObject.has(TABLE_INPUTS_COLUMN_WIDTH)
+                        ? jsonObject.getInt(TABLE_INPUTS_COLUMN_WIDTH)
+                        : 100)
+                .setTableOutputRulesColumnWidth(jsonObject.has(TABLE_OUTPUT_RULES_COLUMN_WIDTH)
+                        ? jsonObject.getInt(TABLE_OUTPUT_RULES_COLUMN_WIDTH)
+                        : 150);
     }
 
     public WindowLayout setWindowWidth(int windowWidth) {
@@ -92,6 +116,26 @@ public class WindowLayout {
         return this;
     }
 
+    public WindowLayout setTableDependsOnColumnWidth(int tableDependsOnColumnWidth) {
+        this.tableDependsOnColumnWidth = tableDependsOnColumnWidth;
+        return this;
+    }
+
+    public WindowLayout setTableTimeoutColumnWidth(int tableTimeoutColumnWidth) {
+        this.tableTimeoutColumnWidth = tableTimeoutColumnWidth;
+        return this;
+    }
+
+    public WindowLayout setTableInputsColumnWidth(int tableInputsColumnWidth) {
+        this.tableInputsColumnWidth = tableInputsColumnWidth;
+        return this;
+    }
+
+    public WindowLayout setTableOutputRulesColumnWidth(int tableOutputRulesColumnWidth) {
+        this.tableOutputRulesColumnWidth = tableOutputRulesColumnWidth;
+        return this;
+    }
+
     public WindowLayout setMaximized(boolean maximized) {
         isMaximized = maximized;
         return this;
@@ -135,6 +179,22 @@ public class WindowLayout {
         return tableCommentColumnWidth;
     }
 
+    public int getTableDependsOnColumnWidth() {
+        return tableDependsOnColumnWidth;
+    }
+
+    public int getTableTimeoutColumnWidth() {
+        return tableTimeoutColumnWidth;
+    }
+
+    public int getTableInputsColumnWidth() {
+        return tableInputsColumnWidth;
+    }
+
+    public int getTableOutputRulesColumnWidth() {
+        return tableOutputRulesColumnWidth;
+    }
+
     public boolean isMaximized() {
         return isMaximized;
     }
@@ -156,6 +216,10 @@ public class WindowLayout {
                 .put(TABLE_COMMAND_COLUMN_WIDTH, tableCommandColumnWidth)
                 .put(TABLE_DIRECTORY_COLUMN_WIDTH, tableDirectoryColumnWidth)
                 .put(TABLE_COMMENT_COLUMN_WIDTH, tableCommentColumnWidth)
+                .put(TABLE_DEPENDS_ON_COLUMN_WIDTH, tableDependsOnColumnWidth)
+                .put(TABLE_TIMEOUT_COLUMN_WIDTH, tableTimeoutColumnWidth)
+                .put(TABLE_INPUTS_COLUMN_WIDTH, tableInputsColumnWidth)
+                .put(TABLE_OUTPUT_RULES_COLUMN_WIDTH, tableOutputRulesColumnWidth)
                 .put(IS_MAXIMIZED, isMaximized)
                 .put(THEME, theme)
                 .put(SHOW_STATUS_BAR, showStatusBar);
@@ -1,6 +1,7 @@
 package se.itello.commandrunner.gui.commandqueuetree;
 
 import javafx.beans.property.StringProperty;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.TreeCell;
 
 class CommandQueueTreeCell extends TreeCell<CommandQueueTreeRow> {
@@ -11,6 +12,7 @@ class CommandQueueTreeCell extends TreeCell<CommandQueueTreeRow> {
         if (empty) {
             setText(null);
             setGraphic(null);
+            setTooltip(null);
         } else {
             StringProperty stringProperty = item.nameProperty();
             if (stringProperty == null) {
@@ -25,8 +27,15 @@ class CommandQueueTreeCell extends TreeCell<CommandQueueTreeRow> {
             }
 
             setGraphic(getTreeItem().getGraphic());
+            setTooltip(item instanceof CommandQueueTreeCommandRow ? resourceUsageTooltip((CommandQueueTreeCommandRow) item) : null);
         }
     }
+
+    private static Tooltip resourceUsageTooltip(CommandQueueTreeCommandRow row) {
+        final Tooltip tooltip = new Tooltip();
+        tooltip.setOnShowing(event -> tooltip.setText(row.getCommand().getResourceUsage().summary()));
+        return tooltip;
+    }
 }
 
 
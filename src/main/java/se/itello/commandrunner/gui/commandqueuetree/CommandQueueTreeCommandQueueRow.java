@@ -2,13 +2,27 @@ package se.itello.commandrunner.gui.commandqueuetree;
 
 import javafx.beans.property.SimpleStringProperty;
 import se.itello.commandrunner.CommandQueue;
+import se.itello.commandrunner.SizeFormatter;
 
 class CommandQueueTreeCommandQueueRow extends CommandQueueTreeRow {
     private final CommandQueue commandQueue;
+    private final String baseName;
 
     CommandQueueTreeCommandQueueRow(CommandQueue commandQueue, String name) {
         super(new SimpleStringProperty(name));
         this.commandQueue = commandQueue;
+        this.baseName = name;
+    }
+
+    /**
+     * Shows how long the queue is expected to keep running, or only its name if it is not running or has commands
+     * that never ran before.
+     */
+    void showEstimatedRemaining() {
+        final long estimatedRemainingMillis = commandQueue.getQueueStatus() == CommandQueue.CommandQueueStatus.Stopped
+                ? -1 : commandQueue.getEstimatedRemainingMillis();
+        nameProperty().set(estimatedRemainingMillis < 0 ? baseName
+                : baseName + "  [" + SizeFormatter.MILLISECONDS_SHORT.format(estimatedRemainingMillis) + " left]");
     }
 
     CommandQueue getCommandQueue() {
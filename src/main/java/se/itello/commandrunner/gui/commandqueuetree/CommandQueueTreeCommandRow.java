@@ -3,15 +3,48 @@ package se.itello.commandrunner.gui.commandqueuetree;
 import javafx.beans.property.SimpleStringProperty;
 import se.itello.commandrunner.Command;
 import se.itello.commandrunner.CommandQueue;
+import se.itello.commandrunner.OutputMatches;
+
+import java.util.List;
+import java.util.stream.Collectors;
 
 class CommandQueueTreeCommandRow extends CommandQueueTreeRow {
     private final Command command;
     private final CommandQueue commandQueue;
+    private final String baseName;
 
     CommandQueueTreeCommandRow(Command command, CommandQueue commandQueue) {
-        super(new SimpleStringProperty(command.getCommandNameAndArguments()));
+        this(command, commandQueue, name(command, commandQueue.getPredecessors(command)));
+    }
+
+    private CommandQueueTreeCommandRow(Command command, CommandQueue commandQueue, String baseName) {
+        super(new SimpleStringProperty(baseName));
         this.command = command;
         this.commandQueue = commandQueue;
+        this.baseName = baseName;
+    }
+
+    void showResourceUsage() {
+        final OutputMatches outputMatches = command.getOutputMatches();
+        nameProperty().set(baseName + "  [" + command.getResourceUsage().summary() + "]"
+                + (outputMatches.isEmpty() ? "" : "  [" + outputMatches.summary() + "]"));
+    }
+
+    void showOutputMatches() {
+        nameProperty().set(baseName + "  [" + command.getOutputMatches().summary() + "]");
+    }
+
+    private static String name(Command command, List<Command> predecessors) {
+        if (predecessors.isEmpty()) {
+            return command.getCommandNameAndArguments();
+        }
+
+        return command.getCommandNameAndArguments() + "  \u2190 " + predecessors.stream()
+                .map(predecessor -> predecessor.getCommandComment().isEmpty()
+                        ? predecessor.getCommandNameAndArguments()
+                        : predecessor.getCommandComment())
+                .distinct()
+                .collect(Collectors.joining(", "));
     }
 
     public Command getCommand() {
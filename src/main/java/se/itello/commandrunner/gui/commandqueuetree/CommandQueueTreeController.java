@@ -2,7 +2,10 @@ package se.itello.commandrunner.gui.commandqueuetree;
 
 import javafx.animation.Animation;
 import javafx.animation.Interpolator;
+import javafx.animation.KeyFrame;
 import javafx.animation.RotateTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.control.SelectionMode;
@@ -13,7 +16,11 @@ import javafx.scene.image.ImageView;
 import javafx.util.Duration;
 import se.itello.commandrunner.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 public class CommandQueueTreeController implements CommandListener, CommandQueueListener {
@@ -21,16 +28,21 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
     private static final Image RUNNING_COMMAND_GRAPHIC = new Image("/png/running.png");
     private static final Image DONE_COMMAND_GRAPHIC = new Image("/png/done.png");
     private static final Image FAIL_COMMAND_GRAPHIC = new Image("/png/fail.png");
+    private static final int MAX_SEARCH_HITS = 1000;
 
     private final TreeView<CommandQueueTreeRow> commandQueueTreeView;
-    private final LimitTextArea commandOutputArea;
+    private final OutputView commandOutputView;
+    private final Set<Command> commandsWithNewMatches = ConcurrentHashMap.newKeySet();
+    private final Timeline estimatedRemainingUpdater;
+    private final OutputRenderer outputRenderer;
 
-    private TextAppendThread appendThread;
     private int runningQueues = 0;
+    private boolean errorOutputOnly = false;
 
-    public CommandQueueTreeController(TreeView<CommandQueueTreeRow> commandQueueTreeView, LimitTextArea commandOutputArea) {
+    public CommandQueueTreeController(TreeView<CommandQueueTreeRow> commandQueueTreeView, OutputView commandOutputView) {
         this.commandQueueTreeView = commandQueueTreeView;
-        this.commandOutputArea = commandOutputArea;
+        this.commandOutputView = commandOutputView;
+        outputRenderer = new OutputRenderer(commandOutputView);
         commandQueueTreeView.setCellFactory(p -> new CommandQueueTreeCell());
         commandQueueTreeView.setShowRoot(false);
         commandQueueTreeView.setRoot(new TreeItem<>());
@@ -39,11 +51,23 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
         commandQueueTreeView.getSelectionModel().getSelectedItems().addListener(
                 (ListChangeListener<TreeItem<CommandQueueTreeRow>>) listener -> selectionUpdated(listener.getList())
         );
+
+        estimatedRemainingUpdater = new Timeline(new KeyFrame(Duration.seconds(1), event -> showEstimatedRemaining()));
+        estimatedRemainingUpdater.setCycleCount(Animation.INDEFINITE);
+    }
+
+    private void showEstimatedRemaining() {
+        for (TreeItem<CommandQueueTreeRow> treeItem : commandQueueTreeView.getRoot().getChildren()) {
+            final CommandQueueTreeRow row = treeItem.getValue();
+            if (row instanceof CommandQueueTreeCommandQueueRow
+                    && ((CommandQueueTreeCommandQueueRow) row).getCommandQueue().getQueueStatus() != CommandQueue.CommandQueueStatus.Stopped) {
+                ((CommandQueueTreeCommandQueueRow) row).showEstimatedRemaining();
+            }
+        }
     }
 
     private void selectionUpdated(ObservableList<? extends TreeItem<CommandQueueTreeRow>> selection) {
-        StringBuilder sb = new StringBuilder();
-        boolean running = false;
+        final List<LineSource> sources = new ArrayList<>();
         for (TreeItem<CommandQueueTreeRow> commandQueueTreeItemTreeItem : selection) {
             if (commandQueueTreeItemTreeItem == null) {
                 continue;
@@ -52,33 +76,37 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
             CommandQueueTreeRow item = commandQueueTreeItemTreeItem.getValue();
             if (item instanceof CommandQueueTreeCommandQueueRow) {
                 CommandQueue commandQueue = ((CommandQueueTreeCommandQueueRow) item).getCommandQueue();
-                commandQueue.getCommandOutput().forEach(line -> sb.append(line).append('\n'));
-                running = running || commandQueue.getQueueStatus() == CommandQueue.CommandQueueStatus.Running;
+                sources.add(LineSource.of(commandQueue, getShownSource()));
             } else if (item instanceof CommandQueueTreeCommandRow) {
                 Command command = ((CommandQueueTreeCommandRow) item).getCommand();
                 CommandQueue commandQueue = ((CommandQueueTreeCommandRow) item).getCommandQueue();
-                commandQueue.getCommandOutputForCommand(command).forEach(line -> sb.append(line).append('\n'));
-                running = running || commandQueue.getCommandStatus() == CommandStatus.RUNNING;
+                sources.add(LineSource.of(commandQueue.getCommandOutputForCommand(command), getShownSource()));
             }
         }
 
-        if (running) {
-            startAppendThread();
-        } else {
-            stopAppendThreadIfRunning();
-        }
+        commandOutputView.show(sources);
+    }
+
+    private OutputSource getShownSource() {
+        return errorOutputOnly ? OutputSource.STDERR : null;
+    }
 
-        commandOutputArea.setTextLimited(sb.toString());
+    public void setErrorOutputOnly(boolean errorOutputOnly) {
+        this.errorOutputOnly = errorOutputOnly;
+        selectionUpdated(commandQueueTreeView.getSelectionModel().getSelectedItems());
     }
 
     @Override
     public void commandQueueStarted(CommandQueue commandQueue) {
-        commandOutputArea.clear();
+        commandOutputView.clear();
         runningQueues++;
 
         final TreeItem<CommandQueueTreeRow> treeItem;
         if (commandQueue.getCommands().size() > 1) {
             String name = "" + commandQueueTreeView.getRoot().getChildren().size();
+            if (commandQueue.getCommands().stream().anyMatch(command -> !commandQueue.getPredecessors(command).isEmpty())) {
+                name += " (by dependencies)";
+            }
             treeItem = new TreeItem<>(new CommandQueueTreeCommandQueueRow(commandQueue, name));
             commandQueue.getCommands().forEach(command -> {
                 TreeItem<CommandQueueTreeRow> child = new TreeItem<>(new CommandQueueTreeCommandRow(command, commandQueue));
@@ -94,7 +122,8 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
         setItemGraphic(treeItem, RUNNING_COMMAND_GRAPHIC);
         commandQueueTreeView.getRoot().getChildren().add(0, treeItem);
         commandQueueTreeView.getSelectionModel().clearAndSelect(0);
-        startAppendThread();
+        showEstimatedRemaining();
+        estimatedRemainingUpdater.play();
     }
 
     private void setItemGraphic(TreeItem<CommandQueueTreeRow> treeItem, Image image) {
@@ -116,16 +145,16 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
     @Override
     public void commandQueueFinished(CommandQueue commandQueue) {
         if (--runningQueues <= 0) {
-            stopAppendThreadIfRunning();
-        }
-
-        // TODO: hack: dunno why it decides to not even append sometimes in linux
-        if (commandOutputArea.getLength() == 0) {
-            selectionUpdated(commandQueueTreeView.getSelectionModel().getSelectedItems());
+            estimatedRemainingUpdater.stop();
         }
 
         getTreeItemForQueue(commandQueue)
-                .ifPresent(treeItem -> updateGraphic(commandQueue.getCommandStatus(), treeItem));
+                .ifPresent(treeItem -> {
+                    if (treeItem.getValue() instanceof CommandQueueTreeCommandQueueRow) {
+                        ((CommandQueueTreeCommandQueueRow) treeItem.getValue()).showEstimatedRemaining();
+                    }
+                    updateGraphic(commandQueue.getCommandStatus(), treeItem);
+                });
     }
 
     private void updateGraphic(CommandStatus commandStatus, TreeItem<CommandQueueTreeRow> treeItemForQueue) {
@@ -164,13 +193,17 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
         getTreeItemForCommand(commandQueueTreeView.getRoot(), command)
                 .ifPresent(treeItem -> setItemGraphic(treeItem, RUNNING_COMMAND_GRAPHIC));
 
-        command.addCommandListener(this);
+        // for matches and the end of the command, as output is shown from where the queue stores it
+        command.addCommandListenerWithoutOutput(this);
     }
 
     @Override
     public void commandExecuted(Command command) {
         getTreeItemForCommand(commandQueueTreeView.getRoot(), command)
-                .ifPresent(treeItem -> updateGraphic(command.getCommandStatus(), treeItem));
+                .ifPresent(treeItem -> {
+                    ((CommandQueueTreeCommandRow) treeItem.getValue()).showResourceUsage();
+                    updateGraphic(command.getCommandStatus(), treeItem);
+                });
     }
 
     private Optional<TreeItem<CommandQueueTreeRow>> getTreeItemForCommand(TreeItem<CommandQueueTreeRow> root, Command command) {
@@ -189,24 +222,32 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
         return Optional.empty();
     }
 
-    private void startAppendThread() {
-        stopAppendThreadIfRunning();
-        appendThread = new TextAppendThread(commandOutputArea);
-        appendThread.setDaemon(true);
-        appendThread.start();
+    @Override
+    public void commandOutput(Command command, String output) {
+        // shown once stored, see commandOutputStored
     }
 
-    private void stopAppendThreadIfRunning() {
-        if (appendThread != null) {
-            appendThread.setDone();
-            appendThread.setTextAreaToNull();
+    /**
+     * The output is shown from where the queue stores it, so the view is refreshed once it has been stored.
+     */
+    @Override
+    public void commandOutputStored(Command command) {
+        if (isCommandSelected(command)) {
+            outputRenderer.requestRefresh();
         }
     }
 
     @Override
-    public void commandOutput(Command command, String output) {
-        if (isCommandSelected(command)) {
-            appendThread.add(output + '\n');
+    public void commandOutputMatched(Command command, OutputMatch match) {
+        // matches may come for every line, so the row is updated once for all that came since it was last updated
+        if (commandsWithNewMatches.add(command)) {
+            Platform.runLater(() -> {
+                commandsWithNewMatches.remove(command);
+                if (command.getCommandStatus() == CommandStatus.RUNNING) {
+                    getTreeItemForCommand(commandQueueTreeView.getRoot(), command)
+                            .ifPresent(treeItem -> ((CommandQueueTreeCommandRow) treeItem.getValue()).showOutputMatches());
+                }
+            });
         }
     }
 
@@ -231,6 +272,12 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
                 .map(row -> (CommandQueueTreeCommandQueueRow) row);
     }
 
+    private static CommandQueue getCommandQueue(CommandQueueTreeRow row) {
+        return row instanceof CommandQueueTreeCommandQueueRow
+                ? ((CommandQueueTreeCommandQueueRow) row).getCommandQueue()
+                : ((CommandQueueTreeCommandRow) row).getCommandQueue();
+    }
+
     public void killSelected() {
         selectedCommandRows().forEach(row -> row.getCommand().kill());
         selectedCommandQueueRows().forEach(row -> row.getCommandQueue().kill());
@@ -240,9 +287,48 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
         selectedCommandQueueRows().forEach(row -> row.getCommandQueue().stopWhenCurrentCommandFinishes());
     }
 
+    /**
+     * Shows the output lines that contain the query in the selected queues, or in all queues if none is selected.
+     * An empty query shows the output of the selection again.
+     */
+    public void search(String query) {
+        if (query.isEmpty()) {
+            selectionUpdated(commandQueueTreeView.getSelectionModel().getSelectedItems());
+            return;
+        }
+
+        Stream<CommandQueue> queues = commandQueueTreeView.getSelectionModel().getSelectedItems().stream()
+                .filter(item -> item != null)
+                .map(item -> getCommandQueue(item.getValue()));
+        if (commandQueueTreeView.getSelectionModel().isEmpty()) {
+            queues = commandQueueTreeView.getRoot().getChildren().stream().map(item -> getCommandQueue(item.getValue()));
+        }
+
+        final long start = System.nanoTime();
+        final List<SearchHit> hits = new ArrayList<>();
+        queues.distinct().forEach(queue -> hits.addAll(queue.search(query, MAX_SEARCH_HITS - hits.size())));
+        final long millis = (System.nanoTime() - start) / 1_000_000;
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(hits.size() >= MAX_SEARCH_HITS ? "First " : "").append(hits.size())
+                .append(" lines containing \"").append(query).append("\" (").append(millis).append(" ms)\n");
+        for (SearchHit hit : hits) {
+            final Command command = hit.getCommand();
+            sb.append('\n').append(command.getCommandComment().isEmpty() ? command.getCommandNameAndArguments() : command.getCommandComment())
+                    .append(", line ").append(hit.getLineNumber() + 1).append(":\n");
+            hit.getContextBefore().forEach(line -> sb.append("    ").append(line).append('\n'));
+            sb.append("  > ").append(hit.getLine()).append('\n');
+            hit.getContextAfter().forEach(line -> sb.append("    ").append(line).append('\n'));
+        }
+
+        commandOutputView.showText(sb.toString());
+    }
+
     public void clearQueue() {
+        // the shown output is read from the queues, so it is cleared before they are closed
+        commandOutputView.clear();
+        commandQueueTreeView.getRoot().getChildren().forEach(treeItem -> getCommandQueue(treeItem.getValue()).close());
         commandQueueTreeView.getRoot().getChildren().clear();
-        commandOutputArea.clear();
     }
 
     public void sendInput(String text) {
@@ -251,8 +337,4 @@ public class CommandQueueTreeController implements CommandListener, CommandQueue
                 .filter(command -> command.getCommandStatus().equals(CommandStatus.RUNNING))
                 .forEach(command -> command.sendInput(text));
     }
-
-    public void stopAppendingText() {
-        stopAppendThreadIfRunning();
-    }
 }
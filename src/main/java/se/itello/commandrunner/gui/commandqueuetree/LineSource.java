@@ -0,0 +1,114 @@
+package se.itello.commandrunner.gui.commandqueuetree;
+
+import se.itello.commandrunner.CommandOutput;
+import se.itello.commandrunner.CommandQueue;
+import se.itello.commandrunner.MergedOutput;
+import se.itello.commandrunner.OutputSource;
+
+import java.util.List;
+
+/**
+ * Lines shown in an {@link OutputView}, read a page at a time from where they are stored. The number of lines only
+ * changes when the source is updated, so that the view can tell what changed since it last looked. Lines are
+ * usually only added at the end, but the output of a queue can also get lines in between.
+ */
+abstract class LineSource {
+    private int size;
+    private int firstChanged;
+
+    static LineSource of(List<String> lines) {
+        return new LineSource() {
+            @Override
+            int countLines() {
+                return lines.size();
+            }
+
+            @Override
+            List<String> getLines(int from, int to) {
+                return lines.subList(from, to);
+            }
+        };
+    }
+
+    /**
+     * @param source the stream to show, or null for both
+     */
+    static LineSource of(CommandOutput output, OutputSource source) {
+        return new LineSource() {
+            @Override
+            int countLines() {
+                return output.getLineCount(source);
+            }
+
+            @Override
+            List<String> getLines(int from, int to) {
+                return output.getLines(source, from, to);
+            }
+        };
+    }
+
+    /**
+     * The output of all commands of the queue interleaved in the order it was read.
+     *
+     * @param source the stream to show, or null for both
+     */
+    static LineSource of(CommandQueue commandQueue, OutputSource source) {
+        return new LineSource() {
+            private MergedOutput output;
+            private MergedOutput previousOutput;
+
+            @Override
+            int countLines() {
+                previousOutput = output;
+                output = commandQueue.getMergedOutput(source);
+                return output.size();
+            }
+
+            @Override
+            int firstChangedLine(int previousSize) {
+                return previousOutput == null ? 0 : output.firstChangedLine(previousOutput);
+            }
+
+            @Override
+            List<String> getLines(int from, int to) {
+                return output.getLines(from, to);
+            }
+        };
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the first line that changed in the last update
+     */
+    int firstChanged() {
+        return firstChanged;
+    }
+
+    /**
+     * @return whether the number of lines changed
+     */
+    boolean update() {
+        final int previousSize = size;
+        size = countLines();
+        firstChanged = firstChangedLine(previousSize);
+        return size != previousSize;
+    }
+
+    abstract int countLines();
+
+    /**
+     * @return the first line that changed since the source had the previous size, which is where lines were added
+     * or removed unless they can be added in between
+     */
+    int firstChangedLine(int previousSize) {
+        return Math.min(previousSize, size);
+    }
+
+    /**
+     * @return the lines from {@code from}, inclusive, to {@code to}, exclusive, or fewer if some are no longer kept
+     */
+    abstract List<String> getLines(int from, int to);
+}
@@ -0,0 +1,166 @@
+package se.itello.commandrunner.gui.commandqueuetree;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lines of several sources one after the other, as the items of an {@link OutputView}. Only the lines that are
+ * shown are read, a page at a time, and the latest pages read are cached. Lines added to the sources are picked up
+ * when {@link #refresh()} is called, which costs the same however many lines there are before them.
+ */
+class OutputLines extends ObservableListBase<String> {
+    private static final int PAGE_SIZE = 256;
+    private static final int CACHED_PAGES = 16;
+
+    private final Map<Long, List<String>> pages;
+    private List<LineSource> sources;
+    private int[] offsets;
+
+    OutputLines() {
+        pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<String>> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
+        sources = List.of();
+        offsets = new int[]{0};
+    }
+
+    void setSources(List<LineSource> sources) {
+        final int previousSize = size();
+        this.sources = List.copyOf(sources);
+        this.sources.forEach(LineSource::update);
+        pages.clear();
+        updateOffsets();
+
+        beginChange();
+        if (previousSize > 0) {
+            nextRemove(0, Collections.nCopies(previousSize, ""));
+        }
+        if (size() > 0) {
+            nextAdd(0, size());
+        }
+        endChange();
+    }
+
+    /**
+     * Picks up the lines added to the sources since they were last looked at. Lines from the first one that changed
+     * in a source on are replaced, so the cells and pages showing them are read again.
+     *
+     * @return whether any lines were added or removed
+     */
+    boolean refresh() {
+        final int[] previousSizes = new int[sources.size()];
+        boolean changed = false;
+        for (int i = 0; i < sources.size(); i++) {
+            previousSizes[i] = sources.get(i).size();
+            changed |= sources.get(i).update();
+        }
+        if (!changed) {
+            return false;
+        }
+        updateOffsets();
+
+        beginChange();
+        for (int i = 0; i < sources.size(); i++) {
+            final int previousSize = previousSizes[i];
+            final int size = sources.get(i).size();
+            final int firstChanged = sources.get(i).firstChanged();
+            if (firstChanged < previousSize) {
+                nextRemove(offsets[i] + firstChanged, Collections.nCopies(previousSize - firstChanged, ""));
+            }
+            if (firstChanged < size) {
+                nextAdd(offsets[i] + firstChanged, offsets[i] + size);
+            }
+            if (firstChanged < Math.max(size, previousSize)) {
+                forgetPagesFrom(i, firstChanged / PAGE_SIZE);
+            }
+        }
+        endChange();
+
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return offsets[offsets.length - 1];
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("no line " + index + " of " + size());
+        }
+
+        final int sourceIndex = sourceIndexOf(index);
+        final int line = index - offsets[sourceIndex];
+        final int page = line / PAGE_SIZE;
+        final List<String> lines = pages.computeIfAbsent(pageKey(sourceIndex, page), key -> readPage(sourceIndex, page));
+        final int lineInPage = line - page * PAGE_SIZE;
+
+        return lineInPage < lines.size() ? lines.get(lineInPage) : "";
+    }
+
+    /**
+     * Appends the lines from {@code from}, inclusive, to {@code to}, exclusive, each followed by a line break. They
+     * are read straight from the sources, without going through the cache.
+     */
+    void appendLines(StringBuilder sb, int from, int to) {
+        int index = from;
+        while (index < to) {
+            final int sourceIndex = sourceIndexOf(index);
+            final int line = index - offsets[sourceIndex];
+            final int end = Math.min(Math.min(to, offsets[sourceIndex + 1]) - offsets[sourceIndex], line + PAGE_SIZE * CACHED_PAGES);
+            final List<String> lines = sources.get(sourceIndex).getLines(line, end);
+            for (int i = 0; i < end - line; i++) {
+                sb.append(i < lines.size() ? lines.get(i) : "").append('\n');
+            }
+            index += end - line;
+        }
+    }
+
+    private void updateOffsets() {
+        offsets = new int[sources.size() + 1];
+        for (int i = 0; i < sources.size(); i++) {
+            offsets[i + 1] = offsets[i] + sources.get(i).size();
+        }
+    }
+
+    /**
+     * @return the source the line is in, which is found by a binary search of where each source starts
+     */
+    private int sourceIndexOf(int index) {
+        int low = 0;
+        int high = sources.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private List<String> readPage(int sourceIndex, int page) {
+        final int from = page * PAGE_SIZE;
+        final int to = Math.min(from + PAGE_SIZE, sources.get(sourceIndex).size());
+
+        return sources.get(sourceIndex).getLines(from, to);
+    }
+
+    private void forgetPagesFrom(int sourceIndex, int page) {
+        pages.keySet().removeIf(key -> (int) (key >>> 32) == sourceIndex && (int) (long) key >= page);
+    }
+
+    private static long pageKey(int sourceIndex, int page) {
+        return (long) sourceIndex << 32 | page;
+    }
+}
@@ -0,0 +1,35 @@
+package se.itello.commandrunner.gui.commandqueuetree;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Refreshes the output view at most once per frame, with all output that was stored since the previous frame.
+ * Refreshes are requested from any thread once output has been stored. The timer only runs for the frame after a
+ * request, so nothing runs when no output arrives.
+ */
+class OutputRenderer extends AnimationTimer {
+    private final OutputView outputView;
+    private final AtomicBoolean scheduled;
+
+    OutputRenderer(OutputView outputView) {
+        this.outputView = outputView;
+        scheduled = new AtomicBoolean();
+    }
+
+    void requestRefresh() {
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::start);
+        }
+    }
+
+    @Override
+    public void handle(long now) {
+        stop();
+        // output stored after this is refreshed in the next frame
+        scheduled.set(false);
+        outputView.showAddedLines();
+    }
+}
@@ -0,0 +1,126 @@
+package se.itello.commandrunner.gui.commandqueuetree;
+
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shows output a line per cell, creating cells only for the lines that are visible, so that output of any length
+ * is shown at once and lines are added at the same cost however many there are. The lines are read from where the
+ * output is stored, so the view keeps no text of its own.
+ * <p>
+ * While the last line is visible, the view follows the lines that are added. Lines can be selected and copied.
+ */
+public class OutputView extends ListView<String> {
+    private final OutputLines lines;
+
+    public OutputView() {
+        lines = new OutputLines();
+        setItems(lines);
+        getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        showText("Program started");
+    }
+
+    /**
+     * Shows the lines of the sources one after the other, from the end.
+     */
+    void show(List<LineSource> sources) {
+        getSelectionModel().clearSelection();
+        lines.setSources(sources);
+        scrollToLastLine();
+    }
+
+    /**
+     * Shows the text from the start, e.g. search results.
+     */
+    void showText(String text) {
+        getSelectionModel().clearSelection();
+        lines.setSources(List.of(LineSource.of(Arrays.asList(text.split("\n")))));
+        scrollTo(0);
+    }
+
+    void clear() {
+        show(List.of());
+    }
+
+    /**
+     * Shows the lines added to the sources since they were last looked at, and scrolls to the new last line if the
+     * previous one was visible.
+     *
+     * @return whether any lines were added or removed
+     */
+    boolean showAddedLines() {
+        final boolean following = isShowingLastLine();
+        final boolean changed = lines.refresh();
+        if (changed && following) {
+            scrollToLastLine();
+        }
+
+        return changed;
+    }
+
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    /**
+     * @param lineNumber the line to scroll to and select, counted from 1
+     * @throws IllegalArgumentException if there is no such line
+     */
+    public void goToLine(int lineNumber) {
+        if (lineNumber < 1 || lineNumber > lines.size()) {
+            throw new IllegalArgumentException("there is no line " + lineNumber + ", only lines 1 to " + lines.size());
+        }
+
+        scrollTo(lineNumber - 1);
+        getSelectionModel().clearAndSelect(lineNumber - 1);
+        getFocusModel().focus(lineNumber - 1);
+    }
+
+    /**
+     * Copies the selected lines to the clipboard, in the order they are shown.
+     */
+    public void copySelection() {
+        final int[] selected = getSelectionModel().getSelectedIndices().stream().mapToInt(Integer::intValue).sorted().toArray();
+        if (selected.length == 0) {
+            return;
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        int from = selected[0];
+        for (int i = 1; i <= selected.length; i++) {
+            if (i == selected.length || selected[i] != selected[i - 1] + 1) {
+                lines.appendLines(sb, from, selected[i - 1] + 1);
+                if (i < selected.length) {
+                    from = selected[i];
+                }
+            }
+        }
+
+        final ClipboardContent content = new ClipboardContent();
+        content.putString(sb.toString());
+        Clipboard.getSystemClipboard().setContent(content);
+    }
+
+    private boolean isShowingLastLine() {
+        final VirtualFlow<?> flow = (VirtualFlow<?>) lookup(".virtual-flow");
+        if (flow == null || lines.isEmpty()) {
+            return true;
+        }
+
+        final IndexedCell<?> lastVisibleCell = flow.getLastVisibleCell();
+        return lastVisibleCell == null || lastVisibleCell.getIndex() >= lines.size() - 1;
+    }
+
+    private void scrollToLastLine() {
+        if (!lines.isEmpty()) {
+            scrollTo(lines.size() - 1);
+        }
+    }
+}
@@ -10,7 +10,11 @@ public class CommandTableCommandRow extends CommandTableRow {
         super(
                 new SimpleStringProperty(command.getCommandNameAndArguments()),
                 new SimpleStringProperty(command.getCommandDirectory()),
-                new SimpleStringProperty(command.getCommandComment())
+                new SimpleStringProperty(command.getCommandComment()),
+                new SimpleStringProperty(command.getDependsOn()),
+                new SimpleStringProperty(command.getTimeout()),
+                new SimpleStringProperty(command.getInputs()),
+                new SimpleStringProperty(command.getOutputRules())
         );
 
         this.command = command;
@@ -37,4 +41,28 @@ public class CommandTableCommandRow extends CommandTableRow {
         super.setCommandComment(commandComment);
         command.setCommandComment(commandComment);
     }
+
+    @Override
+    public void setDependsOn(String dependsOn) {
+        super.setDependsOn(dependsOn);
+        command.setDependsOn(dependsOn);
+    }
+
+    @Override
+    public void setTimeout(String timeout) {
+        super.setTimeout(timeout);
+        command.setTimeout(timeout);
+    }
+
+    @Override
+    public void setInputs(String inputs) {
+        super.setInputs(inputs);
+        command.setInputs(inputs);
+    }
+
+    @Override
+    public void setOutputRules(String outputRules) {
+        super.setOutputRules(outputRules);
+        command.setOutputRules(outputRules);
+    }
 }
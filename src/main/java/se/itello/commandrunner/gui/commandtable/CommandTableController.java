@@ -23,7 +23,7 @@ public class CommandTableController {
 
     private int dragStartIndex;
 
-    public CommandTableController(TreeTableView<CommandTableRow> commandTable, TreeTableColumn<CommandTableRow, String> commandColumn, TreeTableColumn<CommandTableRow, String> directoryColumn, TreeTableColumn<CommandTableRow, String> commentColumn) {
+    public CommandTableController(TreeTableView<CommandTableRow> commandTable, TreeTableColumn<CommandTableRow, String> commandColumn, TreeTableColumn<CommandTableRow, String> directoryColumn, TreeTableColumn<CommandTableRow, String> commentColumn, TreeTableColumn<CommandTableRow, String> dependsOnColumn, TreeTableColumn<CommandTableRow, String> timeoutColumn, TreeTableColumn<CommandTableRow, String> inputsColumn, TreeTableColumn<CommandTableRow, String> outputRulesColumn) {
         this.commandTable = commandTable;
         this.commandColumn = commandColumn;
 
@@ -47,8 +47,20 @@ public class CommandTableController {
 
         directoryColumn.setCellValueFactory(cellData -> cellData.getValue().getValue().commandDirectoryProperty());
 
+        dependsOnColumn.setCellValueFactory(cellData -> cellData.getValue().getValue().dependsOnProperty());
+
+        timeoutColumn.setCellValueFactory(cellData -> cellData.getValue().getValue().timeoutProperty());
+
+        inputsColumn.setCellValueFactory(cellData -> cellData.getValue().getValue().inputsProperty());
+
+        outputRulesColumn.setCellValueFactory(cellData -> cellData.getValue().getValue().outputRulesProperty());
+
         setToolTipLabel(directoryColumn, "Starting directory (NOT command location)");
         setToolTipLabel(commandColumn, "Command name and arguments, including path if command is not in path");
+        setToolTipLabel(dependsOnColumn, "Comma separated comments of rows that must succeed first (when running by dependencies)");
+        setToolTipLabel(inputsColumn, "Comma separated globs of input files, e.g. src/**.java. If set, a command is skipped when nothing changed since it last succeeded");
+        setToolTipLabel(outputRulesColumn, "Rules matched against each output line, e.g. fail /BUILD FAILED/, extract tests /Tests run: (\\d+)/, flag /warn/i (group rules apply to each command in it)");
+        setToolTipLabel(timeoutColumn, "Kill the command after e.g. 90s, 5m or 1h (a group timeout applies to each command in it)");
 
         directoryColumn.setOnEditCommit(event ->
                 event.getTreeTablePosition().getTreeItem().getValue().setCommandDirectory(event.getNewValue()));
@@ -56,9 +68,45 @@ public class CommandTableController {
                 event.getTreeTablePosition().getTreeItem().getValue().setCommandComment(event.getNewValue()));
         commandColumn.setOnEditCommit(event ->
                 event.getTreeTablePosition().getTreeItem().getValue().setCommandNameAndArguments(event.getNewValue()));
+        dependsOnColumn.setOnEditCommit(event ->
+                event.getTreeTablePosition().getTreeItem().getValue().setDependsOn(event.getNewValue()));
+        inputsColumn.setOnEditCommit(event ->
+                event.getTreeTablePosition().getTreeItem().getValue().setInputs(event.getNewValue()));
+        timeoutColumn.setOnEditCommit(event -> {
+            try {
+                Command.parseTimeout(event.getNewValue());
+                event.getTreeTablePosition().getTreeItem().getValue().setTimeout(event.getNewValue().trim());
+            } catch (IllegalArgumentException e) {
+                final Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Invalid timeout");
+                alert.setHeaderText("Use a whole number with an optional unit: ms, s, m or h.");
+                alert.setContentText(e.getMessage());
+                CommandRunner.getInstance().setStyleSheets(alert.getDialogPane().getStylesheets());
+                alert.showAndWait();
+                commandTable.refresh();
+            }
+        });
+        outputRulesColumn.setOnEditCommit(event -> {
+            try {
+                Command.validateOutputRules(event.getNewValue());
+                event.getTreeTablePosition().getTreeItem().getValue().setOutputRules(event.getNewValue().trim());
+            } catch (IllegalArgumentException e) {
+                final Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Invalid output rules");
+                alert.setHeaderText("Use comma separated rules like: fail /pattern/, flag /pattern/i, extract name /pattern (group)/");
+                alert.setContentText(e.getMessage());
+                CommandRunner.getInstance().setStyleSheets(alert.getDialogPane().getStylesheets());
+                alert.showAndWait();
+                commandTable.refresh();
+            }
+        });
 
         directoryColumn.setCellFactory(param -> new CommandTableCell());
         commentColumn.setCellFactory(param -> new CommandTableCell());
+        dependsOnColumn.setCellFactory(param -> new CommandTableCell());
+        timeoutColumn.setCellFactory(param -> new CommandTableCell());
+        inputsColumn.setCellFactory(param -> new CommandTableCell());
+        outputRulesColumn.setCellFactory(param -> new CommandTableCell());
         commandColumn.setCellFactory(param -> {
                     final CommandTableCell cell = new CommandTableIconCell();
 
@@ -374,6 +422,14 @@ public class CommandTableController {
         }
     }
 
+    /**
+     * @return the selected rows, or all rows if none are selected
+     */
+    public List<TreeItem<CommandTableRow>> getSelectedOrAllItems() {
+        final List<TreeItem<CommandTableRow>> selectedItems = getSelectedItems();
+        return selectedItems.isEmpty() ? new ArrayList<>(getRoot().getChildren()) : selectedItems;
+    }
+
     public void runSelected(CommandQueueListener... listeners) {
         List<TreeItem<CommandTableRow>> selectedItems = getSelectedItems();
         if (!selectedItems.isEmpty()) {
@@ -381,6 +437,24 @@ public class CommandTableController {
         }
     }
 
+    public void runSelectedAsGraph(CommandQueueListener... listeners) {
+        List<TreeItem<CommandTableRow>> selectedItems = getSelectedItems();
+        if (selectedItems.isEmpty()) {
+            return;
+        }
+
+        try {
+            CommandRunner.getInstance().runCommandTreeItemsAsGraph(selectedItems, getRoot(), listeners);
+        } catch (IllegalArgumentException e) {
+            final Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Could not run by dependencies");
+            alert.setHeaderText("The dependencies of the selected rows are invalid.");
+            alert.setContentText(e.getMessage());
+            CommandRunner.getInstance().setStyleSheets(alert.getDialogPane().getStylesheets());
+            alert.showAndWait();
+        }
+    }
+
     private void runCommandTreeItems(List<TreeItem<CommandTableRow>> treeItemsToRun, CommandQueueListener... listeners) {
         CommandRunner.getInstance().runCommandTreeItems(treeItemsToRun, listeners);
     }
@@ -415,7 +489,7 @@ public class CommandTableController {
         if (row instanceof CommandTableCommandRow) {
             createdRow = new CommandTableCommandRow(((CommandTableCommandRow) row).getCommand().copy());
         } else if (row instanceof CommandTableGroupRow) {
-            createdRow = new CommandTableGroupRow(row.commandNameAndArgumentsProperty().getValue(), row.commandDirectoryProperty().getValue(), row.commandCommentProperty().getValue());
+            createdRow = new CommandTableGroupRow(row.commandNameAndArgumentsProperty().getValue(), row.commandDirectoryProperty().getValue(), row.commandCommentProperty().getValue(), row.dependsOnProperty().getValue(), row.timeoutProperty().getValue(), row.inputsProperty().getValue(), row.outputRulesProperty().getValue());
         } else {
             throw new UnsupportedOperationException("invalid command row");
         }
@@ -4,6 +4,10 @@ import javafx.beans.property.SimpleStringProperty;
 
 public class CommandTableGroupRow extends CommandTableRow {
     public CommandTableGroupRow(String name, String directory, String comment) {
-        super(new SimpleStringProperty(name), new SimpleStringProperty(directory), new SimpleStringProperty(comment));
+        this(name, directory, comment, "", "", "", "");
+    }
+
+    public CommandTableGroupRow(String name, String directory, String comment, String dependsOn, String timeout, String inputs, String outputRules) {
+        super(new SimpleStringProperty(name), new SimpleStringProperty(directory), new SimpleStringProperty(comment), new SimpleStringProperty(dependsOn), new SimpleStringProperty(timeout), new SimpleStringProperty(inputs), new SimpleStringProperty(outputRules));
     }
 }
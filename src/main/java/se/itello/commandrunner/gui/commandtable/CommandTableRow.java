@@ -6,11 +6,19 @@ public class CommandTableRow {
     private final StringProperty commandNameAndArguments;
     private final StringProperty commandDirectory;
     private final StringProperty commandComment;
+    private final StringProperty dependsOn;
+    private final StringProperty timeout;
+    private final StringProperty inputs;
+    private final StringProperty outputRules;
 
-    CommandTableRow(StringProperty commandNameAndArguments, StringProperty commandDirectory, StringProperty commandComment) {
+    CommandTableRow(StringProperty commandNameAndArguments, StringProperty commandDirectory, StringProperty commandComment, StringProperty dependsOn, StringProperty timeout, StringProperty inputs, StringProperty outputRules) {
         this.commandNameAndArguments = commandNameAndArguments;
         this.commandDirectory = commandDirectory;
         this.commandComment = commandComment;
+        this.dependsOn = dependsOn;
+        this.timeout = timeout;
+        this.inputs = inputs;
+        this.outputRules = outputRules;
     }
 
     public StringProperty commandNameAndArgumentsProperty() {
@@ -36,4 +44,36 @@ public class CommandTableRow {
     public void setCommandComment(String commandComment) {
         this.commandComment.set(commandComment);
     }
+
+    public StringProperty dependsOnProperty() {
+        return dependsOn;
+    }
+
+    public void setDependsOn(String dependsOn) {
+        this.dependsOn.set(dependsOn);
+    }
+
+    public StringProperty timeoutProperty() {
+        return timeout;
+    }
+
+    public void setTimeout(String timeout) {
+        this.timeout.set(timeout);
+    }
+
+    public StringProperty inputsProperty() {
+        return inputs;
+    }
+
+    public void setInputs(String inputs) {
+        this.inputs.set(inputs);
+    }
+
+    public StringProperty outputRulesProperty() {
+        return outputRules;
+    }
+
+    public void setOutputRules(String outputRules) {
+        this.outputRules.set(outputRules);
+    }
 }
@@ -47,6 +47,34 @@ public class CommandTableRowTreeItemListManipulator {
 
                 parentItem = parentItem.getParent();
             }
+
+            command.setParentTimeout(null);
+            for (parentItem = item.getParent(); parentItem != null; parentItem = parentItem.getParent()) {
+                final String parentTimeout = parentItem.getValue().timeoutProperty().getValue();
+                if (parentTimeout != null && !parentTimeout.isBlank()) {
+                    command.setParentTimeout(parentTimeout);
+                    break;
+                }
+            }
+
+            final List<String> parentInputs = new ArrayList<>();
+            for (parentItem = item.getParent(); parentItem != null; parentItem = parentItem.getParent()) {
+                final String inputs = parentItem.getValue().inputsProperty().getValue();
+                if (inputs != null && !inputs.isBlank()) {
+                    parentInputs.add(inputs);
+                }
+            }
+            command.setParentInputs(String.join(",", parentInputs));
+
+            final List<String> parentOutputRules = new ArrayList<>();
+            for (parentItem = item.getParent(); parentItem != null; parentItem = parentItem.getParent()) {
+                final String outputRules = parentItem.getValue().outputRulesProperty().getValue();
+                if (outputRules != null && !outputRules.isBlank()) {
+                    parentOutputRules.add(outputRules);
+                }
+            }
+            command.setParentOutputRules(String.join(",", parentOutputRules));
+            command.setSessionGroup(item.getParent() != null ? item.getParent().getValue() : null);
         } else if (row instanceof CommandTableGroupRow) {
             item.getChildren().forEach(child -> addAllCommandRowsForTreeItem(child, commandRows));
         } else {
@@ -5,19 +5,21 @@ import javafx.event.Event;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import se.itello.commandrunner.CommandQueueListener;
 import se.itello.commandrunner.CommandRunner;
 import se.itello.commandrunner.gui.LayoutChangedListener;
 import se.itello.commandrunner.gui.StatusBarController;
 import se.itello.commandrunner.gui.WindowLayout;
 import se.itello.commandrunner.gui.commandqueuetree.CommandQueueTreeController;
 import se.itello.commandrunner.gui.commandqueuetree.CommandQueueTreeRow;
-import se.itello.commandrunner.gui.commandqueuetree.LimitTextArea;
+import se.itello.commandrunner.gui.commandqueuetree.OutputView;
 import se.itello.commandrunner.gui.commandtable.CommandTableController;
 import se.itello.commandrunner.gui.commandtable.CommandTableRow;
 
@@ -46,7 +48,18 @@ public class MainController implements Initializable {
     @FXML
     private TreeTableColumn<CommandTableRow, String> commentColumn;
     @FXML
-    private LimitTextArea commandOutputArea;
+    private TreeTableColumn<CommandTableRow, String> dependsOnColumn;
+
+    @FXML
+    private TreeTableColumn<CommandTableRow, String> timeoutColumn;
+
+    @FXML
+    private TreeTableColumn<CommandTableRow, String> inputsColumn;
+
+    @FXML
+    private TreeTableColumn<CommandTableRow, String> outputRulesColumn;
+    @FXML
+    private OutputView commandOutputView;
     @FXML
     private HBox statusBar;
     @FXML
@@ -54,6 +67,8 @@ public class MainController implements Initializable {
     @FXML
     private Label memoryLabel;
     @FXML
+    private Label executorLabel;
+    @FXML
     private CheckMenuItem lightThemeMenuItem;
     @FXML
     private CheckMenuItem darkThemeMenuItem;
@@ -63,6 +78,10 @@ public class MainController implements Initializable {
     private VBox mainContainer;
     @FXML
     private TextField inputTextField;
+    @FXML
+    private TextField searchTextField;
+    @FXML
+    private CheckBox errorOutputOnlyCheckBox;
 
     private CommandQueueTreeController commandQueueTreeController;
     private CommandTableController commandTableController;
@@ -72,16 +91,21 @@ public class MainController implements Initializable {
     public void initialize(URL fxmlFileLocation, ResourceBundle resources) {
         System.out.println("javafx.runtime.version: " + System.getProperties().get("javafx.runtime.version"));
         assert commandTable != null : "fx:id=\"commandTable\" was not injected: check FXML file 'main .fxml'.";
-        commandTableController = new CommandTableController(commandTable, commandColumn, directoryColumn, commentColumn);
-        commandQueueTreeController = new CommandQueueTreeController(commandQueueTreeView, commandOutputArea);
+        commandTableController = new CommandTableController(commandTable, commandColumn, directoryColumn, commentColumn, dependsOnColumn, timeoutColumn, inputsColumn, outputRulesColumn);
+        commandQueueTreeController = new CommandQueueTreeController(commandQueueTreeView, commandOutputView);
         commandTable.addEventFilter(KeyEvent.KEY_PRESSED, this::tableKeyPressed);
+        commandOutputView.addEventFilter(KeyEvent.KEY_PRESSED, this::outputKeyPressed);
         StatusBarController statusBarController = new StatusBarController();
-        statusBarController.doStuff(memoryBar, memoryLabel);
+        statusBarController.doStuff(memoryBar, memoryLabel, executorLabel);
 
         layoutChangeListeners = new ArrayList<>();
         CommandRunner.getInstance().controllerLoaded(this);
 
         inputTextField.setOnAction(event -> sendInput());
+        searchTextField.setOnAction(event -> commandQueueTreeController.search(searchTextField.getText()));
+        errorOutputOnlyCheckBox.selectedProperty().addListener(
+                (observable, oldValue, newValue) -> commandQueueTreeController.setErrorOutputOnly(newValue)
+        );
     }
 
     @FXML
@@ -101,7 +125,6 @@ public class MainController implements Initializable {
 
     @FXML
     private void runSelected(Event event) {
-        commandQueueTreeController.stopAppendingText();
         commandTableController.runSelected(commandQueueTreeController, CommandRunner.getInstance());
     }
 
@@ -125,10 +148,22 @@ public class MainController implements Initializable {
         CommandRunner.getInstance().addSettingsStage();
     }
 
+    @FXML
+    private void statistics(ActionEvent event) throws IOException {
+        CommandRunner.getInstance().addStatisticsStage(commandTableController.getSelectedOrAllItems());
+    }
+
     private TreeItem<CommandTableRow> getRoot() {
         return commandTableController.getRoot();
     }
 
+    /**
+     * @return the queue tree, which shows the queues it is a listener of
+     */
+    public CommandQueueListener getCommandQueueListener() {
+        return commandQueueTreeController;
+    }
+
     public void setRoot(TreeItem<CommandTableRow> commandTreeNode) {
         commandTableController.setRoot(commandTreeNode);
     }
@@ -149,8 +184,12 @@ public class MainController implements Initializable {
 
     @FXML
     private void runSelectedInParallel() {
-        commandQueueTreeController.stopAppendingText();
-        commandTableController.runSelectedInParallel(commandQueueTreeController);
+        commandTableController.runSelectedInParallel(commandQueueTreeController, CommandRunner.getInstance());
+    }
+
+    @FXML
+    private void runSelectedAsGraph() {
+        commandTableController.runSelectedAsGraph(commandQueueTreeController, CommandRunner.getInstance());
     }
 
     public void resetLayout() {
@@ -167,12 +206,20 @@ public class MainController implements Initializable {
         setWidth(commandColumn, DEFAULT_LAYOUT.getTableCommandColumnWidth());
         setWidth(directoryColumn, DEFAULT_LAYOUT.getTableDirectoryColumnWidth());
         setWidth(commentColumn, DEFAULT_LAYOUT.getTableCommentColumnWidth());
+        setWidth(dependsOnColumn, DEFAULT_LAYOUT.getTableDependsOnColumnWidth());
+        setWidth(timeoutColumn, DEFAULT_LAYOUT.getTableTimeoutColumnWidth());
+        setWidth(inputsColumn, DEFAULT_LAYOUT.getTableInputsColumnWidth());
+        setWidth(outputRulesColumn, DEFAULT_LAYOUT.getTableOutputRulesColumnWidth());
 
         verticalSplitPaneChanged(DEFAULT_LAYOUT.getVerticalDividerPosition());
         horizontalSplitPaneChanged(DEFAULT_LAYOUT.getHorizontalDividerPosition());
         commandColumnWidthChanged(DEFAULT_LAYOUT.getTableCommandColumnWidth());
         directoryColumnWidthChanged(DEFAULT_LAYOUT.getTableDirectoryColumnWidth());
         commentColumnWidthChanged(DEFAULT_LAYOUT.getTableCommentColumnWidth());
+        dependsOnColumnWidthChanged(DEFAULT_LAYOUT.getTableDependsOnColumnWidth());
+        timeoutColumnWidthChanged(DEFAULT_LAYOUT.getTableTimeoutColumnWidth());
+        inputsColumnWidthChanged(DEFAULT_LAYOUT.getTableInputsColumnWidth());
+        outputRulesColumnWidthChanged(DEFAULT_LAYOUT.getTableOutputRulesColumnWidth());
     }
 
     public void clearQueue() {
@@ -192,7 +239,9 @@ public class MainController implements Initializable {
                 break;
             case ENTER:
                 if (commandTable.getEditingCell() == null) {
-                    if (event.isControlDown()) {
+                    if (event.isControlDown() && event.isShiftDown()) {
+                        runSelectedAsGraph();
+                    } else if (event.isControlDown()) {
                         runSelectedInParallel();
                     } else {
                         runSelected(event);
@@ -258,6 +307,47 @@ public class MainController implements Initializable {
         }
     }
 
+    private void outputKeyPressed(KeyEvent event) {
+        if (event.isShortcutDown() && event.getCode() == KeyCode.C) {
+            copyOutput();
+            event.consume();
+        } else if (event.isShortcutDown() && event.getCode() == KeyCode.L) {
+            goToOutputLine();
+            event.consume();
+        }
+    }
+
+    @FXML
+    private void copyOutput() {
+        commandOutputView.copySelection();
+    }
+
+    @FXML
+    private void selectAllOutput() {
+        commandOutputView.getSelectionModel().selectAll();
+    }
+
+    @FXML
+    private void goToOutputLine() {
+        final TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Go to line");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Line (1 to " + commandOutputView.getLineCount() + "):");
+        CommandRunner.getInstance().setStyleSheets(dialog.getDialogPane().getStylesheets());
+        dialog.showAndWait().ifPresent(line -> {
+            try {
+                commandOutputView.goToLine(Integer.parseInt(line.trim()));
+            } catch (IllegalArgumentException e) {
+                final Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Invalid line");
+                alert.setHeaderText("Can not go to line \"" + line + "\".");
+                alert.setContentText(e.getMessage());
+                CommandRunner.getInstance().setStyleSheets(alert.getDialogPane().getStylesheets());
+                alert.showAndWait();
+            }
+        });
+    }
+
     public void addLayoutChangedListener(LayoutChangedListener listener) {
         layoutChangeListeners.add(listener);
     }
@@ -268,6 +358,10 @@ public class MainController implements Initializable {
         setWidth(commandColumn, windowLayout.getTableCommandColumnWidth());
         setWidth(directoryColumn, windowLayout.getTableDirectoryColumnWidth());
         setWidth(commentColumn, windowLayout.getTableCommentColumnWidth());
+        setWidth(dependsOnColumn, windowLayout.getTableDependsOnColumnWidth());
+        setWidth(timeoutColumn, windowLayout.getTableTimeoutColumnWidth());
+        setWidth(inputsColumn, windowLayout.getTableInputsColumnWidth());
+        setWidth(outputRulesColumn, windowLayout.getTableOutputRulesColumnWidth());
         checkThemeLayoutItems(windowLayout.getTheme().equals(WindowLayout.LIGHT_THEME));
         showStatusBar(windowLayout.isShowStatusBar());
 
@@ -306,12 +400,32 @@ public class MainController implements Initializable {
         layoutChangeListeners.forEach(l -> l.tableDirectoryColumnWidthChanged(newValue.intValue()));
     }
 
+    private void dependsOnColumnWidthChanged(Number newValue) {
+        layoutChangeListeners.forEach(l -> l.tableDependsOnColumnWidthChanged(newValue.intValue()));
+    }
+
+    private void timeoutColumnWidthChanged(Number newValue) {
+        layoutChangeListeners.forEach(l -> l.tableTimeoutColumnWidthChanged(newValue.intValue()));
+    }
+
+    private void inputsColumnWidthChanged(Number newValue) {
+        layoutChangeListeners.forEach(l -> l.tableInputsColumnWidthChanged(newValue.intValue()));
+    }
+
+    private void outputRulesColumnWidthChanged(Number newValue) {
+        layoutChangeListeners.forEach(l -> l.tableOutputRulesColumnWidthChanged(newValue.intValue()));
+    }
+
     public void addChangeListeners() {
         verticalSplitPane.getDividers().get(0).positionProperty().addListener((observable, oldValue, newValue) -> verticalSplitPaneChanged(newValue));
         horizontalSplitPane.getDividers().get(0).positionProperty().addListener((observable, oldValue, newValue) -> horizontalSplitPaneChanged(newValue));
         commandColumn.widthProperty().addListener((observable, oldValue, newValue) -> commandColumnWidthChanged(newValue));
         commentColumn.widthProperty().addListener((observable, oldValue, newValue) -> commentColumnWidthChanged(newValue));
         directoryColumn.widthProperty().addListener((observable, oldValue, newValue) -> directoryColumnWidthChanged(newValue));
+        dependsOnColumn.widthProperty().addListener((observable, oldValue, newValue) -> dependsOnColumnWidthChanged(newValue));
+        timeoutColumn.widthProperty().addListener((observable, oldValue, newValue) -> timeoutColumnWidthChanged(newValue));
+        inputsColumn.widthProperty().addListener((observable, oldValue, newValue) -> inputsColumnWidthChanged(newValue));
+        outputRulesColumn.widthProperty().addListener((observable, oldValue, newValue) -> outputRulesColumnWidthChanged(newValue));
     }
 
     public void lightThemeSelected() {
@@ -5,8 +5,14 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
+import javafx.scene.control.Alert;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.PasswordField;
 import javafx.scene.control.RadioButton;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.SpinnerValueFactory;
+import javafx.scene.control.TextField;
 import javafx.scene.control.Toggle;
 import javafx.scene.control.ToggleGroup;
 import javafx.stage.Stage;
@@ -14,6 +20,7 @@ import se.itello.commandrunner.CommandRunner;
 import se.itello.commandrunner.ProgramState;
 
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ResourceBundle;
 
 public class SettingsController implements Initializable {
@@ -36,6 +43,27 @@ public class SettingsController implements Initializable {
     @FXML
     private RadioButton forgetOnExitRadioButton;
 
+    @FXML
+    private Spinner<Integer> maxConcurrentCommandsSpinner;
+
+    @FXML
+    private ComboBox<String> outputCharsetComboBox;
+
+    @FXML
+    private Spinner<Integer> resourceSampleIntervalSpinner;
+
+    @FXML
+    private CheckBox useShellSessionsCheckBox;
+
+    @FXML
+    private TextField agentsTextField;
+
+    @FXML
+    private PasswordField agentTokenField;
+
+    @FXML
+    private Spinner<Integer> metricsPortSpinner;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         assert haltOnErrorCheckBox != null : "fx:id=\"haltOnErrorCheckBox\" was not injected: check FXML file 'settings.fxml'.";
@@ -44,13 +72,56 @@ public class SettingsController implements Initializable {
         haltOnErrorCheckBox.setSelected(programState.getHaltOnError());
         confirmNonemptyDeleteCheckBox.setSelected(programState.getConfirmNonemptyDelete());
         saveOnExitGroup.selectToggle(getButtonFromSaveOnExitSettings(programState));
+        maxConcurrentCommandsSpinner.setValueFactory(
+                new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 256, programState.getMaxConcurrentCommands())
+        );
+        outputCharsetComboBox.getItems().setAll("UTF-8", "ISO-8859-1", "windows-1252", "UTF-16");
+        outputCharsetComboBox.setValue(programState.getOutputCharset().name());
+        resourceSampleIntervalSpinner.setValueFactory(
+                new SpinnerValueFactory.IntegerSpinnerValueFactory(10, 60000, (int) programState.getResourceSampleIntervalMillis(), 100)
+        );
+        useShellSessionsCheckBox.setSelected(programState.getUseShellSessions());
+        agentsTextField.setText(programState.getAgents());
+        agentTokenField.setText(programState.getAgentToken());
+        metricsPortSpinner.setValueFactory(
+                new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 65535, programState.getMetricsPort())
+        );
     }
 
     public void save(ActionEvent event) {
         ProgramState programState = CommandRunner.getInstance().getProgramState();
+        try {
+            programState.setAgents(agentsTextField.getText(), agentTokenField.getText());
+        } catch (IllegalArgumentException e) {
+            final Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Invalid worker agents");
+            alert.setHeaderText("Worker agents must be given as host:port, separated by commas.");
+            alert.setContentText(e.getMessage());
+            CommandRunner.getInstance().setStyleSheets(alert.getDialogPane().getStylesheets());
+            alert.showAndWait();
+            return;
+        }
+        try {
+            programState.setMetricsPort(metricsPortSpinner.getValue());
+        } catch (IllegalArgumentException e) {
+            final Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Invalid metrics port");
+            alert.setHeaderText("Metrics can not be served on port " + metricsPortSpinner.getValue() + ".");
+            alert.setContentText(e.getMessage());
+            CommandRunner.getInstance().setStyleSheets(alert.getDialogPane().getStylesheets());
+            alert.showAndWait();
+            return;
+        }
         programState.setHaltOnError(haltOnErrorCheckBox.isSelected());
         programState.setConfirmNonemptyDelete(confirmNonemptyDeleteCheckBox.isSelected());
         programState.setSaveOnExit(getSaveOnExitFromToggleGroup());
+        programState.setMaxConcurrentCommands(maxConcurrentCommandsSpinner.getValue());
+        String outputCharset = outputCharsetComboBox.getValue();
+        if (outputCharset != null && Charset.isSupported(outputCharset.trim())) {
+            programState.setOutputCharset(Charset.forName(outputCharset.trim()));
+        }
+        programState.setResourceSampleIntervalMillis(resourceSampleIntervalSpinner.getValue());
+        programState.setUseShellSessions(useShellSessionsCheckBox.isSelected());
         programState.saveSettings();
         closeStage(event);
     }
@@ -0,0 +1,120 @@
+package se.itello.commandrunner.gui.initializable;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import se.itello.commandrunner.Command;
+import se.itello.commandrunner.RunHistory;
+import se.itello.commandrunner.RunStatistics;
+import se.itello.commandrunner.SizeFormatter;
+
+import java.net.URL;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.function.Function;
+
+public class StatisticsController implements Initializable {
+
+    @FXML
+    private TableView<CommandStatistics> statisticsTable;
+
+    @FXML
+    private TableColumn<CommandStatistics, String> commandColumn;
+
+    @FXML
+    private TableColumn<CommandStatistics, Number> runsColumn;
+
+    @FXML
+    private TableColumn<CommandStatistics, Number> failureRateColumn;
+
+    @FXML
+    private TableColumn<CommandStatistics, Number> medianColumn;
+
+    @FXML
+    private TableColumn<CommandStatistics, Number> p95Column;
+
+    @FXML
+    private TableColumn<CommandStatistics, Number> trendColumn;
+
+    @FXML
+    private TableColumn<CommandStatistics, Number> lastRunColumn;
+
+    @FXML
+    private Label placeholderLabel;
+
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        assert statisticsTable != null : "fx:id=\"statisticsTable\" was not injected: check FXML file 'statistics.fxml'.";
+
+        commandColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().name));
+        setUpColumn(runsColumn, RunStatistics::getRuns, runs -> runs.toString());
+        setUpColumn(failureRateColumn, RunStatistics::getFailureRate,
+                rate -> String.format("%.0f %%", 100 * rate.doubleValue()));
+        setUpColumn(medianColumn, RunStatistics::getMedianDuration, StatisticsController::formatDuration);
+        setUpColumn(p95Column, RunStatistics::getP95Duration, StatisticsController::formatDuration);
+        setUpColumn(trendColumn, RunStatistics::getTrend,
+                trend -> Double.isNaN(trend.doubleValue()) ? "" : String.format("%+.0f %%", 100 * trend.doubleValue()));
+        final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+        setUpColumn(lastRunColumn, RunStatistics::getLastRunAt, lastRunAt -> lastRunAt.longValue() == 0 ? "" :
+                dateFormat.format(new Date(lastRunAt.longValue())));
+    }
+
+    private static void setUpColumn(TableColumn<CommandStatistics, Number> column, Function<RunStatistics, Number> value, Function<Number, String> format) {
+        column.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(value.apply(cellData.getValue().statistics)));
+        column.setCellFactory(tableColumn -> new TableCell<>() {
+            @Override
+            protected void updateItem(Number item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null || getTableRow() == null || getTableRow().getItem() == null
+                        || getTableRow().getItem().statistics.getRuns() == 0 ? null : format.apply(item));
+            }
+        });
+    }
+
+    private static String formatDuration(Number millis) {
+        return millis.longValue() < 0 ? "" : SizeFormatter.MILLISECONDS_SHORT.format(millis.longValue());
+    }
+
+    /**
+     * Reads the run history off the FX thread and fills the table with the statistics of the commands.
+     */
+    public void setCommands(List<Command> commands) {
+        final Thread reader = new Thread(() -> {
+            final List<RunStatistics> statistics = RunHistory.getInstance().getStatistics(commands);
+            final List<CommandStatistics> rows = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                rows.add(new CommandStatistics(name(commands.get(i)), statistics.get(i)));
+            }
+            Platform.runLater(() -> {
+                placeholderLabel.setText("No commands");
+                statisticsTable.getItems().setAll(rows);
+            });
+        }, "run-statistics");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private static String name(Command command) {
+        final String comment = command.getCommandComment();
+        return comment == null || comment.isBlank() ? command.getCommandNameAndArguments() : comment;
+    }
+
+    private static class CommandStatistics {
+        private final String name;
+        private final RunStatistics statistics;
+
+        private CommandStatistics(String name, RunStatistics statistics) {
+            this.name = name;
+            this.statistics = statistics;
+        }
+    }
+}